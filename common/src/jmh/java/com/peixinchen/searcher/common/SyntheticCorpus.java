@@ -0,0 +1,136 @@
+package com.peixinchen.searcher.common;
+
+import java.util.Random;
+
+/**
+ * 基准测试用的合成语料：词表中第 i 个词（从 0 开始）出现的概率正比于 1 / (i + 1)^skew（Zipf 分布）
+ * skew 越大，少数高频词占的比例越高；真实的文本 skew 大约是 1
+ * 词是由音节拼出来的英文小写"单词"，分词后还是它自己；同样的参数和 seed 生成的语料完全一样
+ * 放在 common 中，indexer 和 web 的 benchmark profile 都把它加进基准测试的源码
+ */
+public class SyntheticCorpus {
+    private static final String[] SYLLABLES = {
+            "ka", "lo", "mi", "ne", "ru", "sa", "to", "vi", "ze", "po",
+            "qu", "di", "fa", "ge", "hu", "jo", "be", "ci", "wa", "xo"
+    };
+
+    private final String[] words;
+    private final double[] cdf;
+    private final Random random;
+
+    public SyntheticCorpus(int vocabularySize, double skew, long seed) {
+        this.words = new String[vocabularySize];
+        this.cdf = new double[vocabularySize];
+        this.random = new Random(seed);
+
+        double sum = 0;
+        for (int i = 0; i < vocabularySize; i++) {
+            words[i] = makeWord(i);
+            sum += 1 / Math.pow(i + 1, skew);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < vocabularySize; i++) {
+            cdf[i] /= sum;
+        }
+    }
+
+    // 第 i 个词：i + 1 的双射 20 进制表示，每一位是一个音节，所以不同的 i 得到的词一定不同
+    private static String makeWord(int i) {
+        StringBuilder sb = new StringBuilder();
+        for (int n = i + 1; n > 0; n = (n - 1) / SYLLABLES.length) {
+            sb.append(SYLLABLES[(n - 1) % SYLLABLES.length]);
+        }
+        if (sb.length() < 4) {
+            sb.append("x");     // 太短的词容易被分词器当成别的东西
+        }
+        return sb.toString();
+    }
+
+    // 按 Zipf 分布抽一个词的下标
+    public int nextWordIndex() {
+        double u = random.nextDouble();
+        int lo = 0;
+        int hi = cdf.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cdf[mid] < u) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    public String nextWord() {
+        return words[nextWordIndex()];
+    }
+
+    public String word(int index) {
+        return words[index];
+    }
+
+    public int vocabularySize() {
+        return words.length;
+    }
+
+    // wordCount 个词，用空格隔开，每 12 个词左右一个句号
+    public String text(int wordCount) {
+        StringBuilder sb = new StringBuilder(wordCount * 8);
+        for (int i = 0; i < wordCount; i++) {
+            if (i > 0) {
+                sb.append(random.nextInt(12) == 0 ? ". " : " ");
+            }
+            sb.append(nextWord());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 仿照 Javadoc 生成的类文档页面的结构：导航、脚本、样式、注释、实体、方法摘要表格、方法详情，正文大约 wordCount 个词
+     */
+    public String javadocHtml(String className, int wordCount) {
+        StringBuilder sb = new StringBuilder(wordCount * 12 + 4096);
+        sb.append("<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 4.01 Transitional//EN\" \"http://www.w3.org/TR/html4/loose.dtd\">\n")
+                .append("<!-- NewPage -->\n<html lang=\"en\">\n<head>\n")
+                .append("<title>").append(className).append(" (Java Platform SE 8 )</title>\n")
+                .append("<meta name=\"date\" content=\"2018-10-06\">\n")
+                .append("<link rel=\"stylesheet\" type=\"text/css\" href=\"../../stylesheet.css\" title=\"Style\">\n")
+                .append("<script type=\"text/javascript\" src=\"../../script.js\"></script>\n</head>\n<body>\n")
+                .append("<script type=\"text/javascript\"><!--\n    try {\n        if (location.href.indexOf('is-external=true') == -1) {\n")
+                .append("            parent.document.title=\"").append(className).append(" (Java Platform SE 8 )\";\n        }\n    }\n    catch(err) {\n    }\n//-->\n")
+                .append("var methods = {\"i0\":10,\"i1\":10,\"i2\":42};\nvar tabs = {65535:[\"t0\",\"All Methods\"]};\n</script>\n")
+                .append("<noscript>\n<div>JavaScript is disabled on your browser.</div>\n</noscript>\n")
+                .append("<div class=\"topNav\"><a name=\"navbar.top\">\n<!--   -->\n</a>\n<ul class=\"navList\" title=\"Navigation\">\n")
+                .append("<li><a href=\"../../overview-summary.html\">Overview</a></li>\n<li><a href=\"package-summary.html\">Package</a></li>\n")
+                .append("<li class=\"navBarCell1Rev\">Class</li>\n</ul>\n</div>\n")
+                .append("<div class=\"header\">\n<h2 title=\"Class ").append(className).append("\" class=\"title\">Class ")
+                .append(className).append("&lt;E&gt;</h2>\n</div>\n<div class=\"contentContainer\">\n<div class=\"description\">\n")
+                .append("<pre>public class <span class=\"typeNameLabel\">").append(className).append("&lt;E&gt;</span>\nextends AbstractList&lt;E&gt;</pre>\n")
+                .append("<div class=\"block\">");
+
+        int written = 0;
+        int method = 0;
+        while (written < wordCount) {
+            int n = Integer.min(40 + random.nextInt(80), wordCount - written);
+            if (method == 0) {
+                sb.append(text(n)).append("&nbsp;&mdash; <code>").append(nextWord()).append("</code>.</div>\n</div>\n")
+                        .append("<div class=\"summary\">\n<table class=\"memberSummary\" border=\"0\" cellpadding=\"3\" cellspacing=\"0\">\n");
+            } else {
+                String name = nextWord();
+                sb.append("<tr id=\"i").append(method).append("\" class=\"altColor\">\n<td class=\"colFirst\"><code>boolean</code></td>\n")
+                        .append("<td class=\"colLast\"><code><span class=\"memberNameLink\"><a href=\"../../java/util/")
+                        .append(className).append(".html#").append(name).append("-java.lang.Object-\">").append(name)
+                        .append("</a></span>(<a href=\"../../java/lang/Object.html\" title=\"class in java.lang\">Object</a>&nbsp;o)</code>\n")
+                        .append("<div class=\"block\">").append(text(n)).append("</div>\n</td>\n</tr>\n");
+            }
+            written += n;
+            method++;
+        }
+
+        sb.append("</table>\n</div>\n</div>\n<div class=\"bottomNav\"><a name=\"navbar.bottom\">\n<!--   -->\n</a></div>\n")
+                .append("<p class=\"legalCopy\"><small><a href=\"http://bugreport.sun.com/bugreport/\">Submit a bug or feature</a>")
+                .append(" Copyright &#x00a9; 1993, 2018, Oracle and/or its affiliates.</small></p>\n</body>\n</html>\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package com.peixinchen.searcher.common;
+
+import java.util.Arrays;
+
+/**
+ * BM25F 打分，代替原来的 标题中出现次数 * 10 + 正文中出现次数
+ * indexer、web 两个模块共用这一份（各自通过 build-helper 把 common/src/main/java 加进来编译），
+ * 数据库模式（web 加载倒排索引时打分）和索引段模式（indexer 写段、合并段时打分）用的是同样的公式和参数
+ *
+ * 一个词对一篇文档的贡献：
+ *   tf~ = TITLE_WEIGHT * titleTf / titleNorm + contentTf / contentNorm
+ *   fieldNorm = 1 - b + b * fieldLength / 平均 fieldLength        （每篇文档建好之后只算一次）
+ *   idf = ln(1 + (N - df + 0.5) / (df + 0.5))
+ *   score = idf * tf~ * (K1 + 1) / (K1 + tf~)
+ * 倒排列表中的 weight 只能是 int，所以保存的是 score * SCALE 取整（至少为 1），多个词的得分照旧直接相加，
+ * 倒排列表中每个词的 maxWeight、每块的最大 weight 也就是得分的上限，检索时照样用来跳过不可能进 Top-K 的文档
+ */
+public final class Bm25f {
+    public static final double K1 = 1.2;
+    public static final double TITLE_WEIGHT = 5.0;
+    public static final double TITLE_B = 0.5;
+    public static final double CONTENT_B = 0.75;
+    public static final int SCALE = 1000;
+
+    private final int documentCount;
+    private final double titleAverage;
+    private final double contentAverage;
+    private final float[] titleNorms;       // 下标是 docId
+    private final float[] contentNorms;
+
+    private Bm25f(int documentCount, double titleAverage, double contentAverage, float[] titleNorms, float[] contentNorms) {
+        this.documentCount = documentCount;
+        this.titleAverage = titleAverage;
+        this.contentAverage = contentAverage;
+        this.titleNorms = titleNorms;
+        this.contentNorms = contentNorms;
+    }
+
+    public int documentCount() {
+        return documentCount;
+    }
+
+    public double titleAverage() {
+        return titleAverage;
+    }
+
+    public double contentAverage() {
+        return contentAverage;
+    }
+
+    public double idf(int df) {
+        df = Integer.max(1, Integer.min(df, documentCount));
+        return Math.log(1 + (documentCount - df + 0.5) / (df + 0.5));
+    }
+
+    public int impact(int df, int docId, int titleTf, int contentTf) {
+        double tf = 0;
+        if (docId < titleNorms.length) {
+            tf = TITLE_WEIGHT * titleTf / titleNorms[docId] + contentTf / contentNorms[docId];
+        }
+        double score = idf(df) * tf * (K1 + 1) / (K1 + tf);
+        return (int) Math.max(1, Math.min(Math.round(score * SCALE), Integer.MAX_VALUE));
+    }
+
+    private static float norm(double b, int length, double average) {
+        return (float) (1 - b + b * length / average);
+    }
+
+    /**
+     * 流式读文档长度时逐篇 add，读完之后 build
+     */
+    public static class Builder {
+        private int[] docIds = new int[1024];
+        private int[] titleLengths = new int[1024];
+        private int[] contentLengths = new int[1024];
+        private int size;
+        private long titleTotal;
+        private long contentTotal;
+        private int maxDocId = -1;
+
+        public void add(int docId, int titleLength, int contentLength) {
+            if (size == docIds.length) {
+                docIds = Arrays.copyOf(docIds, size * 2);
+                titleLengths = Arrays.copyOf(titleLengths, size * 2);
+                contentLengths = Arrays.copyOf(contentLengths, size * 2);
+            }
+            docIds[size] = docId;
+            titleLengths[size] = titleLength;
+            contentLengths[size] = contentLength;
+            size++;
+            titleTotal += titleLength;
+            contentTotal += contentLength;
+            maxDocId = Integer.max(maxDocId, docId);
+        }
+
+        // 加进来的就是整个索引的文档，文档数、平均长度都按它们算
+        public Bm25f build() {
+            // 平均长度为 0（没有文档，或者都是加这两列之前写入的）时按 1 算，归一化因子退化成 1 - b
+            double titleAverage = size == 0 || titleTotal == 0 ? 1 : (double) titleTotal / size;
+            double contentAverage = size == 0 || contentTotal == 0 ? 1 : (double) contentTotal / size;
+            return build(size, titleAverage, contentAverage);
+        }
+
+        /**
+         * 加进来的只是一部分文档（比如合并索引段时参与合并的那些），文档数、平均长度用整个索引的统计
+         */
+        public Bm25f build(int documentCount, double titleAverage, double contentAverage) {
+            float[] titleNorms = new float[maxDocId + 1];
+            float[] contentNorms = new float[maxDocId + 1];
+            Arrays.fill(titleNorms, 1);
+            Arrays.fill(contentNorms, 1);
+            for (int i = 0; i < size; i++) {
+                titleNorms[docIds[i]] = norm(TITLE_B, titleLengths[i], titleAverage);
+                contentNorms[docIds[i]] = norm(CONTENT_B, contentLengths[i], contentAverage);
+            }
+            return new Bm25f(documentCount, titleAverage, contentAverage, titleNorms, contentNorms);
+        }
+    }
+}
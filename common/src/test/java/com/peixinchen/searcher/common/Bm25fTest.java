@@ -0,0 +1,49 @@
+package com.peixinchen.searcher.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Bm25fTest {
+    private static Bm25f collection() {
+        Bm25f.Builder builder = new Bm25f.Builder();
+        builder.add(1, 5, 100);
+        builder.add(2, 5, 100);
+        builder.add(3, 5, 1000);
+        builder.add(4, 20, 100);
+        return builder.build();
+    }
+
+    @Test
+    void rareTermsScoreHigher() {
+        Bm25f bm25f = collection();
+        assertTrue(bm25f.impact(1, 1, 0, 3) > bm25f.impact(4, 1, 0, 3));
+    }
+
+    @Test
+    void termFrequencySaturates() {
+        Bm25f bm25f = collection();
+        int once = bm25f.impact(2, 1, 0, 1);
+        int tenTimes = bm25f.impact(2, 1, 0, 10);
+        int hundredTimes = bm25f.impact(2, 1, 0, 100);
+        assertTrue(tenTimes > once);
+        assertTrue(hundredTimes - tenTimes < tenTimes - once);
+        assertTrue(hundredTimes < (Bm25f.K1 + 1) * bm25f.idf(2) * Bm25f.SCALE + 1);
+    }
+
+    @Test
+    void longerDocumentsAndTitlesAreNormalized() {
+        Bm25f bm25f = collection();
+        assertTrue(bm25f.impact(2, 1, 0, 3) > bm25f.impact(2, 3, 0, 3));
+        assertTrue(bm25f.impact(2, 1, 1, 0) > bm25f.impact(2, 4, 1, 0));
+        // 标题中出现一次比正文中出现一次重要
+        assertTrue(bm25f.impact(2, 1, 1, 0) > bm25f.impact(2, 1, 0, 1));
+    }
+
+    @Test
+    void impactIsAtLeastOne() {
+        Bm25f bm25f = collection();
+        assertEquals(1, bm25f.impact(4, 1, 0, 0));
+        assertEquals(1, bm25f.impact(2, 100, 1, 1));    // 没有长度信息的文档
+    }
+}
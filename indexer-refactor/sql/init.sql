@@ -5,26 +5,68 @@ CREATE TABLE `searcher_refactor`.`forward_indexes` (
     `title` VARCHAR(100) NOT NULL,
     `url` VARCHAR(200) NOT NULL,
     `content` LONGTEXT NOT NULL,
+    `snippet_source` VARCHAR(2000) NOT NULL DEFAULT '' COMMENT '正文开头的一段（码点），查询时从中截摘要窗口，避免取整个 content',
+    `title_length` INT NOT NULL DEFAULT 0 COMMENT '标题分词后的词数，BM25F 长度归一化用',
+    `content_length` INT NOT NULL DEFAULT 0 COMMENT '正文分词后的词数，BM25F 长度归一化用',
+    `gen_from` INT NOT NULL COMMENT '从哪一代索引开始可见',
+    `gen_to` INT NULL COMMENT '从哪一代索引开始不可见，NULL 表示仍然有效',
     PRIMARY KEY (`docid`))
 COMMENT = '存放正排索引\ndocid -> 文档的完整信息';
 
+CREATE TABLE `searcher_refactor`.`terms` (
+    `termid` INT NOT NULL,
+    `word` VARCHAR(100) COLLATE utf8mb4_bin NOT NULL,
+    `df` INT NOT NULL COMMENT '包含这个词的文档数',
+    PRIMARY KEY (`termid`),
+    UNIQUE INDEX `idx_word` (`word`))
+COMMENT = '词典\nword -> termid，倒排索引中只保存 termid';
+
 CREATE TABLE `searcher_refactor`.`inverted_indexes` (
     `id` INT NOT NULL AUTO_INCREMENT,
-    `word` VARCHAR(100) NOT NULL,
+    `termid` INT NOT NULL,
     `docid` INT NOT NULL,
-    `weight` INT NOT NULL,
-    PRIMARY KEY (`id`))
-COMMENT = '倒排索引\n通过 word -> [ { docid + weight }, { docid + weight }, ... ]';
+    `weight` INT NOT NULL COMMENT '旧的打分：标题中出现次数 * 10 + 正文中出现次数，BM25F 打分之前的排序方式',
+    `title_tf` INT NOT NULL DEFAULT 0 COMMENT '该词在标题中出现的次数',
+    `content_tf` INT NOT NULL DEFAULT 0 COMMENT '该词在正文中出现的次数',
+    `offsets` VARCHAR(64) NOT NULL DEFAULT '' COMMENT '该词在正文中前几次出现的偏移，单位是码点（不是 UTF-16 的 char），逗号分隔',
+    `gen_from` INT NOT NULL COMMENT '从哪一代索引开始可见',
+    `gen_to` INT NULL COMMENT '从哪一代索引开始不可见，NULL 表示仍然有效',
+    PRIMARY KEY (`id`),
+    INDEX `idx_termid` (`termid`),
+    INDEX `idx_docid` (`docid`))
+COMMENT = '倒排索引\n通过 termid -> [ { docid + weight }, { docid + weight }, ... ]';
+
+CREATE TABLE `searcher_refactor`.`document_manifest` (
+    `path` VARCHAR(200) COLLATE utf8mb4_bin NOT NULL COMMENT '相对 doc-root-path 的路径',
+    `docid` INT NOT NULL COMMENT '当前对应的正排 docid',
+    `size` BIGINT NOT NULL,
+    `mtime` BIGINT NOT NULL COMMENT '最后修改时间（毫秒）',
+    `hash` CHAR(40) NOT NULL COMMENT '文件内容的 SHA-1',
+    PRIMARY KEY (`path`))
+COMMENT = '文档清单\n每个文件上一次被索引时的指纹，增量构建时据此只处理新增、修改、删除的文件';
+
+CREATE TABLE `searcher_refactor`.`index_generations` (
+    `generation` INT NOT NULL AUTO_INCREMENT,
+    `state` VARCHAR(16) NOT NULL COMMENT 'building / active / retired / abandoned',
+    `doc_count` INT NOT NULL DEFAULT 0 COMMENT '这一代新写入的文档数',
+    `posting_count` BIGINT NOT NULL DEFAULT 0 COMMENT '这一代新写入的倒排记录数',
+    `next_docid` INT NOT NULL DEFAULT 1 COMMENT '这一代发布时下一个可以分配的 docid；构建中（以及被撤销）的代记的是已经预留到的 docid。docid 由索引构建程序分配，下一次构建从所有代中最大的 next_docid 接着分配',
+    `created_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    `activated_at` DATETIME NULL,
+    PRIMARY KEY (`generation`))
+COMMENT = '索引的每一代\n索引构建写入新的一代，校验通过后在同一个事务中把它置为 active；查询端只读 active 这一代可见的记录：\ngen_from <= active and (gen_to is null or gen_to > active)';
 
 -- 搜索的 SQL 大概这么去写
 select docid from
 `searcher_refactor`.`inverted_indexes`
-where word = '我们要搜索的词'
+where termid = (select termid from `searcher_refactor`.`terms` where word = '我们要搜索的词')
+and gen_from <= 3 and (gen_to is null or gen_to > 3)   -- 3 是 active 的那一代
 order by weight desc
 limit 20
 offset 0;
 
-select *
+-- 只取最终这一页需要展示的字段，不取 content
+select docid, title, url, snippet_source
 from `searcher_refactor`.`forward_indexes`
 where docid in (1, 2, 3);
 
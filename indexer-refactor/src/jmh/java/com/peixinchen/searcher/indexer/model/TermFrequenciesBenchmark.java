@@ -0,0 +1,78 @@
+package com.peixinchen.searcher.indexer.model;
+
+import com.peixinchen.searcher.common.SyntheticCorpus;
+import org.ansj.splitWord.analysis.ToAnalysis;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分词 + 词频统计（原来的 Document.segWordAndCalcWeight，现在是 Document.segment -> TermFrequencies.of）
+ * 词典在 setUp 中先把所有文档过一遍，测量时不再有新词，和构建索引的稳定阶段一样
+ * analyzeOnly 只测 ansj 分词本身，两者的差就是词频统计的开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TermFrequenciesBenchmark {
+    @Param("64")
+    public int documentCount;
+
+    @Param("2000")
+    public int wordsPerDocument;
+
+    @Param("20000")
+    public int vocabularySize;
+
+    @Param({"0.8", "1.0", "1.2"})
+    public double skew;
+
+    private String[] titles;
+    private String[] contents;
+    private TermDictionary dictionary;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticCorpus corpus = new SyntheticCorpus(vocabularySize, skew, 42);
+        titles = new String[documentCount];
+        contents = new String[documentCount];
+        for (int i = 0; i < documentCount; i++) {
+            titles[i] = corpus.text(3);
+            contents[i] = corpus.text(wordsPerDocument);
+        }
+
+        dictionary = new TermDictionary();
+        for (int i = 0; i < documentCount; i++) {
+            TermFrequencies.of(titles[i], contents[i], dictionary);
+        }
+    }
+
+    @Benchmark
+    public TermFrequencies segment() {
+        int i = next;
+        next = (next + 1) % documentCount;
+        return TermFrequencies.of(titles[i], contents[i], dictionary);
+    }
+
+    @Benchmark
+    public Object analyzeOnly() {
+        int i = next;
+        next = (next + 1) % documentCount;
+        return ToAnalysis.parse(contents[i]).getTerms();
+    }
+}
@@ -0,0 +1,89 @@
+package com.peixinchen.searcher.indexer.util;
+
+import com.peixinchen.searcher.common.SyntheticCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 从 HTML 中提取标题和正文（原来的 Document.parseContent）
+ * 默认用 SyntheticCorpus 生成仿 Javadoc 结构的页面；-p samples=<目录> 时改用目录下真实的 .html 文件（比如 doc-root-path），最多 pageCount 个
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HtmlTextExtractorBenchmark {
+    @Param("")
+    public String samples;
+
+    @Param("64")
+    public int pageCount;
+
+    @Param("3000")
+    public int wordsPerPage;
+
+    @Param("1.0")
+    public double skew;
+
+    private byte[][] pages;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<byte[]> pageList = new ArrayList<>();
+        if (samples.isEmpty()) {
+            SyntheticCorpus corpus = new SyntheticCorpus(20000, skew, 42);
+            for (int i = 0; i < pageCount; i++) {
+                pageList.add(corpus.javadocHtml("Class" + i, wordsPerPage).getBytes(StandardCharsets.UTF_8));
+            }
+        } else {
+            List<Path> paths;
+            try (Stream<Path> stream = Files.walk(Paths.get(samples))) {
+                paths = stream.filter(path -> path.toString().endsWith(".html"))
+                        .sorted()
+                        .limit(pageCount)
+                        .collect(Collectors.toList());
+            }
+            for (Path path : paths) {
+                pageList.add(Files.readAllBytes(path));
+            }
+        }
+        if (pageList.isEmpty()) {
+            throw new IllegalStateException(samples + " 下没有 .html 文件");
+        }
+        pages = pageList.toArray(new byte[0][]);
+    }
+
+    // 每次调用提取一个页面，依次轮流
+    @Benchmark
+    public HtmlTextExtractor.Result extract() throws IOException {
+        byte[] page = pages[next];
+        next = (next + 1) % pages.length;
+        return HtmlTextExtractor.extract(Channels.newChannel(new ByteArrayInputStream(page)));
+    }
+}
@@ -1,19 +1,32 @@
 package com.peixinchen.searcher.indexer.aop;
 
+import com.peixinchen.searcher.indexer.core.IndexMetrics;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * 除了打日志，耗时还记进 indexer.stage 指标（tag stage = @Timing 的 value），构建结束时和其他指标一起输出
+ */
 @Slf4j
 @Aspect
 @Component
 public class TimingAspect {
+    private final IndexMetrics metrics;
+
+    @Autowired
+    public TimingAspect(IndexMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     @Pointcut("@annotation(com.peixinchen.searcher.indexer.aop.Timing)")
     public void timingPointcut() {}
 
@@ -24,13 +37,13 @@ public class TimingAspect {
         Timing annotation = method.getAnnotation(Timing.class);
         String value = annotation.value();
 
-        long b = System.currentTimeMillis();
+        long b = System.nanoTime();
         try {
             return joinPoint.proceed();
         } finally {
-            long e = System.currentTimeMillis();
-            double ms = e * 1.0 - b;
-            double s = ms / 1000;
+            long nanos = System.nanoTime() - b;
+            metrics.stage(value).record(nanos, TimeUnit.NANOSECONDS);
+            double s = nanos / 1e9;
 
             log.info("{} 耗时 {} 秒。", value, s);
         }
@@ -1,28 +1,58 @@
 package com.peixinchen.searcher.indexer.config;
 
+import com.peixinchen.searcher.indexer.core.IndexMetrics;
+import com.peixinchen.searcher.indexer.core.InvertedIndexLoader;
+import com.peixinchen.searcher.indexer.core.JdbcBatchInvertedIndexLoader;
+import com.peixinchen.searcher.indexer.core.LoadDataInvertedIndexLoader;
+import com.peixinchen.searcher.indexer.mapper.IndexDatabaseMapper;
+import com.peixinchen.searcher.indexer.properties.IndexerProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
 
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class AppConfig {
+    // 只有 MergeScheduler 用：同一时间最多一个合并任务，一个线程就够了
     @Bean
-    public ExecutorService executorService() {
+    public ExecutorService mergeExecutor(MeterRegistry registry) {
         ThreadPoolExecutor executor = new ThreadPoolExecutor(
-                8, 20, 30, TimeUnit.SECONDS,
-                new ArrayBlockingQueue<>(5000),
+                1, 1, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
                 (Runnable task) -> {
                     Thread thread = new Thread(task);
-                    thread.setName("批量插入线程");
+                    thread.setName("索引段合并线程");
+                    // 合并不着急，让给构建索引的线程
+                    thread.setPriority(Thread.MIN_PRIORITY);
                     return thread;
-                },
-                new ThreadPoolExecutor.AbortPolicy()
+                }
         );
 
+        // 排队任务数（executor.queued）、活跃线程数等，tag name = merge
+        new ExecutorServiceMetrics(executor, "merge", Tags.empty()).bindTo(registry);
         return executor;
     }
+
+    @Bean
+    public InvertedIndexLoader invertedIndexLoader(IndexerProperties properties, IndexDatabaseMapper mapper, JdbcTemplate jdbcTemplate,
+                                                   DataSourceProperties dataSourceProperties, IndexMetrics metrics) {
+        switch (properties.getInvertedLoader()) {
+            case JDBC_BATCH:
+                return metrics.timed(new JdbcBatchInvertedIndexLoader(jdbcTemplate, properties.getInvertedBatchSize()));
+            case LOAD_DATA:
+                // 用自己的连接，只在这些连接上打开 allowLoadLocalInfile
+                return metrics.timed(new LoadDataInvertedIndexLoader(dataSourceProperties.determineUrl(),
+                        dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword()));
+            default:
+                return metrics.timed(mapper::batchInsertInvertedIndexes);
+        }
+    }
 }
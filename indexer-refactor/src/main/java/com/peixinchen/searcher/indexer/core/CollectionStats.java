@@ -0,0 +1,78 @@
+package com.peixinchen.searcher.indexer.core;
+
+import com.peixinchen.searcher.common.Bm25f;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 写段时整个可见索引的 BM25F 统计：文档数、title / content 的平均长度、每个词的 df（下标是 termId）
+ * 段中的 weight 是写段时算好的得分，之后文档越加越多，早先写的段里的 IDF、平均长度就旧了；
+ * 合并段时用提交点中最新的这份统计，按段里存的词频、文档长度重新打分（见 SegmentMerger）
+ * 文件格式：[文档数: int][title 平均长度: double][content 平均长度: double][词数: int][df: int] ...
+ */
+class CollectionStats {
+    private final int documentCount;
+    private final double titleAverage;
+    private final double contentAverage;
+    private final int[] dfs;
+
+    CollectionStats(int documentCount, double titleAverage, double contentAverage, int[] dfs) {
+        this.documentCount = documentCount;
+        this.titleAverage = titleAverage;
+        this.contentAverage = contentAverage;
+        this.dfs = dfs;
+    }
+
+    int documentCount() {
+        return documentCount;
+    }
+
+    double titleAverage() {
+        return titleAverage;
+    }
+
+    double contentAverage() {
+        return contentAverage;
+    }
+
+    // 写这份统计之后才出现的词返回 0
+    int df(int termId) {
+        return termId < dfs.length ? dfs[termId] : 0;
+    }
+
+    /**
+     * 用统计中的文档数、平均长度，加上 builder 中这些文档自己的长度，得到给它们打分的 Bm25f
+     */
+    Bm25f bm25f(Bm25f.Builder builder) {
+        return builder.build(documentCount, titleAverage, contentAverage);
+    }
+
+    static CollectionStats read(Path path) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(path));
+        int documentCount = buf.getInt();
+        double titleAverage = buf.getDouble();
+        double contentAverage = buf.getDouble();
+        int[] dfs = new int[buf.getInt()];
+        for (int i = 0; i < dfs.length; i++) {
+            dfs[i] = buf.getInt();
+        }
+        return new CollectionStats(documentCount, titleAverage, contentAverage, dfs);
+    }
+
+    void write(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(documentCount);
+            out.writeDouble(titleAverage);
+            out.writeDouble(contentAverage);
+            out.writeInt(dfs.length);
+            for (int df : dfs) {
+                out.writeInt(df);
+            }
+        }
+    }
+}
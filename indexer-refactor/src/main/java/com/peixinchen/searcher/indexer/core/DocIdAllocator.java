@@ -0,0 +1,45 @@
+package com.peixinchen.searcher.indexer.core;
+
+import java.util.function.IntConsumer;
+
+/**
+ * 由索引构建程序自己分配 docId，不再依赖正排插入之后由数据库自增列回填：
+ * 文档解析完就有 docId，正排、倒排可以同时写，不用等正排插入完成
+ * 每次构建从之前所有的代记下的 next_docid 中最大的那个接着分配（见 GenerationManager）：
+ *   分配之前先按 RESERVE 个一段预留，把预留到哪里通过 reserve 写到这一代的 next_docid 上，再把这一段分配出去；
+ *   构建中途失败、被撤销时，分配过的 docId 也已经记在数据库里了，下一次构建会跳过它们
+ * 所以已经用过的 docId 不会再分配给别的文档（索引段的删除标记是按 docId 记的）；发布时把 next() 写回去，预留了没用上的 docId 可以再用
+ */
+class DocIdAllocator {
+    static final int RESERVE = 4096;
+
+    private final IntConsumer reserve;
+    private int next;
+    private int limit;
+
+    /**
+     * @param reserve 把参数（预留到的 docId，不含）持久化，返回之后才会分配这一段
+     */
+    DocIdAllocator(int first, IntConsumer reserve) {
+        this.reserve = reserve;
+        this.next = first;
+        reserve(first + RESERVE);
+    }
+
+    synchronized int allocate() {
+        if (next == limit) {
+            reserve(limit + RESERVE);
+        }
+        return next++;
+    }
+
+    // 下一个会被分配的 docId
+    synchronized int next() {
+        return next;
+    }
+
+    private void reserve(int newLimit) {
+        reserve.accept(newLimit);
+        limit = newLimit;
+    }
+}
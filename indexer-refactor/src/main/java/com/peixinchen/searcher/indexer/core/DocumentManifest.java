@@ -0,0 +1,100 @@
+package com.peixinchen.searcher.indexer.core;
+
+import com.peixinchen.searcher.indexer.model.Document;
+import com.peixinchen.searcher.indexer.model.ManifestEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 一次增量构建过程中的文档清单，启动时由 document_manifest 表中上次构建的指纹构造
+ *   1. 扫描阶段：大小和修改时间都没变的文件直接跳过，连文件内容都不读
+ *   2. 解析阶段：大小或修改时间变了，再比较内容 hash，内容没变的只更新清单中的指纹，不重新索引
+ *   3. 构建结束：内容变了的文件的旧 docId，以及清单中有、但这次没扫描到的文件（已删除）的 docId 都需要下线
+ * 扫描、解析阶段会被多个线程同时调用，所以是线程安全的
+ */
+class DocumentManifest {
+    private final Map<String, ManifestEntry> previous = new HashMap<>();    // 构造之后只读
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+    private final Queue<Integer> replacedDocIds = new ConcurrentLinkedQueue<>();
+    private final Queue<ManifestEntry> updatedEntries = new ConcurrentLinkedQueue<>();
+
+    DocumentManifest(List<ManifestEntry> entryList) {
+        for (ManifestEntry entry : entryList) {
+            previous.put(entry.getPath(), entry);
+        }
+    }
+
+    int previousSize() {
+        return previous.size();
+    }
+
+    /**
+     * 扫描阶段调用
+     * @return true 表示文件大小和修改时间都和上次一样，不需要再处理
+     */
+    boolean unchanged(String path, long size, long mtime) {
+        ManifestEntry entry = previous.get(path);
+        if (entry != null && entry.getSize() == size && entry.getMtime() == mtime) {
+            seen.add(path);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 解析阶段调用，此时文档的内容 hash 已经算好
+     * @return true 表示是新文件，或者内容确实变了，需要（重新）索引
+     */
+    boolean needsIndexing(Document document) {
+        String path = document.getPath();
+        seen.add(path);
+        ManifestEntry entry = previous.get(path);
+        if (entry == null) {
+            return true;
+        }
+        if (entry.getHash().equals(document.getHash())) {
+            // 只是被 touch 了一下，沿用原来的 docId，更新指纹，下次扫描就能直接跳过
+            updatedEntries.add(new ManifestEntry(path, entry.getDocId(), document.getSize(), document.getMtime(), document.getHash()));
+            return false;
+        }
+        replacedDocIds.add(entry.getDocId());
+        return true;
+    }
+
+    // 正排保存之后调用，此时 docId 才有值
+    void indexed(Document document) {
+        updatedEntries.add(new ManifestEntry(document.getPath(), document.getDocId(), document.getSize(), document.getMtime(), document.getHash()));
+    }
+
+    // 以下在构建结束之后调用
+
+    List<String> deletedPaths() {
+        List<String> pathList = new ArrayList<>();
+        for (String path : previous.keySet()) {
+            if (!seen.contains(path)) {
+                pathList.add(path);
+            }
+        }
+        return pathList;
+    }
+
+    // 需要下线的 docId：被修改文件的旧版本 + 已删除的文件
+    List<Integer> retiredDocIds(List<String> deletedPaths) {
+        List<Integer> docIdList = new ArrayList<>(replacedDocIds);
+        for (String path : deletedPaths) {
+            docIdList.add(previous.get(path).getDocId());
+        }
+        return docIdList;
+    }
+
+    List<ManifestEntry> updatedEntries() {
+        return new ArrayList<>(updatedEntries);
+    }
+}
@@ -0,0 +1,82 @@
+package com.peixinchen.searcher.indexer.core;
+
+import com.peixinchen.searcher.indexer.mapper.IndexDatabaseMapper;
+import com.peixinchen.searcher.indexer.model.GenerationRow;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 索引的分代：每次构建写入新的一代，查询端只读 active 那一代可见的记录
+ *   gen_from <= active and (gen_to is null or gen_to > active)
+ * 所以构建过程中写入的记录（gen_from = 新的一代）对查询端不可见，被下线的记录（gen_to = 新的一代）对查询端仍然可见，
+ * 直到构建完成、校验通过后把新的一代置为 active，查询端发现 active 变了，加载完新的一代之后再切换过去
+ *
+ * 被下线的记录不会立刻删除：查询端切换需要一点时间，等到下一次构建开始时，才清理 active 那一代已经看不到的记录
+ */
+@Slf4j
+@Component
+public class GenerationManager {
+    private final IndexDatabaseMapper mapper;
+
+    @Autowired
+    public GenerationManager(IndexDatabaseMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    // 还没有任何一代被置为 active 时，active 视为 0，所有记录都不可见
+    public int activeGeneration() {
+        Integer active = mapper.selectActiveGeneration();
+        return active == null ? 0 : active;
+    }
+
+    /**
+     * 开始新的一代：撤销之前没有完成的构建，清理已经没有人能看到的记录
+     * @return 新的一代的编号
+     */
+    public int begin() {
+        int active = activeGeneration();
+
+        mapper.discardForwardIndexes(active);
+        mapper.discardInvertedIndexes(active);
+        mapper.abandonGenerations(active);
+
+        mapper.purgeForwardIndexes(active);
+        mapper.purgeInvertedIndexes(active);
+
+        GenerationRow row = new GenerationRow();
+        row.setState("building");
+        mapper.insertGeneration(row);
+        log.debug("当前 active 的是第 {} 代，开始构建第 {} 代", active, row.getGeneration());
+        return row.getGeneration();
+    }
+
+    /**
+     * 这次构建的 docId 从哪里开始分配：之前所有的代（包括正在构建、被撤销的）记下的 next_docid 中最大的那个
+     * 分配之前先把预留到的 docId 记在这一代的 next_docid 上（见 DocIdAllocator），构建失败时分配过的 docId 也不会被重新用上
+     */
+    public DocIdAllocator docIdAllocator(int generation) {
+        int first = mapper.selectNextDocId();
+        log.debug("docId 从 {} 开始分配", first);
+        return new DocIdAllocator(first, limit -> mapper.updateNextDocId(generation, limit));
+    }
+
+    /**
+     * 校验这一代实际写进数据库的记录数和流水线统计的一致，不一致说明有批次丢失了，不能发布
+     */
+    public void validate(int generation, int expectedDocCount, long expectedPostingCount) {
+        int docCount = mapper.countForwardIndexes(generation);
+        long postingCount = mapper.countInvertedIndexes(generation);
+        if (docCount != expectedDocCount || postingCount != expectedPostingCount) {
+            mapper.updateGenerationState(generation, "abandoned");
+            throw new IllegalStateException(String.format("第 %d 代校验失败：正排应有 %d 条，实际 %d 条；倒排应有 %d 条，实际 %d 条",
+                    generation, expectedDocCount, docCount, expectedPostingCount, postingCount));
+        }
+    }
+
+    // 需要和本次构建最后的写入（词典、下线记录、清单）放在同一个事务中调用
+    public void activate(int generation, int docCount, long postingCount, int nextDocId) {
+        mapper.activateGeneration(generation, docCount, postingCount, nextDocId);
+        log.debug("第 {} 代已发布", generation);
+    }
+}
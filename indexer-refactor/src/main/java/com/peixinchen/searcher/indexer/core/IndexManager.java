@@ -1,180 +1,213 @@
 package com.peixinchen.searcher.indexer.core;
 
+import com.peixinchen.searcher.common.Bm25f;
 import com.peixinchen.searcher.indexer.aop.Timing;
 import com.peixinchen.searcher.indexer.mapper.IndexDatabaseMapper;
-import com.peixinchen.searcher.indexer.model.Document;
 import com.peixinchen.searcher.indexer.model.InvertedRecord;
-import lombok.SneakyThrows;
+import com.peixinchen.searcher.indexer.model.StoredDocument;
+import com.peixinchen.searcher.indexer.model.TermDocumentFrequency;
+import com.peixinchen.searcher.indexer.model.TermDictionary;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
 
+/**
+ * 原来一次性把所有文档读进 List 再分批保存正排、倒排的做法已经由 IndexPipeline 代替
+ * （那些方法不带索引的代，写进去的记录查询端永远看不到，所以删掉了），倒排记录改由 PostingShard 累积、归并之后写入，
+ * 这里留下流水线用到的部分，以及追加索引段
+ */
 @Slf4j
 @Component
 public class IndexManager {
     private final IndexDatabaseMapper mapper;
-    private final ExecutorService executorService;
+    private final SegmentStore store;
 
     @Autowired
-    public IndexManager(IndexDatabaseMapper mapper, ExecutorService executorService) {
+    public IndexManager(IndexDatabaseMapper mapper, SegmentStore store) {
         this.mapper = mapper;
-        this.executorService = executorService;
+        this.store = store;
     }
 
-    // 先批量生成、保存正排索引（单线程版本）
-    public void saveForwardIndexes(List<Document> documentList) {
-        // 1. 批量插入时，每次插入多少条记录（由于每条记录比较大，所以这里使用 10 条就够了）
-        int batchSize = 10;
-        // 2. 一共需要执行多少次 SQL？   向上取整(documentList.size() / batchSize)
-        int listSize = documentList.size();
-        int times = (int) Math.ceil(1.0 * listSize / batchSize);    // ceil(天花板): 向上取整
-        log.debug("一共需要 {} 批任务。", times);
-
-        // 3. 开始分批次插入
-        for (int i = 0; i < listSize; i += batchSize) {
-            // 从 documentList 中截取这批要插入的 文档列表（使用 List.subList(int from, int to)
-            int from = i;
-            int to = Integer.min(from + batchSize, listSize);
-
-            List<Document> subList = documentList.subList(from, to);
-
-            // 针对这个 subList 做批量插入
-            mapper.batchInsertForwardIndexes(subList);
+    /**
+     * 把词典（termId, word, df）保存到 terms 表，所有倒排记录都保存完之后调用，这样 df 才是完整的
+     * 只保存本次有新文档包含的词：新词直接插入，已有的词把本次新增的 df 累加上去
+     */
+    public void saveTermDictionary(TermDictionary dictionary) {
+        int batchSize = 10000;
+        List<TermDictionary.Entry> entryList = dictionary.changedEntries();
+        for (int from = 0; from < entryList.size(); from += batchSize) {
+            int to = Integer.min(from + batchSize, entryList.size());
+            mapper.batchInsertTerms(entryList.subList(from, to));
         }
+        log.debug("词典保存成功，一共更新 {} 个词。", entryList.size());
     }
 
-    @Timing("构建 + 保存正排索引 —— 多线程版本")
-    @SneakyThrows
-    public void saveForwardIndexesConcurrent(List<Document> documentList) {
-        // 1. 批量插入时，每次插入多少条记录（由于每条记录比较大，所以这里使用 10 条就够了）
-        int batchSize = 10;
-        // 2. 一共需要执行多少次 SQL？   向上取整(documentList.size() / batchSize)
-        int listSize = documentList.size();
-        int times = (int) Math.ceil(1.0 * listSize / batchSize);    // ceil(天花板): 向上取整
-        log.debug("一共需要 {} 批任务。", times);
-
-        CountDownLatch latch = new CountDownLatch(times);   // 统计每个线程的完全情况，初始值是 times(一共多少批)
-
-        // 3. 开始分批次插入
-        for (int i = 0; i < listSize; i += batchSize) {
-            // 从 documentList 中截取这批要插入的 文档列表（使用 List.subList(int from, int to)
-            int from = i;
-            int to = Integer.min(from + batchSize, listSize);
-
-            Runnable task = () -> { // 内部类 / lambda 表达式里如果用到了外部变量，外部变量必须的 final（或者隐式 final 的变量）
-                List<Document> subList = documentList.subList(from, to);
-
-                // 针对这个 subList 做批量插入
-                mapper.batchInsertForwardIndexes(subList);
-
-                latch.countDown();      //  每次任务完成之后，countDown()，让 latch 的个数减一
-            };
-
-            executorService.submit(task);   // 主线程只负责把一批批的任务提交到线程池，具体的插入工作，由线程池中的线程完成
+    /**
+     * 把 generation 这一代新加入的文档写成一个新的索引段，追加到索引段目录中，被下线的文档记进删除标记，然后发布新的提交点
+     * 段文件写好之后不再修改，段越来越多、已删除的文档越来越多时由 MergeScheduler 在后台合并
+     * 段中每条记录的 weight 是写段时用 BM25F 算好的得分（见 Bm25f），IDF 和平均长度取的是这一代整个可见索引的统计，
+     * 这份统计同时写成 stats 文件（见 CollectionStats）放进提交点，段中也存了词频和文档长度，旧段合并时按最新的统计重新打分
+     * 以下情况不能只追加，改为把这一代可见的整个索引写成一个段，替换掉所有旧的段：
+     *   全量重建；目录中的提交点不是上一代（第一次写、或者中间有几代没有写段文件），缺的那几代下线了哪些文档已经无从得知；
+     *   提交点中没有统计文件（之前版本写的段，没有存词频，合并时没法重新打分）
+     * @param previousGeneration 这次构建开始前 active 的那一代
+     */
+    @Timing("写索引段文件")
+    public void appendSegment(int generation, int previousGeneration, List<Integer> retiredDocIds, boolean full) throws IOException {
+        SegmentCommit commit = store.current();
+        boolean snapshot = full || commit.generation() != previousGeneration || commit.generation() == 0 || commit.stats() == null;
+        int since = snapshot ? 0 : commit.generation();
+
+        String name = "segment-" + store.nextSequence() + ".seg";
+        Path tmp = store.resolve(name + ".tmp");
+        int docCount;
+        long size;
+        CollectionStats stats;
+        try (SegmentWriter writer = new SegmentWriter(tmp, generation)) {
+            String[] words = loadWords();
+            Bm25f bm25f = loadBm25f(generation);
+            int[] dfs = loadDocumentFrequencies(words.length);
+            stats = new CollectionStats(bm25f.documentCount(), bm25f.titleAverage(), bm25f.contentAverage(), dfs);
+
+            // 倒排记录按 (termid, docid) 排好序流式读出，一个词的记录读完就写出去
+            PostingAccumulator postings = new PostingAccumulator(writer, words, bm25f, dfs);
+            mapper.scanVisibleInvertedIndexes(generation, since, context -> postings.add(context.getResultObject()));
+            postings.flush();
+
+            mapper.scanVisibleForwardIndexes(generation, since, context -> {
+                StoredDocument document = context.getResultObject();
+                try {
+                    writer.addDocument(document.getDocId(), document.getTitle(), document.getUrl(), document.getSnippetSource(),
+                            document.getTitleLength(), document.getContentLength());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            writer.finish();
+            docCount = writer.docCount();
+            size = writer.size();
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        } catch (UncheckedIOException e) {
+            Files.deleteIfExists(tmp);
+            throw e.getCause();
         }
 
-        // 4. 循环结束，只意味着主线程把任务提交完成了，但任务有没有做完是不知道的
-        // 主线程等在 latch 上，只到 latch 的个数变成 0，也就是所有任务都已经执行完了
-        latch.await();
+        synchronized (store) {
+            // 写段的过程中后台合并可能已经发布了新的提交点，以最新的为准
+            SegmentCommit latest = snapshot ? SegmentCommit.EMPTY : store.current();
+            List<String> segments = new ArrayList<>(latest.segments());
+            if (docCount > 0) {
+                Files.move(tmp, store.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+                segments.add(name);
+            } else {
+                Files.delete(tmp);     // 这一代没有新增文档，只需要记下被删除的
+            }
+            String tombstones = latest.tombstones();
+            if (!retiredDocIds.isEmpty() && !snapshot) {
+                int[] docIds = retiredDocIds.stream().mapToInt(Integer::intValue).toArray();
+                tombstones = store.writeTombstones(store.tombstones(latest).add(docIds));
+            }
+            store.publish(new SegmentCommit(store.nextSequence(), generation, segments, tombstones, store.writeStats(stats)));
+        }
+        log.debug("索引段 {} 写入完成（{}）：{} 篇文档，{} 字节", name, snapshot ? "整个索引" : "第 " + since + " 代之后新增的", docCount, size);
     }
 
-    @SneakyThrows
-    public void saveInvertedIndexes(List<Document> documentList) {
-        int batchSize = 10000;  // 批量插入时，最多 10000 条
-
-        List<InvertedRecord> recordList = new ArrayList<>();    // 放这批要插入的数据
-
-        for (Document document : documentList) {
-            Map<String, Integer> wordToWeight = document.segWordAndCalcWeight();
-            for (Map.Entry<String, Integer> entry : wordToWeight.entrySet()) {
-                String word = entry.getKey();
-                int docId = document.getDocId();
-                int weight = entry.getValue();
-
-                InvertedRecord record = new InvertedRecord(word, docId, weight);
+    // termId -> word
+    private String[] loadWords() {
+        List<TermDictionary.Entry> entryList = new ArrayList<>();
+        mapper.scanTerms(context -> entryList.add(context.getResultObject()));
+        int maxTermId = -1;
+        for (TermDictionary.Entry entry : entryList) {
+            maxTermId = Integer.max(maxTermId, entry.getTermId());
+        }
+        String[] words = new String[maxTermId + 1];
+        for (TermDictionary.Entry entry : entryList) {
+            words[entry.getTermId()] = entry.getWord();
+        }
+        return words;
+    }
 
-                recordList.add(record);
+    // 这一代可见的所有文档的长度，算出平均长度和每篇文档的归一化因子
+    private Bm25f loadBm25f(int generation) {
+        Bm25f.Builder builder = new Bm25f.Builder();
+        mapper.scanDocumentLengths(generation, context -> {
+            StoredDocument document = context.getResultObject();
+            builder.add(document.getDocId(), document.getTitleLength(), document.getContentLength());
+        });
+        return builder.build();
+    }
 
-                // 如果 recordList.size() == batchSize，说明够一次插入了
-                if (recordList.size() == batchSize) {
-                    mapper.batchInsertInvertedIndexes(recordList);  // 批量插入
-                    recordList.clear();                             // 清空 list，视为让 list.size() = 0
-                }
+    // termId -> df，terms.df 是发布时累加上去的，包含这一代
+    private int[] loadDocumentFrequencies(int termCount) {
+        int[] dfs = new int[termCount];
+        for (TermDocumentFrequency frequency : mapper.selectDocumentFrequencies()) {
+            if (frequency.getTermId() < termCount) {
+                dfs[frequency.getTermId()] = frequency.getDf();
             }
         }
-
-        // recordList 还剩一些，之前放进来，但还不够 batchSize 个的，所以最后再批量插入一次
-        mapper.batchInsertInvertedIndexes(recordList);  // 批量插入
-        recordList.clear();
+        return dfs;
     }
 
-    static class InvertedInsertTask implements Runnable {
-        private final CountDownLatch latch;
-        private final int batchSize;
-        private final List<Document> documentList;
-        private final IndexDatabaseMapper mapper;
-
-        InvertedInsertTask(CountDownLatch latch, int batchSize, List<Document> documentList, IndexDatabaseMapper mapper) {
-            this.latch = latch;
-            this.batchSize = batchSize;
-            this.documentList = documentList;
-            this.mapper = mapper;
+    // 攒一个词的所有 (docId, BM25F 得分, 词频)，遇到下一个词时交给 SegmentWriter
+    private static class PostingAccumulator {
+        private final SegmentWriter writer;
+        private final String[] words;
+        private final Bm25f bm25f;
+        private final int[] dfs;
+        private int termId = -1;
+        private int[] docIds = new int[1024];
+        private int[] weights = new int[1024];
+        private int[] titleTfs = new int[1024];
+        private int[] contentTfs = new int[1024];
+        private int size;
+
+        PostingAccumulator(SegmentWriter writer, String[] words, Bm25f bm25f, int[] dfs) {
+            this.writer = writer;
+            this.words = words;
+            this.bm25f = bm25f;
+            this.dfs = dfs;
         }
 
-        @Override
-        public void run() {
-            List<InvertedRecord> recordList = new ArrayList<>();    // 放这批要插入的数据
-
-            for (Document document : documentList) {
-                Map<String, Integer> wordToWeight = document.segWordAndCalcWeight();
-                for (Map.Entry<String, Integer> entry : wordToWeight.entrySet()) {
-                    String word = entry.getKey();
-                    int docId = document.getDocId();
-                    int weight = entry.getValue();
-
-                    InvertedRecord record = new InvertedRecord(word, docId, weight);
-
-                    recordList.add(record);
-
-                    // 如果 recordList.size() == batchSize，说明够一次插入了
-                    if (recordList.size() == batchSize) {
-                        mapper.batchInsertInvertedIndexes(recordList);  // 批量插入
-                        recordList.clear();                             // 清空 list，视为让 list.size() = 0
-                    }
-                }
+        void add(InvertedRecord record) {
+            if (record.getTermId() != termId) {
+                flush();
+                termId = record.getTermId();
             }
-
-            // recordList 还剩一些，之前放进来，但还不够 batchSize 个的，所以最后再批量插入一次
-            mapper.batchInsertInvertedIndexes(recordList);  // 批量插入
-            recordList.clear();
-
-            latch.countDown();
+            if (size == docIds.length) {
+                docIds = Arrays.copyOf(docIds, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+                titleTfs = Arrays.copyOf(titleTfs, size * 2);
+                contentTfs = Arrays.copyOf(contentTfs, size * 2);
+            }
+            docIds[size] = record.getDocId();
+            weights[size] = bm25f.impact(dfs[termId], record.getDocId(), record.getTitleTf(), record.getContentTf());
+            titleTfs[size] = record.getTitleTf();
+            contentTfs[size] = record.getContentTf();
+            size++;
         }
-    }
 
-    @Timing("构建 + 保存倒排索引 —— 多线程版本")
-    @SneakyThrows
-    public void saveInvertedIndexesConcurrent(List<Document> documentList) {
-        int batchSize = 10000;  // 批量插入时，最多 10000 条
-        int groupSize = 50;
-        int listSize = documentList.size();
-        int times = (int) Math.ceil(listSize * 1.0 / groupSize);
-        CountDownLatch latch = new CountDownLatch(times);
-
-        for (int i = 0; i < listSize; i += groupSize) {
-            int from = i;
-            int to = Integer.min(from + groupSize, listSize);
-            List<Document> subList = documentList.subList(from, to);
-            Runnable task = new InvertedInsertTask(latch, batchSize, subList, mapper);
-            executorService.submit(task);
+        void flush() {
+            if (size == 0) {
+                return;
+            }
+            try {
+                writer.addPostings(words[termId], termId, docIds, weights, titleTfs, contentTfs, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            size = 0;
         }
-
-        latch.await();
     }
 }
@@ -0,0 +1,159 @@
+package com.peixinchen.searcher.indexer.core;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 构建索引各个阶段的指标：
+ *   indexer.files.scanned：扫描到的 html 文件数
+ *   indexer.parse：解析一个文件（读文件 + 抽取正文）的耗时   indexer.segment：一篇文档分词、统计词频的耗时
+ *   indexer.insert：一批正排 / 倒排记录的插入耗时（tag table）   indexer.insert.rows：插入的记录数（tag table）
+ *   indexer.stage：@Timing 标注的方法的耗时（tag stage）   indexer.pipeline.queue：流水线各阶段之间队列中的元素数（tag queue）
+ *   indexer.write.concurrency：当前允许同时写数据库的线程数（见 WriteLimiter）
+ *   executor.*：AppConfig 线程池的排队任务数、活跃线程数等（tag name = index）
+ * Timer 在客户端算好 p50 / p95 / p99；构建是一次性的，统计窗口设成覆盖整个构建过程，而不是默认的最近几分钟
+ * 构建过程中可以通过 JMX（org.springframework.boot:type=Endpoint,name=Metrics）查看，构建结束时由 report() 打到日志里
+ */
+@Slf4j
+@Component
+public class IndexMetrics {
+    private static final Duration WINDOW = Duration.ofDays(1);
+
+    private final MeterRegistry registry;
+    private final Counter scanned;
+    private final Timer parse;
+    private final Timer segment;
+
+    @Autowired
+    public IndexMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.scanned = Counter.builder("indexer.files.scanned")
+                .description("扫描到的 html 文件数")
+                .register(registry);
+        this.parse = timer("indexer.parse", "解析一个文件的耗时").register(registry);
+        this.segment = timer("indexer.segment", "一篇文档分词、统计词频的耗时").register(registry);
+    }
+
+    private static Timer.Builder timer(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .distributionStatisticExpiry(WINDOW)
+                .distributionStatisticBufferLength(1);
+    }
+
+    public void scanned() {
+        scanned.increment();
+    }
+
+    public <T> T parse(Supplier<T> supplier) {
+        return parse.record(supplier);
+    }
+
+    public void segment(Runnable runnable) {
+        segment.record(runnable);
+    }
+
+    /**
+     * 插入 rows 条记录到 table，记下耗时和条数
+     */
+    public void insert(String table, int rows, Runnable insert) {
+        timer("indexer.insert", "一批记录的插入耗时").tag("table", table).register(registry).record(insert);
+        Counter.builder("indexer.insert.rows")
+                .description("插入的记录数")
+                .tag("table", table)
+                .register(registry)
+                .increment(rows);
+    }
+
+    // 所有写倒排记录的方式都经过 InvertedIndexLoader，在外面包一层就能统计到
+    public InvertedIndexLoader timed(InvertedIndexLoader loader) {
+        return (recordList, generation) -> insert("inverted_indexes", recordList.size(), () -> loader.load(recordList, generation));
+    }
+
+    public Timer stage(String stage) {
+        return timer("indexer.stage", "@Timing 标注的方法的耗时").tag("stage", stage).register(registry);
+    }
+
+    public void monitor(String queue, Collection<?> elements) {
+        Gauge.builder("indexer.pipeline.queue", elements, Collection::size)
+                .description("流水线各阶段之间队列中的元素数")
+                .tag("queue", queue)
+                .register(registry);
+    }
+
+    public void writeConcurrency(Supplier<Number> limit) {
+        Gauge.builder("indexer.write.concurrency", limit)
+                .description("当前允许同时写数据库的线程数")
+                .register(registry);
+    }
+
+    /**
+     * 把构建相关的指标打到日志里，计数器同时给出按整个构建耗时算的每秒速度
+     * @param elapsedNanos 整个构建的耗时
+     */
+    public void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        List<Meter> meters = registry.getMeters().stream()
+                .filter(meter -> {
+                    String name = meter.getId().getName();
+                    return (name.startsWith("indexer.") || name.startsWith("executor")) && !name.endsWith(".percentile");
+                })
+                .sorted(Comparator.comparing(meter -> describe(meter.getId())))
+                .collect(Collectors.toList());
+
+        log.info("构建耗时 {} 秒，各项指标：", format(seconds));
+        for (Meter meter : meters) {
+            String name = describe(meter.getId());
+            if (meter instanceof Timer) {
+                Timer timer = (Timer) meter;
+                HistogramSnapshot snapshot = timer.takeSnapshot();
+                StringBuilder percentiles = new StringBuilder();
+                for (ValueAtPercentile value : snapshot.percentileValues()) {
+                    percentiles.append("，p").append(Math.round(value.percentile() * 100))
+                            .append(" ").append(format(value.value(TimeUnit.MILLISECONDS))).append(" ms");
+                }
+                log.info("{}：{} 次，共 {} 秒，平均 {} ms，最大 {} ms{}", name, timer.count(),
+                        format(timer.totalTime(TimeUnit.SECONDS)), format(timer.mean(TimeUnit.MILLISECONDS)),
+                        format(timer.max(TimeUnit.MILLISECONDS)), percentiles);
+            } else if (meter instanceof Counter) {
+                double count = ((Counter) meter).count();
+                log.info("{}：{}，每秒 {}", name, (long) count, format(seconds > 0 ? count / seconds : 0));
+            } else if (meter instanceof FunctionCounter) {
+                log.info("{}：{}", name, (long) ((FunctionCounter) meter).count());
+            } else if (meter instanceof Gauge) {
+                log.info("{}：{}", name, format(((Gauge) meter).value()));
+            }
+        }
+    }
+
+    private static String describe(Meter.Id id) {
+        if (id.getTags().isEmpty()) {
+            return id.getName();
+        }
+        return id.getName() + id.getTags().stream()
+                .map(tag -> tag.getKey() + "=" + tag.getValue())
+                .collect(Collectors.joining(",", "{", "}"));
+    }
+
+    private static String format(double value) {
+        return String.format("%.2f", value);
+    }
+}
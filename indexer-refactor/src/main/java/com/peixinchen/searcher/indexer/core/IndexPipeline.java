@@ -0,0 +1,495 @@
+package com.peixinchen.searcher.indexer.core;
+
+import com.peixinchen.searcher.indexer.aop.Timing;
+import com.peixinchen.searcher.indexer.mapper.IndexDatabaseMapper;
+import com.peixinchen.searcher.indexer.model.Document;
+import com.peixinchen.searcher.indexer.model.InvertedRecord;
+import com.peixinchen.searcher.indexer.model.ManifestEntry;
+import com.peixinchen.searcher.indexer.model.TermDictionary;
+import com.peixinchen.searcher.indexer.properties.IndexerProperties;
+import com.peixinchen.searcher.indexer.util.FileScanner;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 流式构建索引：扫描 -> 解析（分配 docId）-> 保存正排
+ *                                       \-> 倒排累积 -> 多路归并 + 保存倒排
+ * 每两个阶段之间用一个有界阻塞队列连接，下游处理不过来时上游会阻塞在 put 上（背压）
+ * docId 在解析时由 DocIdAllocator 分配，不用等正排插入之后数据库回填，所以正排、倒排两条支路同时进行
+ * 文档的词频累积进倒排线程自己的 PostingShard 之后就不再被引用；PostingShard 有内存上限，超过了就排好序写到临时文件，
+ * 所以内存占用只和队列长度、shard 上限有关，和文档总数无关
+ * 倒排记录最后按 (termid, docid) 的顺序分批写入，同一个词的记录在表中是连续的（自增主键），写索引也是顺序的
+ * 默认增量构建：根据 document_manifest 中的文件指纹，只处理新增、修改的文件，并下线已删除的文件（见 DocumentManifest）
+ * 解析、分词是 CPU 密集的，线程数等于 CPU 核数；写数据库的两个阶段是 IO 密集的，线程数按连接池大小定，
+ * 实际同时写的线程数由 WriteLimiter 根据写入耗时自动调整
+ * 每次构建写入新的一代索引，全部写完、校验通过后才发布，查询端不会看到构建了一半的索引（见 GenerationManager）
+ */
+@Slf4j
+@Component
+public class IndexPipeline {
+    private static final int FILE_QUEUE_CAPACITY = 1000;
+    private static final int DOCUMENT_QUEUE_CAPACITY = 100;
+    private static final int RECORD_QUEUE_CAPACITY = 16;
+    private static final int FORWARD_THREADS = 4;
+
+    private static final int RETIRE_BATCH_SIZE = 1000;
+    private static final int MANIFEST_BATCH_SIZE = 1000;
+
+    // inverted_indexes 的二级索引：索引名 -> 列
+    private static final String[][] INVERTED_SECONDARY_INDEXES = {
+            { "idx_termid", "termid" },
+            { "idx_docid", "docid" },
+    };
+
+    // 队列中的结束标记，每个下游线程收到一个就退出
+    private static final ScannedFile END_OF_FILES = new ScannedFile(null, null, 0, 0);
+    private static final Document END_OF_DOCUMENTS = new Document("", "", "");
+    private static final List<InvertedRecord> END_OF_RECORDS = new ArrayList<>();
+
+    private final FileScanner fileScanner;
+    private final IndexDatabaseMapper mapper;
+    private final IndexerProperties properties;
+    private final IndexManager indexManager;
+    private final InvertedIndexLoader loader;
+    private final GenerationManager generationManager;
+    private final TransactionTemplate transactionTemplate;
+    private final SegmentStore segmentStore;
+    private final MergeScheduler mergeScheduler;
+    private final IndexMetrics metrics;
+    private final DataSource dataSource;
+
+    // 扫描阶段交给解析阶段的文件，带上扫描时读到的属性
+    private static class ScannedFile {
+        final Path path;
+        final String relativePath;
+        final long size;
+        final long mtime;
+
+        ScannedFile(Path path, String relativePath, long size, long mtime) {
+            this.path = path;
+            this.relativePath = relativePath;
+            this.size = size;
+            this.mtime = mtime;
+        }
+    }
+
+    @Autowired
+    public IndexPipeline(FileScanner fileScanner, IndexDatabaseMapper mapper, IndexerProperties properties, IndexManager indexManager,
+                         InvertedIndexLoader loader, GenerationManager generationManager, TransactionTemplate transactionTemplate,
+                         SegmentStore segmentStore, MergeScheduler mergeScheduler, IndexMetrics metrics, DataSource dataSource) {
+        this.fileScanner = fileScanner;
+        this.mapper = mapper;
+        this.properties = properties;
+        this.indexManager = indexManager;
+        this.loader = loader;
+        this.generationManager = generationManager;
+        this.transactionTemplate = transactionTemplate;
+        this.segmentStore = segmentStore;
+        this.mergeScheduler = mergeScheduler;
+        this.metrics = metrics;
+        this.dataSource = dataSource;
+    }
+
+    // 一次构建的状态，各个阶段共享
+    private static class Build {
+        final int generation;
+        final boolean full;
+        final DocumentManifest manifest;
+        final TermDictionary dictionary;
+        final DocIdAllocator docIds;
+        final AtomicInteger forwarded = new AtomicInteger();
+        final AtomicLong postings = new AtomicLong();
+
+        Build(int generation, boolean full, DocumentManifest manifest, TermDictionary dictionary, DocIdAllocator docIds) {
+            this.generation = generation;
+            this.full = full;
+            this.manifest = manifest;
+            this.dictionary = dictionary;
+            this.docIds = docIds;
+        }
+    }
+
+    @Timing("流水线构建 + 保存正排、倒排索引")
+    public void run() throws InterruptedException, IOException {
+        int previousGeneration = generationManager.activeGeneration();
+        int generation = generationManager.begin();
+
+        // 上次构建留下的文件指纹和词典；全量重建时忽略清单，所有文件都当作新文件，已有的记录在发布时全部下线
+        boolean full = !properties.isIncremental();
+        DocumentManifest manifest = new DocumentManifest(full ? Collections.emptyList() : mapper.selectManifest());
+        TermDictionary dictionary = new TermDictionary();
+        mapper.scanTerms(context -> dictionary.restore(context.getResultObject()));
+        log.debug("上次构建的清单中有 {} 个文件，词典中有 {} 个词。", manifest.previousSize(), dictionary.size());
+        Build build = new Build(generation, full, manifest, dictionary, generationManager.docIdAllocator(generation));
+
+        // 倒排表是空的时候（第一次构建），不带二级索引写入、最后一次性排序建索引，比边写边维护两棵 B+ 树快得多
+        // 表中已有记录时，查询端还在读，而且为少量记录重建整张表的索引也得不偿失
+        boolean dropIndexes = properties.isDropIndexesDuringLoad() && mapper.invertedIndexesEmpty();
+        if (dropIndexes) {
+            dropInvertedSecondaryIndexes();
+        }
+        try {
+            runStages(build);
+        } finally {
+            if (dropIndexes) {
+                addInvertedSecondaryIndexes();
+            }
+        }
+
+        // 5. 校验写进数据库的记录数，然后在一个事务中完成剩下的写入并发布这一代：
+        //    保存词典（已有的词累加本次新增的 df），下线被修改文件的旧版本和已删除的文件，更新清单，把这一代置为 active
+        //    中途失败的话这一代不会被发布，下次构建开始时会撤销它写入的记录，清单也还是旧的，文件会被重新处理
+        generationManager.validate(generation, build.forwarded.get(), build.postings.get());
+        List<String> deletedPaths = manifest.deletedPaths();
+        List<Integer> retiredDocIds = manifest.retiredDocIds(deletedPaths);
+        transactionTemplate.executeWithoutResult(status -> {
+            if (full) {
+                mapper.resetDocumentFrequencies();
+                mapper.retireAllForwardIndexes(generation);
+                mapper.retireAllInvertedIndexes(generation);
+                mapper.deleteAllManifest();
+            } else {
+                retireDocuments(retiredDocIds, generation);
+            }
+            indexManager.saveTermDictionary(dictionary);
+            saveManifest(manifest.updatedEntries(), deletedPaths);
+            generationManager.activate(generation, build.forwarded.get(), build.postings.get(), build.docIds.next());
+        });
+
+        log.debug("第 {} 代发布完成：{}，新增 {} 篇，下线 {} 篇（其中删除 {} 篇），共 {} 个不同的词。",
+                generation, full ? "全量重建" : "增量构建", build.forwarded.get(),
+                retiredDocIds.size(), deletedPaths.size(), dictionary.size());
+
+        // 6. 配置了 index-root-path 时，把这一代新增的文档追加成一个索引段，查询端可以不依赖数据库；段多了在后台合并
+        if (segmentStore.enabled()) {
+            indexManager.appendSegment(generation, previousGeneration, retiredDocIds, full);
+            mergeScheduler.maybeMerge();
+        }
+    }
+
+    private void runStages(Build build) throws InterruptedException, IOException {
+        Execution execution = new Execution();
+        int cpuThreads = Runtime.getRuntime().availableProcessors();
+        int forwardBatchSize = properties.getForwardBatchSize();
+        int invertedBatchSize = properties.getInvertedBatchSize();
+        DocumentManifest manifest = build.manifest;
+        TermDictionary dictionary = build.dictionary;
+
+        // 正排、倒排写入共用一个并发上限；写的线程比连接多时，多出来的线程在 WriteLimiter 上等，而不是等连接池超时报错
+        int writeThreads = writeConcurrency();
+        WriteLimiter limiter = new WriteLimiter(writeThreads);
+        metrics.writeConcurrency(limiter::limit);
+        WriteLimiter.Channel forwardWrites = limiter.channel();
+        WriteLimiter.Channel invertedWrites = limiter.channel();
+        InvertedIndexLoader limitedLoader = (recordList, generation) ->
+                invertedWrites.run(recordList.size(), () -> loader.load(recordList, generation));
+
+        BlockingQueue<ScannedFile> fileQueue = new ArrayBlockingQueue<>(FILE_QUEUE_CAPACITY);
+        BlockingQueue<Document> forwardQueue = new ArrayBlockingQueue<>(DOCUMENT_QUEUE_CAPACITY);
+        BlockingQueue<Document> invertQueue = new ArrayBlockingQueue<>(DOCUMENT_QUEUE_CAPACITY);
+        BlockingQueue<List<InvertedRecord>> recordQueue = new ArrayBlockingQueue<>(RECORD_QUEUE_CAPACITY);
+        List<PostingRun> runs = Collections.synchronizedList(new ArrayList<>());
+        Path spillDirectory = Files.createTempDirectory("postings-");
+        AtomicInteger spills = new AtomicInteger();
+        // 哪个队列总是满的，它的下游就是瓶颈
+        metrics.monitor("files", fileQueue);
+        metrics.monitor("forward", forwardQueue);
+        metrics.monitor("invert", invertQueue);
+        metrics.monitor("records", recordQueue);
+
+        AtomicInteger scanned = new AtomicInteger();
+        AtomicInteger unchanged = new AtomicInteger();
+        AtomicInteger parsed = new AtomicInteger();
+        AtomicInteger inverted = new AtomicInteger();
+
+        // 1. 扫描：多个线程并行遍历目录树，找到一个 html 文件，大小或修改时间和上次不一样，就放进 fileQueue
+        Path rootPath = Paths.get(properties.getDocRootPath());
+        execution.startStage("扫描线程", 1, () -> {
+            fileScanner.scanFileParallel(properties.getDocRootPath(), (path, attributes) -> {
+                return attributes.isRegularFile() && path.getFileName().toString().endsWith(".html");
+            }, (path, attributes) -> {
+                scanned.incrementAndGet();
+                metrics.scanned();
+                String relativePath = rootPath.relativize(path).toString().replace("\\", "/");
+                long size = attributes.size();
+                long mtime = attributes.lastModifiedTime().toMillis();
+                if (manifest.unchanged(relativePath, size, mtime)) {
+                    unchanged.incrementAndGet();
+                    return;
+                }
+                execution.put(fileQueue, new ScannedFile(path, relativePath, size, mtime));
+            }, properties.getScanParallelism());
+        }, () -> execution.putEnd(fileQueue, END_OF_FILES, cpuThreads));
+
+        // 2. 解析：读文件，构建 Document（顺便算出内容 hash），内容确实变了才分词和统计词频（整个过程中每篇文档只分词这一次）
+        //    然后分配 docId，同一个文档同时交给正排和倒排两条支路：正排只用标题、正文，倒排只用词频，互不影响
+        File rootFile = new File(properties.getDocRootPath());
+        execution.startStage("解析线程", cpuThreads, () -> {
+            ScannedFile file;
+            while ((file = execution.take(fileQueue)) != END_OF_FILES) {
+                Path path = file.path;
+                Document document = metrics.parse(() -> new Document(path.toFile(), properties.getUrlPrefix(), rootFile));
+                document.setPath(file.relativePath);
+                document.setSize(file.size);
+                document.setMtime(file.mtime);
+                if (!manifest.needsIndexing(document)) {
+                    unchanged.incrementAndGet();
+                    continue;
+                }
+                metrics.segment(() -> document.segment(dictionary));
+                document.setDocId(build.docIds.allocate());
+                execution.put(forwardQueue, document);
+                execution.put(invertQueue, document);
+                parsed.incrementAndGet();
+            }
+        }, () -> {
+            execution.putEnd(forwardQueue, END_OF_DOCUMENTS, FORWARD_THREADS);
+            execution.putEnd(invertQueue, END_OF_DOCUMENTS, cpuThreads);
+        });
+
+        // 3. 保存正排：攒够一批插入一次
+        execution.startStage("正排插入线程", FORWARD_THREADS, () -> {
+            List<Document> batch = new ArrayList<>(forwardBatchSize);
+            Document document;
+            while ((document = execution.take(forwardQueue)) != END_OF_DOCUMENTS) {
+                batch.add(document);
+                if (batch.size() == forwardBatchSize) {
+                    flushForward(batch, build, forwardWrites);
+                }
+            }
+            flushForward(batch, build, forwardWrites);
+        }, () -> {});
+
+        // 4. 倒排累积（SPIMI），和保存正排同时进行：直接使用解析时统计好的词频，按词追加到这个线程自己的 PostingShard 里，文档本身就可以被回收了
+        //    所有线程都结束之后，由最后一个结束的线程把所有 run 多路归并，按 (termid, docid) 的顺序分批交给插入线程
+        long shardBytes = properties.getInvertedShardBytes();
+        execution.startStage("倒排累积线程", cpuThreads, () -> {
+            PostingShard shard = new PostingShard(shardBytes, spillDirectory, runs);
+            Document document;
+            while ((document = execution.take(invertQueue)) != END_OF_DOCUMENTS) {
+                shard.add(document.getDocId(), document.getTermFrequencies());
+                build.postings.addAndGet(document.getTermFrequencies().size());
+                inverted.incrementAndGet();
+            }
+            spills.addAndGet(shard.finish());
+        }, () -> {
+            metrics.stage("多路归并倒排记录").record(() -> mergeRuns(execution, runs, recordQueue, invertedBatchSize));
+            execution.putEnd(recordQueue, END_OF_RECORDS, writeThreads);
+        });
+
+        // 5. 保存倒排：每批记录是同一段 termid 范围内的，多个线程同时写
+        execution.startStage("倒排插入线程", writeThreads, () -> {
+            List<InvertedRecord> recordList;
+            while ((recordList = execution.take(recordQueue)) != END_OF_RECORDS) {
+                limitedLoader.load(recordList, build.generation);
+            }
+        }, () -> {});
+
+        try {
+            execution.await();
+        } finally {
+            deleteSpillDirectory(spillDirectory);
+        }
+        log.debug("流水线结束：扫描 {} 个文件，未变化 {} 个，解析 {} 篇，正排 {} 篇，倒排 {} 篇（写出 {} 个临时 run），结束时同时写数据库的线程数上限 {} / {}。",
+                scanned.get(), unchanged.get(), parsed.get(), build.forwarded.get(), inverted.get(), spills.get(), limiter.limit(), writeThreads);
+    }
+
+    private static void mergeRuns(Execution execution, List<PostingRun> runs, BlockingQueue<List<InvertedRecord>> recordQueue, int batchSize) {
+        List<InvertedRecord> batch = new ArrayList<>(batchSize);
+        try {
+            PostingRun.merge(runs, record -> {
+                batch.add(record);
+                if (batch.size() == batchSize) {
+                    execution.put(recordQueue, new ArrayList<>(batch));
+                    batch.clear();
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!batch.isEmpty()) {
+            execution.put(recordQueue, batch);
+        }
+    }
+
+    // 正常归并完 run 文件已经删掉了，这里清理出错时留下的
+    private static void deleteSpillDirectory(Path spillDirectory) throws IOException {
+        try (Stream<Path> paths = Files.list(spillDirectory)) {
+            for (Path path : paths.collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+        Files.deleteIfExists(spillDirectory);
+    }
+
+    // 配置了就用配置的，否则取连接池的大小：同时写的线程再多也拿不到更多的连接
+    private int writeConcurrency() {
+        if (properties.getWriteConcurrency() > 0) {
+            return properties.getWriteConcurrency();
+        }
+        if (dataSource instanceof HikariDataSource) {
+            return ((HikariDataSource) dataSource).getMaximumPoolSize();
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    private void dropInvertedSecondaryIndexes() {
+        List<String> existing = mapper.selectIndexNames("inverted_indexes");
+        for (String[] index : INVERTED_SECONDARY_INDEXES) {
+            if (existing.contains(index[0])) {
+                mapper.dropIndex("inverted_indexes", index[0]);
+            }
+        }
+        log.debug("已删除 inverted_indexes 的二级索引，导入完成后重建");
+    }
+
+    // 上次构建中途失败时索引可能还没建回来，所以只补建缺少的
+    private void addInvertedSecondaryIndexes() {
+        List<String> existing = mapper.selectIndexNames("inverted_indexes");
+        for (String[] index : INVERTED_SECONDARY_INDEXES) {
+            if (!existing.contains(index[0])) {
+                long start = System.currentTimeMillis();
+                mapper.addIndex("inverted_indexes", index[0], index[1]);
+                log.debug("重建索引 {} 耗时 {} ms", index[0], System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    // 先按这些文档的倒排记录扣减 df，再把倒排、正排记录标记为从这一代开始不可见
+    private void retireDocuments(List<Integer> docIdList, int generation) {
+        for (int from = 0; from < docIdList.size(); from += RETIRE_BATCH_SIZE) {
+            List<Integer> batch = docIdList.subList(from, Integer.min(from + RETIRE_BATCH_SIZE, docIdList.size()));
+            mapper.decrementDocumentFrequencies(batch);
+            mapper.batchRetireInvertedIndexes(batch, generation);
+            mapper.batchRetireForwardIndexes(batch, generation);
+        }
+    }
+
+    private void saveManifest(List<ManifestEntry> updatedEntries, List<String> deletedPaths) {
+        for (int from = 0; from < updatedEntries.size(); from += MANIFEST_BATCH_SIZE) {
+            mapper.batchUpsertManifest(updatedEntries.subList(from, Integer.min(from + MANIFEST_BATCH_SIZE, updatedEntries.size())));
+        }
+        for (int from = 0; from < deletedPaths.size(); from += MANIFEST_BATCH_SIZE) {
+            mapper.batchDeleteManifest(deletedPaths.subList(from, Integer.min(from + MANIFEST_BATCH_SIZE, deletedPaths.size())));
+        }
+    }
+
+    private void flushForward(List<Document> batch, Build build, WriteLimiter.Channel writes) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        writes.run(batch.size(), () -> metrics.insert("forward_indexes", batch.size(), () -> mapper.batchInsertForwardIndexes(batch, build.generation)));
+        build.forwarded.addAndGet(batch.size());
+        for (Document document : batch) {
+            build.manifest.indexed(document);
+            // 正排保存之后正文就用不到了（倒排只需要词频），提前释放
+            document.setContent(null);
+        }
+        batch.clear();
+    }
+
+    /**
+     * 一次流水线执行的线程和出错状态
+     * 任意一个线程出错后，其他线程在 put / take 时发现出错就退出，避免互相等待
+     */
+    private static class Execution {
+        private final List<Thread> threads = new ArrayList<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        /**
+         * 启动一个阶段
+         * @param worker 每个线程执行的逻辑
+         * @param onFinished 这个阶段的所有线程都正常结束后，由最后一个结束的线程执行（用来通知下游结束）
+         */
+        void startStage(String name, int threadCount, Runnable worker, Runnable onFinished) {
+            AtomicInteger running = new AtomicInteger(threadCount);
+            for (int i = 0; i < threadCount; i++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        worker.run();
+                        if (running.decrementAndGet() == 0) {
+                            onFinished.run();
+                        }
+                    } catch (CancellationException ignored) {
+                        // 其他线程已经出错了，这里直接退出
+                    } catch (Throwable t) {
+                        log.error("{} 出错", Thread.currentThread().getName(), t);
+                        failure.compareAndSet(null, t);
+                    }
+                });
+                thread.setName(name + "-" + i);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+
+        <T> void put(BlockingQueue<T> queue, T item) {
+            try {
+                while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                    checkFailure();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            }
+        }
+
+        <T> T take(BlockingQueue<T> queue) {
+            try {
+                T item;
+                while ((item = queue.poll(100, TimeUnit.MILLISECONDS)) == null) {
+                    checkFailure();
+                }
+                return item;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            }
+        }
+
+        <T> void putEnd(BlockingQueue<T> queue, T end, int consumerCount) {
+            for (int i = 0; i < consumerCount; i++) {
+                put(queue, end);
+            }
+        }
+
+        void await() throws InterruptedException {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Throwable t = failure.get();
+            if (t != null) {
+                throw new RuntimeException("流水线构建索引失败", t);
+            }
+        }
+
+        private void checkFailure() {
+            if (failure.get() != null) {
+                throw new CancellationException();
+            }
+        }
+    }
+}
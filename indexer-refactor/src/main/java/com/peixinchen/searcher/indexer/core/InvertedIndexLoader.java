@@ -0,0 +1,21 @@
+package com.peixinchen.searcher.indexer.core;
+
+import com.peixinchen.searcher.indexer.model.InvertedRecord;
+
+import java.util.List;
+
+/**
+ * 把一批倒排记录写进 inverted_indexes 表，具体用哪种方式由 searcher.indexer.inverted-loader 配置决定（见 AppConfig）
+ * 会被多个倒排插入线程同时调用，实现必须是线程安全的；调用返回之后 recordList 会被清空复用
+ */
+@FunctionalInterface
+public interface InvertedIndexLoader {
+    enum Type {
+        MYBATIS,        // 原来的做法：MyBatis <foreach> 拼一条多行 insert，每批都要重新解析一遍动态 SQL
+        JDBC_BATCH,     // 预编译语句 + addBatch()，配合连接参数 rewriteBatchedStatements=true 由驱动改写成多行 insert
+        LOAD_DATA       // 把记录编码成制表符分隔的文本，通过 LOAD DATA LOCAL INFILE 流式导入，最快，需要开启 local_infile
+    }
+
+    // 记录写进 generation 这一代（gen_from = generation）
+    void load(List<InvertedRecord> recordList, int generation);
+}
@@ -0,0 +1,35 @@
+package com.peixinchen.searcher.indexer.core;
+
+import com.peixinchen.searcher.indexer.model.InvertedRecord;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+/**
+ * 用同一条预编译好的 insert 语句批量执行，SQL 只解析一次
+ * 连接参数需要带上 rewriteBatchedStatements=true，否则驱动会一条一条地发给 MySQL
+ */
+public class JdbcBatchInvertedIndexLoader implements InvertedIndexLoader {
+    private static final String SQL = "insert into inverted_indexes (termid, docid, weight, offsets, title_tf, content_tf, gen_from) values (?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    public JdbcBatchInvertedIndexLoader(JdbcTemplate jdbcTemplate, int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void load(List<InvertedRecord> recordList, int generation) {
+        jdbcTemplate.batchUpdate(SQL, recordList, batchSize, (statement, record) -> {
+            statement.setInt(1, record.getTermId());
+            statement.setInt(2, record.getDocId());
+            statement.setInt(3, record.getWeight());
+            statement.setString(4, record.getOffsets());
+            statement.setInt(5, record.getTitleTf());
+            statement.setInt(6, record.getContentTf());
+            statement.setInt(7, generation);
+        });
+    }
+}
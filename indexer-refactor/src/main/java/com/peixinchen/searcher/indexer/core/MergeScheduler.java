@@ -0,0 +1,181 @@
+package com.peixinchen.searcher.indexer.core;
+
+import com.peixinchen.searcher.indexer.properties.IndexerProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台合并索引段：每次追加新段之后调用 maybeMerge()，按 TieredMergePolicy 选出要合并的段，
+ * 在 AppConfig 配置的合并线程中多路归并成一个新段（丢掉已删除的文档，用提交点中最新的统计重新打分），然后发布新的提交点替换掉它们
+ *
+ * 限流，避免合并占满 CPU、磁盘：
+ *   1. 同一时间最多只有一个合并任务，上一个没结束时 maybeMerge() 直接返回，由正在进行的任务接着检查
+ *   2. 合并线程是最低优先级，写入速度不超过 merge-bytes-per-second
+ */
+@Slf4j
+@Component
+public class MergeScheduler {
+    private static final double MAX_DELETED_RATIO = 0.3;
+
+    private final SegmentStore store;
+    private final ExecutorService mergeExecutor;
+    private final TieredMergePolicy policy;
+    private final long bytesPerSecond;
+    private final Semaphore running = new Semaphore(1);
+    // 段名 + 删除标记文件名 -> 统计，只在合并任务中访问（同一时间只有一个）
+    private Map<String, TieredMergePolicy.SegmentStats> statsCache = new HashMap<>();
+
+    @Autowired
+    public MergeScheduler(SegmentStore store, ExecutorService mergeExecutor, IndexerProperties properties) {
+        this.store = store;
+        this.mergeExecutor = mergeExecutor;
+        this.policy = new TieredMergePolicy(properties.getMergeFactor(), MAX_DELETED_RATIO);
+        this.bytesPerSecond = properties.getMergeBytesPerSecond();
+    }
+
+    public void maybeMerge() {
+        if (!store.enabled() || !running.tryAcquire()) {
+            return;
+        }
+        try {
+            mergeExecutor.execute(this::mergeUntilDone);
+        } catch (RejectedExecutionException e) {
+            running.release();
+            log.warn("合并线程已关闭，这次不合并索引段");
+        }
+    }
+
+    private void mergeUntilDone() {
+        try {
+            while (mergeOnce()) {
+                // 合并出来的段可能又和同一层的其他段凑够了数，继续检查
+            }
+        } catch (IOException e) {
+            log.warn("合并索引段失败，已有的段不受影响：{}", e.toString());
+        } finally {
+            running.release();
+        }
+    }
+
+    // 做一次合并，没有需要合并的段时返回 false
+    private boolean mergeOnce() throws IOException {
+        SegmentCommit commit = store.current();
+        if (commit.stats() == null) {
+            // 加统计文件之前写的提交点，里面的段没有存词频，没法重新打分；下一次追加段时会把整个索引重写一遍
+            return false;
+        }
+        Tombstones tombstones = store.tombstones(commit);
+        List<TieredMergePolicy.SegmentStats> stats = new ArrayList<>();
+        Map<String, TieredMergePolicy.SegmentStats> cached = new HashMap<>();
+        for (String name : commit.segments()) {
+            // 段文件和删除标记文件都不可变，同一对文件的统计不用重复算
+            String key = name + " " + commit.tombstones();
+            TieredMergePolicy.SegmentStats segmentStats = statsCache.get(key);
+            if (segmentStats == null) {
+                segmentStats = SegmentReader.stats(store.resolve(name), tombstones);
+            }
+            cached.put(key, segmentStats);
+            stats.add(segmentStats);
+        }
+        statsCache = cached;
+        List<String> names = policy.findMerge(stats);
+        if (names.isEmpty()) {
+            return false;
+        }
+
+        List<SegmentReader> inputs = new ArrayList<>();
+        try {
+            for (String name : names) {
+                inputs.add(SegmentReader.open(store.resolve(name)));
+            }
+            return merge(names, inputs, tombstones, commit);
+        } finally {
+            for (SegmentReader reader : inputs) {
+                reader.close();
+            }
+        }
+    }
+
+    // 把 inputs 合并成一个新段，发布替换掉它们的提交点
+    private boolean merge(List<String> names, List<SegmentReader> inputs, Tombstones tombstones, SegmentCommit commit) throws IOException {
+        long start = System.nanoTime();
+        String name = "segment-" + store.nextSequence() + ".seg";
+        Path tmp = store.resolve(name + ".tmp");
+        int[] dropped;
+        int docCount;
+        try (SegmentWriter writer = new SegmentWriter(tmp, commit.generation())) {
+            dropped = new SegmentMerger(inputs, tombstones, store.stats(commit), written -> throttle(written, start)).merge(writer);
+            writer.finish();
+            docCount = writer.docCount();
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        } catch (UncheckedIOException e) {
+            Files.deleteIfExists(tmp);
+            throw e.getCause();
+        }
+
+        synchronized (store) {
+            // 合并期间可能追加了新的段、删除了更多文档，以最新的提交点为准；参与合并的段被换掉了（全量重建）就放弃这次合并
+            SegmentCommit latest = store.current();
+            if (!latest.segments().containsAll(names)) {
+                Files.delete(tmp);
+                log.debug("合并期间索引段被替换，放弃合并 {}", names);
+                return true;
+            }
+            List<String> segments = new ArrayList<>();
+            for (String segment : latest.segments()) {
+                if (!names.contains(segment)) {
+                    segments.add(segment);
+                }
+            }
+            if (docCount > 0) {
+                Files.move(tmp, store.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+                segments.add(name);
+            } else {
+                Files.delete(tmp);     // 参与合并的文档全都被删除了
+            }
+            String tombstonesName = latest.tombstones();
+            if (dropped.length > 0) {
+                tombstonesName = store.writeTombstones(store.tombstones(latest).remove(dropped));
+            }
+            store.publish(new SegmentCommit(store.nextSequence(), latest.generation(), segments, tombstonesName, latest.stats()));
+        }
+        log.debug("合并索引段 {} -> {}：{} 篇文档，丢掉 {} 篇已删除的文档，耗时 {} 毫秒",
+                names, name, docCount, dropped.length, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return true;
+    }
+
+    // 写入速度超过 bytesPerSecond 时睡一会儿
+    private void throttle(long written, long start) {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        long expectedNanos = written * 1_000_000_000L / bytesPerSecond;
+        long aheadNanos = expectedNanos - (System.nanoTime() - start);
+        if (aheadNanos > TimeUnit.MILLISECONDS.toNanos(10)) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(aheadNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("合并被中断"));
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.peixinchen.searcher.indexer.core;
+
+import com.peixinchen.searcher.indexer.model.InvertedRecord;
+import com.peixinchen.searcher.indexer.model.TermFrequencies;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * PostingShard 写出的一个有序段，按 (termId, docId) 递增的顺序逐条读出倒排记录
+ * 用法：while (run.next()) { run.termId(); run.docId(); ... }
+ */
+abstract class PostingRun implements AutoCloseable {
+    private static final Comparator<PostingRun> ORDER = Comparator.comparingInt(PostingRun::termId).thenComparingInt(PostingRun::docId);
+
+    protected int termId;
+    protected final int[] record = new int[PostingShard.RECORD_INTS];
+
+    abstract boolean next() throws IOException;
+
+    int termId() {
+        return termId;
+    }
+
+    int docId() {
+        return record[0];
+    }
+
+    InvertedRecord toRecord() {
+        int titleTf = record[1];
+        int contentTf = record[2];
+        String offsets = TermFrequencies.formatOffsets(record, 3, Integer.min(contentTf, TermFrequencies.MAX_OFFSETS));
+        return new InvertedRecord(termId, record[0], TermFrequencies.weight(titleTf, contentTf), offsets, titleTf, contentTf);
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    /**
+     * 多路归并所有 run，按 (termId, docId) 的顺序把每条记录交给 consumer：同一个词的记录是连续的，并且按 docId 递增
+     * 不管成功与否，所有 run 都会被关闭
+     */
+    static void merge(List<PostingRun> runs, Consumer<InvertedRecord> consumer) throws IOException {
+        PriorityQueue<PostingRun> queue = new PriorityQueue<>(Integer.max(1, runs.size()), ORDER);
+        try {
+            for (PostingRun run : runs) {
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+            while (!queue.isEmpty()) {
+                PostingRun run = queue.poll();
+                consumer.accept(run.toRecord());
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+        } finally {
+            for (PostingRun run : runs) {
+                run.close();
+            }
+        }
+    }
+
+    // 留在内存中的 run：每个词一个数组，和 PostingShard 中的布局一样
+    static class MemoryRun extends PostingRun {
+        private final int[] termIds;
+        private int[][] records;
+        private final int[] sizes;
+        private int term = 0;
+        private int at = -PostingShard.RECORD_INTS;
+
+        MemoryRun(int[] termIds, int[][] records, int[] sizes) {
+            this.termIds = termIds;
+            this.records = records;
+            this.sizes = sizes;
+        }
+
+        @Override
+        boolean next() {
+            at += PostingShard.RECORD_INTS;
+            while (term < termIds.length && at >= sizes[term]) {
+                records[term] = null;       // 读完的词及时释放
+                term++;
+                at = 0;
+            }
+            if (term == termIds.length) {
+                return false;
+            }
+            termId = termIds[term];
+            System.arraycopy(records[term], at, record, 0, PostingShard.RECORD_INTS);
+            return true;
+        }
+
+        @Override
+        public void close() {
+            records = null;
+        }
+    }
+
+    // 写到临时文件中的 run，格式见 PostingShard.spill
+    static class FileRun extends PostingRun {
+        private final Path path;
+        private DataInputStream in;
+        private int remaining;
+
+        FileRun(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        boolean next() throws IOException {
+            if (in == null) {
+                in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+            }
+            if (remaining == 0) {
+                termId = in.readInt();
+                if (termId < 0) {
+                    return false;
+                }
+                remaining = in.readInt();
+            }
+            record[0] = in.readInt();
+            record[1] = in.readInt();
+            record[2] = in.readInt();
+            int n = Integer.min(record[2], TermFrequencies.MAX_OFFSETS);
+            for (int j = 0; j < n; j++) {
+                record[3 + j] = in.readInt();
+            }
+            remaining--;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+            Files.deleteIfExists(path);
+        }
+    }
+}
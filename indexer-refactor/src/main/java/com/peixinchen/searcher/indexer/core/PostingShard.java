@@ -0,0 +1,189 @@
+package com.peixinchen.searcher.indexer.core;
+
+import com.peixinchen.searcher.indexer.model.TermFrequencies;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 一个倒排线程自己的倒排累积区（SPIMI：single-pass in-memory indexing），不和其他线程共享，不需要加锁
+ * 文档的词频直接按词追加到这个词的 int 数组里，不为每条倒排记录创建对象；每条记录占 RECORD_INTS 个 int：
+ *   docId, titleTf, contentTf, 正文中前 MAX_OFFSETS 次出现的偏移（不够的不用）
+ * 占用的内存超过 maxBytes 时，按 (termId, docId) 排好序写成一个临时文件（run），然后清空接着累积
+ * 所有文档都加完之后调用 finish()，剩下的排好序留在内存中作为最后一个 run；所有线程的 run 由 PostingRun.merge 多路归并
+ */
+class PostingShard {
+    static final int RECORD_INTS = 3 + TermFrequencies.MAX_OFFSETS;
+
+    // 每个词的数组对象头、引用，以及 termIds 中的一项，粗略估计
+    private static final int TERM_OVERHEAD_BYTES = 48;
+    private static final int INITIAL_RECORDS = 2;
+
+    private final long maxBytes;
+    private final Path spillDirectory;
+    private final List<PostingRun> runs;
+
+    private int[][] postings = new int[1024][];     // termId -> 这个词的记录
+    private int[] sizes = new int[1024];            // termId -> postings[termId] 中已经用了几个 int
+    private int[] termIds = new int[1024];          // 出现过的词，spill 时排序
+    private int termCount;
+    private long bytes;
+    private int spills;
+
+    /**
+     * @param runs 写出的 run 放进这里，多个线程共用，需要是线程安全的
+     */
+    PostingShard(long maxBytes, Path spillDirectory, List<PostingRun> runs) {
+        this.maxBytes = maxBytes;
+        this.spillDirectory = spillDirectory;
+        this.runs = runs;
+    }
+
+    void add(int docId, TermFrequencies tf) {
+        for (int i = 0; i < tf.size(); i++) {
+            int at = append(tf.termId(i), docId, tf.titleCount(i), tf.contentCount(i));
+            int n = Integer.min(tf.contentCount(i), TermFrequencies.MAX_OFFSETS);
+            int[] record = postings[tf.termId(i)];
+            for (int j = 0; j < n; j++) {
+                record[at + 3 + j] = tf.offset(i, j);
+            }
+        }
+        maybeSpill();
+    }
+
+    // 给这条记录留出位置，返回它在 postings[termId] 中的起始下标
+    private int append(int termId, int docId, int titleTf, int contentTf) {
+        if (termId >= postings.length) {
+            int capacity = Integer.max(postings.length * 2, termId + 1);
+            postings = Arrays.copyOf(postings, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+        }
+        int[] record = postings[termId];
+        if (record == null) {
+            record = new int[INITIAL_RECORDS * RECORD_INTS];
+            postings[termId] = record;
+            if (termCount == termIds.length) {
+                termIds = Arrays.copyOf(termIds, termCount * 2);
+            }
+            termIds[termCount++] = termId;
+            bytes += TERM_OVERHEAD_BYTES + record.length * 4L;
+        }
+        int at = sizes[termId];
+        if (at + RECORD_INTS > record.length) {
+            int[] grown = Arrays.copyOf(record, record.length * 2);
+            bytes += (grown.length - record.length) * 4L;
+            record = grown;
+            postings[termId] = record;
+        }
+        record[at] = docId;
+        record[at + 1] = titleTf;
+        record[at + 2] = contentTf;
+        sizes[termId] = at + RECORD_INTS;
+        return at;
+    }
+
+    private void maybeSpill() {
+        if (bytes >= maxBytes) {
+            try {
+                spill();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // 写成一个 run 文件：每个词 termId, 记录数, 然后是每条记录（偏移只写实际有的个数），最后以 -1 结束
+    private void spill() throws IOException {
+        Path path = Files.createTempFile(spillDirectory, "postings-", ".run");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            sortTerms();
+            for (int t = 0; t < termCount; t++) {
+                int termId = termIds[t];
+                int[] record = sortedRecords(termId);
+                int size = sizes[termId];
+                out.writeInt(termId);
+                out.writeInt(size / RECORD_INTS);
+                for (int at = 0; at < size; at += RECORD_INTS) {
+                    out.writeInt(record[at]);
+                    out.writeInt(record[at + 1]);
+                    out.writeInt(record[at + 2]);
+                    int n = Integer.min(record[at + 2], TermFrequencies.MAX_OFFSETS);
+                    for (int j = 0; j < n; j++) {
+                        out.writeInt(record[at + 3 + j]);
+                    }
+                }
+            }
+            out.writeInt(-1);
+        }
+        runs.add(new PostingRun.FileRun(path));
+        spills++;
+        clear();
+    }
+
+    /**
+     * 把剩下的记录排好序作为一个内存中的 run 交出去，之后这个 shard 不能再用
+     * @return 一共写出了几个 run 文件
+     */
+    int finish() {
+        if (termCount > 0) {
+            sortTerms();
+            int[][] records = new int[termCount][];
+            int[] recordSizes = new int[termCount];
+            for (int t = 0; t < termCount; t++) {
+                records[t] = sortedRecords(termIds[t]);
+                recordSizes[t] = sizes[termIds[t]];
+            }
+            runs.add(new PostingRun.MemoryRun(Arrays.copyOf(termIds, termCount), records, recordSizes));
+        }
+        postings = null;
+        sizes = null;
+        termIds = null;
+        return spills;
+    }
+
+    private void sortTerms() {
+        Arrays.sort(termIds, 0, termCount);
+    }
+
+    // 同一个线程拿到的文档 docId 基本上是递增的（解析时按顺序分配，见 DocIdAllocator），已经有序时不用排
+    private int[] sortedRecords(int termId) {
+        int[] record = postings[termId];
+        int size = sizes[termId];
+        boolean sorted = true;
+        for (int at = RECORD_INTS; at < size && sorted; at += RECORD_INTS) {
+            sorted = record[at - RECORD_INTS] < record[at];
+        }
+        if (sorted) {
+            return record;
+        }
+
+        // 高 32 位 docId，低 32 位记录下标，排序之后按下标搬动
+        int count = size / RECORD_INTS;
+        long[] keys = new long[count];
+        for (int k = 0; k < count; k++) {
+            keys[k] = ((long) record[k * RECORD_INTS] << 32) | k;
+        }
+        Arrays.sort(keys);
+        int[] sortedRecord = new int[record.length];
+        for (int k = 0; k < count; k++) {
+            System.arraycopy(record, (int) keys[k] * RECORD_INTS, sortedRecord, k * RECORD_INTS, RECORD_INTS);
+        }
+        postings[termId] = sortedRecord;
+        return sortedRecord;
+    }
+
+    private void clear() {
+        for (int t = 0; t < termCount; t++) {
+            postings[termIds[t]] = null;
+            sizes[termIds[t]] = 0;
+        }
+        termCount = 0;
+        bytes = 0;
+    }
+}
@@ -0,0 +1,115 @@
+package com.peixinchen.searcher.indexer.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 索引段目录的一个提交点：当前有效的是哪些段文件，以及哪个删除标记文件、BM25F 统计文件，对应 commit-{sequence} 文件，文本格式：
+ *   sequence 15
+ *   generation 12
+ *   segment segment-3.seg
+ *   segment segment-14.seg
+ *   tombstones tombstones-15.del
+ *   stats stats-14.bin
+ * 目录下的 CURRENT 文件中是最新的提交点的文件名，查询端（web 模块的 SegmentSet）读同样的格式
+ * 不可变，每次变化（追加新段、合并）都生成一个新的提交点
+ */
+class SegmentCommit {
+    static final SegmentCommit EMPTY = new SegmentCommit(0, 0, Collections.emptyList(), null, null);
+
+    private final long sequence;        // 每个新文件（段、删除标记、提交点）都用一个新的序号命名，不会重名
+    private final int generation;       // 这个提交点包含到数据库中的哪一代
+    private final List<String> segments;
+    private final String tombstones;    // 没有被删除的文档时为 null
+    private final String stats;         // 见 CollectionStats，加这个文件之前写的提交点中没有，为 null
+
+    SegmentCommit(long sequence, int generation, List<String> segments, String tombstones, String stats) {
+        this.sequence = sequence;
+        this.generation = generation;
+        this.segments = Collections.unmodifiableList(new ArrayList<>(segments));
+        this.tombstones = tombstones;
+        this.stats = stats;
+    }
+
+    long sequence() {
+        return sequence;
+    }
+
+    int generation() {
+        return generation;
+    }
+
+    List<String> segments() {
+        return segments;
+    }
+
+    String tombstones() {
+        return tombstones;
+    }
+
+    String stats() {
+        return stats;
+    }
+
+    String fileName() {
+        return "commit-" + sequence;
+    }
+
+    static SegmentCommit read(Path path) throws IOException {
+        long sequence = 0;
+        int generation = 0;
+        List<String> segments = new ArrayList<>();
+        String tombstones = null;
+        String stats = null;
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            int space = line.indexOf(' ');
+            String key = line.substring(0, space);
+            String value = line.substring(space + 1);
+            switch (key) {
+                case "sequence":
+                    sequence = Long.parseLong(value);
+                    break;
+                case "generation":
+                    generation = Integer.parseInt(value);
+                    break;
+                case "segment":
+                    segments.add(value);
+                    break;
+                case "tombstones":
+                    tombstones = value;
+                    break;
+                case "stats":
+                    stats = value;
+                    break;
+                default:
+                    throw new IOException("提交点文件中有不认识的行：" + line);
+            }
+        }
+        return new SegmentCommit(sequence, generation, segments, tombstones, stats);
+    }
+
+    void write(Path path) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("sequence ").append(sequence).append('\n');
+        sb.append("generation ").append(generation).append('\n');
+        for (String segment : segments) {
+            sb.append("segment ").append(segment).append('\n');
+        }
+        if (tombstones != null) {
+            sb.append("tombstones ").append(tombstones).append('\n');
+        }
+        if (stats != null) {
+            sb.append("stats ").append(stats).append('\n');
+        }
+        Files.write(path, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
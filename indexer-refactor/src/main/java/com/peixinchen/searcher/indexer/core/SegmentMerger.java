@@ -0,0 +1,195 @@
+package com.peixinchen.searcher.indexer.core;
+
+import com.peixinchen.searcher.common.Bm25f;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.LongConsumer;
+
+/**
+ * 把几个段合并成一个：词条和文档都是多路归并（每个段内部已经排好序），被删除的文档（tombstones）在合并时丢掉
+ * 各个段中的 docId 互不重复（一篇文档只会写进它被加入的那一代的段），同一个词在各个段中的 termId 相同（全局词典）
+ * 每条倒排记录的 weight 不照抄，而是用最新的统计（stats）和段中存的词频、文档长度重新算 BM25F 得分：
+ * 各个段写入时的 IDF、平均长度各不相同，照抄的话合并出来的段里混着好几代的打分，越早写的越旧
+ */
+class SegmentMerger {
+    private final List<SegmentReader> inputs;
+    private final Tombstones tombstones;
+    private final CollectionStats stats;
+    private final LongConsumer progress;    // 每写完一个词、一篇文档，回调已经写出的字节数，用于限速
+    private Bm25f bm25f;
+
+    private int[] docIds = new int[1024];
+    private int[] weights = new int[1024];
+    private int[] titleTfs = new int[1024];
+    private int[] contentTfs = new int[1024];
+    private int[] dropped = new int[256];
+    private int droppedCount;
+
+    SegmentMerger(List<SegmentReader> inputs, Tombstones tombstones, CollectionStats stats, LongConsumer progress) {
+        this.inputs = inputs;
+        this.tombstones = tombstones;
+        this.stats = stats;
+        this.progress = progress;
+    }
+
+    private static class Cursor {
+        final SegmentReader reader;
+        int index;
+        byte[] word;    // 合并词条时，当前这一项的词
+
+        Cursor(SegmentReader reader) {
+            this.reader = reader;
+        }
+    }
+
+    /**
+     * 合并写入 writer（还需要调用者 finish），返回被丢掉的 docId，它们已经不在任何段中，可以从删除标记中去掉
+     */
+    int[] merge(SegmentWriter writer) throws IOException {
+        // 文档数、平均长度用整个索引的，归一化因子只需要参与合并的这些文档的
+        Bm25f.Builder lengths = new Bm25f.Builder();
+        for (SegmentReader reader : inputs) {
+            for (int j = 0; j < reader.docCount(); j++) {
+                if (!tombstones.contains(reader.docId(j))) {
+                    lengths.add(reader.docId(j), reader.titleLength(j), reader.contentLength(j));
+                }
+            }
+        }
+        bm25f = stats.bm25f(lengths);
+
+        mergeTerms(writer);
+        mergeDocuments(writer);
+        return Arrays.copyOf(dropped, droppedCount);
+    }
+
+    private void mergeTerms(SegmentWriter writer) throws IOException {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>((a, b) -> compareUnsigned(a.word, b.word));
+        for (SegmentReader reader : inputs) {
+            Cursor cursor = new Cursor(reader);
+            if (reader.termCount() > 0) {
+                cursor.word = reader.word(0);
+                queue.add(cursor);
+            }
+        }
+
+        List<Cursor> sameWord = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            sameWord.clear();
+            Cursor first = queue.poll();
+            sameWord.add(first);
+            while (!queue.isEmpty() && compareUnsigned(queue.peek().word, first.word) == 0) {
+                sameWord.add(queue.poll());
+            }
+
+            int termId = first.reader.termId(first.index);
+            int size = mergePostings(sameWord);
+            // 统计中查不到的词（正常不会有，统计是最近一次追加段时按整个词典写的）按合并后的记录数算 df
+            int df = stats.df(termId) > 0 ? stats.df(termId) : size;
+            for (int i = 0; i < size; i++) {
+                weights[i] = bm25f.impact(df, docIds[i], titleTfs[i], contentTfs[i]);
+            }
+            writer.addPostings(first.word, termId, docIds, weights, titleTfs, contentTfs, size);
+            progress.accept(writer.size());
+
+            for (Cursor cursor : sameWord) {
+                cursor.index++;
+                if (cursor.index < cursor.reader.termCount()) {
+                    cursor.word = cursor.reader.word(cursor.index);
+                    queue.add(cursor);
+                }
+            }
+        }
+    }
+
+    // 同一个词在几个段中的倒排列表归并成一个，放在 docIds、titleTfs、contentTfs 中，返回个数
+    private int mergePostings(List<Cursor> cursors) {
+        int k = cursors.size();
+        int total = 0;
+        int[][] listDocIds = new int[k][];
+        int[][] listTitleTfs = new int[k][];
+        int[][] listContentTfs = new int[k][];
+        for (int i = 0; i < k; i++) {
+            Cursor cursor = cursors.get(i);
+            int df = cursor.reader.df(cursor.index);
+            listDocIds[i] = new int[df];
+            listTitleTfs[i] = new int[df];
+            listContentTfs[i] = new int[df];
+            // 旧的 weight 用不到，解码到 listTitleTfs 中再被词频覆盖
+            cursor.reader.readPostings(cursor.index, listDocIds[i], listTitleTfs[i]);
+            cursor.reader.readFrequencies(cursor.index, listTitleTfs[i], listContentTfs[i]);
+            total += df;
+        }
+        if (docIds.length < total) {
+            docIds = new int[total];
+            weights = new int[total];
+            titleTfs = new int[total];
+            contentTfs = new int[total];
+        }
+
+        // k 最多是一次合并的段数，每次在 k 个列表头中找最小的就够了
+        int[] heads = new int[k];
+        int size = 0;
+        while (true) {
+            int min = -1;
+            for (int i = 0; i < k; i++) {
+                if (heads[i] < listDocIds[i].length && (min < 0 || listDocIds[i][heads[i]] < listDocIds[min][heads[min]])) {
+                    min = i;
+                }
+            }
+            if (min < 0) {
+                return size;
+            }
+            int docId = listDocIds[min][heads[min]];
+            if (!tombstones.contains(docId)) {
+                docIds[size] = docId;
+                titleTfs[size] = listTitleTfs[min][heads[min]];
+                contentTfs[size] = listContentTfs[min][heads[min]];
+                size++;
+            }
+            heads[min]++;
+        }
+    }
+
+    private void mergeDocuments(SegmentWriter writer) throws IOException {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>((a, b) -> Integer.compare(a.reader.docId(a.index), b.reader.docId(b.index)));
+        for (SegmentReader reader : inputs) {
+            if (reader.docCount() > 0) {
+                queue.add(new Cursor(reader));
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            Cursor cursor = queue.poll();
+            int docId = cursor.reader.docId(cursor.index);
+            if (tombstones.contains(docId)) {
+                if (droppedCount == dropped.length) {
+                    dropped = Arrays.copyOf(dropped, droppedCount * 2);
+                }
+                dropped[droppedCount++] = docId;
+            } else {
+                writer.addRawDocument(docId, cursor.reader.rawDocument(cursor.index));
+                progress.accept(writer.size());
+            }
+
+            cursor.index++;
+            if (cursor.index < cursor.reader.docCount()) {
+                queue.add(cursor);
+            }
+        }
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        int n = Integer.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    }
+}
@@ -0,0 +1,231 @@
+package com.peixinchen.searcher.indexer.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 读 SegmentWriter 写出的段文件，合并段时按顺序遍历其中的词条和文档（查询端用的是 web 模块的 Segment）
+ * 只为参与合并的段打开，合并完就 close()；选择合并哪些段只需要 stats()，不映射整个文件
+ */
+class SegmentReader implements Closeable {
+    private static final int STATS_BUFFER_BYTES = 12 * 4096;
+
+    private final String name;
+    private ByteBuffer buf;
+    private final int generation;
+    private final int termCount;
+    private final int docCount;
+    private final long postingCount;
+    private final int termTableOffset;
+    private final int wordsOffset;
+    private final int postingsOffset;
+    private final int docTableOffset;
+    private final int docsOffset;
+
+    private SegmentReader(String name, ByteBuffer buf) throws IOException {
+        this.name = name;
+        this.buf = buf;
+        if (buf.getInt(0) != SegmentWriter.MAGIC || buf.getInt(4) != SegmentWriter.VERSION) {
+            throw new IOException(name + " 不是索引段文件，或者版本不对");
+        }
+        generation = buf.getInt(8);
+        termCount = buf.getInt(12);
+        docCount = buf.getInt(16);
+        postingCount = buf.getLong(24);
+        termTableOffset = (int) buf.getLong(32);
+        wordsOffset = (int) buf.getLong(40);
+        postingsOffset = (int) buf.getLong(48);
+        docTableOffset = (int) buf.getLong(56);
+        docsOffset = (int) buf.getLong(64);
+    }
+
+    static SegmentReader open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new SegmentReader(path.getFileName().toString(), buf);
+        }
+    }
+
+    String name() {
+        return name;
+    }
+
+    int generation() {
+        return generation;
+    }
+
+    int termCount() {
+        return termCount;
+    }
+
+    int docCount() {
+        return docCount;
+    }
+
+    long postingCount() {
+        return postingCount;
+    }
+
+    long sizeInBytes() {
+        return buf.capacity();
+    }
+
+    // 第 i 个词（按 UTF-8 字节排序）
+    byte[] word(int i) {
+        int entry = termTableOffset + i * 32;
+        byte[] word = new byte[buf.getInt(entry + 4)];
+        for (int k = 0; k < word.length; k++) {
+            word[k] = buf.get(wordsOffset + buf.getInt(entry) + k);
+        }
+        return word;
+    }
+
+    int termId(int i) {
+        return buf.getInt(termTableOffset + i * 32 + 8);
+    }
+
+    int df(int i) {
+        return buf.getInt(termTableOffset + i * 32 + 12);
+    }
+
+    /**
+     * 把第 i 个词的倒排列表解码到 docIds、weights 中（长度至少是 df），docId 从小到大
+     */
+    void readPostings(int i, int[] docIds, int[] weights) {
+        int entry = termTableOffset + i * 32;
+        int df = buf.getInt(entry + 12);
+        int blockCount = (df + SegmentWriter.BLOCK_SIZE - 1) / SegmentWriter.BLOCK_SIZE;
+        int pos = postingsOffset + (int) buf.getLong(entry + 24) + blockCount * SegmentWriter.SKIP_ENTRY_BYTES;
+        int docId = 0;
+        for (int k = 0; k < df; k++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf.get(pos++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            docId += value;
+            docIds[k] = docId;
+
+            value = 0;
+            shift = 0;
+            do {
+                b = buf.get(pos++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            weights[k] = value;
+        }
+    }
+
+    /**
+     * 把第 i 个词每条记录的标题词频、正文词频解码到 titleTfs、contentTfs 中（长度至少是 df），顺序和 readPostings 一样
+     */
+    void readFrequencies(int i, int[] titleTfs, int[] contentTfs) {
+        int entry = termTableOffset + i * 32;
+        int df = buf.getInt(entry + 12);
+        int pos = postingsOffset + (int) buf.getLong(entry + 24) + buf.getInt(entry + 20);
+        for (int k = 0; k < df; k++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf.get(pos++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            titleTfs[k] = value;
+
+            value = 0;
+            shift = 0;
+            do {
+                b = buf.get(pos++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            contentTfs[k] = value;
+        }
+    }
+
+    // 第 j 篇文档（按 docId 排序）
+    int docId(int j) {
+        return buf.getInt(docTableOffset + j * 12);
+    }
+
+    // 第 j 篇文档的 title 长度、content 长度，存在文档字节的最后 8 个字节
+    int titleLength(int j) {
+        return buf.getInt(documentEnd(j) - 8);
+    }
+
+    int contentLength(int j) {
+        return buf.getInt(documentEnd(j) - 4);
+    }
+
+    private int documentEnd(int j) {
+        return j + 1 < docCount ? docsOffset + (int) buf.getLong(docTableOffset + (j + 1) * 12 + 4) : termTableOffset;
+    }
+
+    // 第 j 篇文档的原始字节（title、url、snippetSource、两个长度），合并时原样复制
+    byte[] rawDocument(int j) {
+        int from = docsOffset + (int) buf.getLong(docTableOffset + j * 12 + 4);
+        int to = documentEnd(j);
+        byte[] bytes = new byte[to - from];
+        for (int k = 0; k < bytes.length; k++) {
+            bytes[k] = buf.get(from + k);
+        }
+        return bytes;
+    }
+
+    /**
+     * 合并策略用的统计：文件大小、文档数、其中有多少篇已经被删除
+     * 只读文件头和文档表（每篇文档 12 字节），不映射整个文件
+     */
+    static TieredMergePolicy.SegmentStats stats(Path path, Tombstones tombstones) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(SegmentWriter.HEADER_BYTES);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != SegmentWriter.MAGIC || header.getInt(4) != SegmentWriter.VERSION) {
+                throw new IOException(path.getFileName() + " 不是索引段文件，或者版本不对");
+            }
+            int docCount = header.getInt(16);
+            long docTableOffset = header.getLong(56);
+
+            int deleted = 0;
+            if (tombstones.size() > 0) {
+                ByteBuffer table = ByteBuffer.allocate(STATS_BUFFER_BYTES);
+                for (int j = 0; j < docCount; j += STATS_BUFFER_BYTES / 12) {
+                    int n = Integer.min(STATS_BUFFER_BYTES / 12, docCount - j);
+                    table.clear().limit(n * 12);
+                    readFully(channel, table, docTableOffset + j * 12L);
+                    for (int k = 0; k < n; k++) {
+                        if (tombstones.contains(table.getInt(k * 12))) {
+                            deleted++;
+                        }
+                    }
+                }
+            }
+            return new TieredMergePolicy.SegmentStats(path.getFileName().toString(), channel.size(), docCount, deleted);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            if (channel.read(dst, position + dst.position()) < 0) {
+                throw new IOException("索引段文件不完整");
+            }
+        }
+    }
+
+    // 映射的内存要等 buf 被回收时才释放（Windows 下在那之前文件删不掉，SegmentStore 会在下次发布时再删）
+    @Override
+    public void close() {
+        buf = null;
+    }
+}
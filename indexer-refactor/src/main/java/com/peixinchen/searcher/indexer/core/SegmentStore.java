@@ -0,0 +1,170 @@
+package com.peixinchen.searcher.indexer.core;
+
+import com.peixinchen.searcher.indexer.properties.IndexerProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 索引段目录（index-root-path）：段文件写好之后不再修改，只追加新的段、由合并生成新的段替换旧的，
+ * 每次变化都发布一个新的提交点（见 SegmentCommit），CURRENT 原子地指向它
+ *
+ * 追加（IndexManager）和合并（MergeScheduler）可能同时进行，读当前提交点 -> 发布新提交点必须在 synchronized (store) 中完成
+ */
+@Slf4j
+@Component
+public class SegmentStore {
+    private static final String CURRENT = "CURRENT";
+    private static final int COMMITS_TO_KEEP = 2;      // 查询端可能还在用上一个提交点，它引用的文件也要保留
+
+    private final Path directory;
+    private long sequence = -1;     // 已经用掉的最大序号，第一次用到时从目录中的文件名恢复
+
+    @Autowired
+    public SegmentStore(IndexerProperties properties) {
+        String indexRootPath = properties.getIndexRootPath();
+        this.directory = indexRootPath == null || indexRootPath.isEmpty() ? null : Paths.get(indexRootPath);
+    }
+
+    // 没有配置 index-root-path 时不写段文件
+    public boolean enabled() {
+        return directory != null;
+    }
+
+    Path resolve(String name) {
+        return directory.resolve(name);
+    }
+
+    synchronized SegmentCommit current() throws IOException {
+        Path pointer = directory.resolve(CURRENT);
+        if (!Files.exists(pointer)) {
+            return SegmentCommit.EMPTY;
+        }
+        String name = new String(Files.readAllBytes(pointer), StandardCharsets.UTF_8).trim();
+        return SegmentCommit.read(directory.resolve(name));
+    }
+
+    synchronized Tombstones tombstones(SegmentCommit commit) throws IOException {
+        return commit.tombstones() == null ? Tombstones.EMPTY : Tombstones.read(directory.resolve(commit.tombstones()));
+    }
+
+    synchronized CollectionStats stats(SegmentCommit commit) throws IOException {
+        return CollectionStats.read(directory.resolve(commit.stats()));
+    }
+
+    // 新文件（段、删除标记、统计、提交点）用的序号
+    synchronized long nextSequence() throws IOException {
+        if (sequence < 0) {
+            Files.createDirectories(directory);
+            sequence = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    sequence = Long.max(sequence, sequenceOf(path.getFileName().toString()));
+                }
+            }
+        }
+        return ++sequence;
+    }
+
+    // 写一个新的删除标记文件，没有被删除的文档时返回 null
+    synchronized String writeTombstones(Tombstones tombstones) throws IOException {
+        if (tombstones.size() == 0) {
+            return null;
+        }
+        String name = "tombstones-" + nextSequence() + ".del";
+        Path tmp = directory.resolve(name + ".tmp");
+        tombstones.write(tmp);
+        Files.move(tmp, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+        return name;
+    }
+
+    // 写一个新的 BM25F 统计文件，返回文件名
+    synchronized String writeStats(CollectionStats stats) throws IOException {
+        String name = "stats-" + nextSequence() + ".bin";
+        Path tmp = directory.resolve(name + ".tmp");
+        stats.write(tmp);
+        Files.move(tmp, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+        return name;
+    }
+
+    /**
+     * 发布一个新的提交点：先写 commit-{sequence}，再原子地替换 CURRENT，然后删掉最近两个提交点都没有引用的文件
+     */
+    synchronized void publish(SegmentCommit commit) throws IOException {
+        Path tmp = directory.resolve(commit.fileName() + ".tmp");
+        commit.write(tmp);
+        Files.move(tmp, directory.resolve(commit.fileName()), StandardCopyOption.ATOMIC_MOVE);
+
+        Path pointerTmp = directory.resolve(CURRENT + ".tmp");
+        Files.write(pointerTmp, commit.fileName().getBytes(StandardCharsets.UTF_8));
+        Files.move(pointerTmp, directory.resolve(CURRENT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("发布提交点 {}：第 {} 代，{} 个段，删除标记 {}", commit.fileName(), commit.generation(), commit.segments().size(), commit.tombstones());
+
+        deleteUnreferencedFiles();
+    }
+
+    private void deleteUnreferencedFiles() throws IOException {
+        List<Long> commits = new ArrayList<>();
+        List<Path> candidates = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "{commit-*,segment-*.seg,tombstones-*.del,stats-*.bin}")) {
+            for (Path path : stream) {
+                String fileName = path.getFileName().toString();
+                if (fileName.startsWith("commit-") && !fileName.endsWith(".tmp")) {
+                    commits.add(sequenceOf(fileName));
+                }
+                candidates.add(path);
+            }
+        }
+        commits.sort((a, b) -> Long.compare(b, a));
+
+        Set<String> referenced = new HashSet<>();
+        for (int i = 0; i < commits.size() && i < COMMITS_TO_KEEP; i++) {
+            SegmentCommit commit = SegmentCommit.read(directory.resolve("commit-" + commits.get(i)));
+            referenced.add(commit.fileName());
+            referenced.addAll(commit.segments());
+            if (commit.tombstones() != null) {
+                referenced.add(commit.tombstones());
+            }
+            if (commit.stats() != null) {
+                referenced.add(commit.stats());
+            }
+        }
+
+        for (Path path : candidates) {
+            if (referenced.contains(path.getFileName().toString())) {
+                continue;
+            }
+            try {
+                Files.delete(path);
+            } catch (IOException e) {
+                // Windows 下还被映射着的文件删不掉，下次再删
+                log.warn("删除不再使用的索引文件 {} 失败：{}", path, e.toString());
+            }
+        }
+    }
+
+    // commit-15、segment-15.seg、tombstones-15.del、stats-15.bin 中的 15，其他文件返回 0
+    private static long sequenceOf(String fileName) {
+        int from = fileName.indexOf('-');
+        if (from < 0) {
+            return 0;
+        }
+        int to = from + 1;
+        while (to < fileName.length() && Character.isDigit(fileName.charAt(to))) {
+            to++;
+        }
+        return to == from + 1 ? 0 : Long.parseLong(fileName.substring(from + 1, to));
+    }
+}
@@ -0,0 +1,257 @@
+package com.peixinchen.searcher.indexer.core;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 写一个索引段文件，查询端（web 模块的 Segment）把它映射到内存中直接查询，格式必须和 Segment 中的说明保持一致：
+ *   文件头（HEADER_BYTES 字节）：
+ *     [magic: int][version: int][generation: int][termCount: int][docCount: int][保留: int][postingCount: long]
+ *     [词条表位置: long][词的字节位置: long][倒排区位置: long][文档表位置: long][文档区位置: long]
+ *   词条表：按词的 UTF-8 字节（无符号）排好序，每项 32 字节
+ *     [词在词的字节中的位置: int][词的字节数: int][termId: int][df: int][maxWeight: int][倒排列表字节数: int][倒排列表在倒排区中的位置: long]
+ *   词的字节、倒排区（每个词一个 PostingList：跳表 + VarInt 数据）、文档表（[docId: int][位置: long]，按 docId 排序）、
+ *   文档区（每篇文档 title、url、snippetSource，各自 [UTF-8 字节数: int][UTF-8 字节]）
+ * 版本 2 多存了打分用的原始数据，合并段时用最新的统计重新打分（见 SegmentMerger），查询端只读上面这些，多出来的字节不用管：
+ *   倒排区中每个词的倒排列表后面紧跟着每条记录的 [titleTf: VarInt][contentTf: VarInt]（不算在倒排列表字节数中）
+ *   文档区中每篇文档最后是 [title 长度: int][content 长度: int]
+ *
+ * 用法：先按 termId 逐个 addPostings()，再按 docId 从小到大逐个 addDocument()，最后 finish()
+ * 倒排和文档都是边读边写，内存中只保留词条表和文档表
+ */
+class SegmentWriter implements Closeable {
+    static final int MAGIC = 0x53454731;    // "SEG1"
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 72;
+    static final int BLOCK_SIZE = 128;
+    static final int SKIP_ENTRY_BYTES = 12;
+
+    private static class TermEntry {
+        final byte[] word;
+        final int termId;
+        final int df;
+        final int maxWeight;
+        final int length;
+        final long offset;
+
+        TermEntry(byte[] word, int termId, int df, int maxWeight, int length, long offset) {
+            this.word = word;
+            this.termId = termId;
+            this.df = df;
+            this.maxWeight = maxWeight;
+            this.length = length;
+            this.offset = offset;
+        }
+    }
+
+    private final FileChannel channel;
+    private final DataOutputStream out;
+    private final int generation;
+    private long position;
+
+    private final long postingsOffset;
+    private final List<TermEntry> terms = new ArrayList<>();
+    private long postingCount;
+
+    private long docsOffset = -1;
+    private int[] docIds = new int[1024];
+    private long[] docOffsets = new long[1024];
+    private int docCount;
+
+    private byte[] encodeBuffer = new byte[1024];
+
+    SegmentWriter(Path path, int generation) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+        this.generation = generation;
+        // 文件头最后再写，先空出来
+        out.write(new byte[HEADER_BYTES]);
+        position = HEADER_BYTES;
+        postingsOffset = position;
+    }
+
+    /**
+     * 写一个词的倒排列表
+     * @param docIds 从小到大排好序，只使用前 size 个
+     * @param titleTfs 每条记录的标题词频，和 contentTfs 一起存在倒排列表后面，合并段时重新打分用
+     */
+    void addPostings(String word, int termId, int[] docIds, int[] weights, int[] titleTfs, int[] contentTfs, int size) throws IOException {
+        addPostings(word.getBytes(StandardCharsets.UTF_8), termId, docIds, weights, titleTfs, contentTfs, size);
+    }
+
+    // 合并段时词直接用读出来的 UTF-8 字节
+    void addPostings(byte[] word, int termId, int[] docIds, int[] weights, int[] titleTfs, int[] contentTfs, int size) throws IOException {
+        if (docsOffset >= 0) {
+            throw new IllegalStateException("所有倒排列表必须在文档之前写");
+        }
+        if (size == 0) {
+            return;
+        }
+
+        int blockCount = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int skipBytes = blockCount * SKIP_ENTRY_BYTES;
+        int capacity = skipBytes + size * 20;
+        if (encodeBuffer.length < capacity) {
+            encodeBuffer = new byte[capacity];
+        }
+        byte[] buf = encodeBuffer;
+        ByteBuffer skip = ByteBuffer.wrap(buf);
+        int pos = skipBytes;
+        int maxWeight = 0;
+        int blockMaxWeight = 0;
+        int prevDocId = 0;
+        for (int i = 0; i < size; i++) {
+            pos = writeVarInt(buf, pos, docIds[i] - prevDocId);
+            pos = writeVarInt(buf, pos, weights[i]);
+            maxWeight = Integer.max(maxWeight, weights[i]);
+            blockMaxWeight = Integer.max(blockMaxWeight, weights[i]);
+            prevDocId = docIds[i];
+
+            if ((i + 1) % BLOCK_SIZE == 0 || i == size - 1) {
+                skip.putInt(docIds[i]).putInt(pos - skipBytes).putInt(blockMaxWeight);
+                blockMaxWeight = 0;
+            }
+        }
+
+        int length = pos;
+        for (int i = 0; i < size; i++) {
+            pos = writeVarInt(buf, pos, titleTfs[i]);
+            pos = writeVarInt(buf, pos, contentTfs[i]);
+        }
+
+        terms.add(new TermEntry(word, termId, size, maxWeight, length, position - postingsOffset));
+        out.write(buf, 0, pos);
+        position += pos;
+        postingCount += size;
+    }
+
+    // docId 必须从小到大
+    void addDocument(int docId, String title, String url, String snippetSource, int titleLength, int contentLength) throws IOException {
+        startDocument(docId);
+        writeString(title);
+        writeString(url);
+        writeString(snippetSource);
+        out.writeInt(titleLength);
+        out.writeInt(contentLength);
+        position += 8;
+    }
+
+    // 合并段时文档的字节（SegmentReader.rawDocument）原样复制
+    void addRawDocument(int docId, byte[] raw) throws IOException {
+        startDocument(docId);
+        out.write(raw);
+        position += raw.length;
+    }
+
+    private void startDocument(int docId) {
+        if (docsOffset < 0) {
+            docsOffset = position;
+        }
+        if (docCount == docIds.length) {
+            docIds = Arrays.copyOf(docIds, docCount * 2);
+            docOffsets = Arrays.copyOf(docOffsets, docCount * 2);
+        }
+        docIds[docCount] = docId;
+        docOffsets[docCount] = position - docsOffset;
+        docCount++;
+    }
+
+    void finish() throws IOException {
+        if (docsOffset < 0) {
+            docsOffset = position;
+        }
+
+        // 词条表按词的 UTF-8 字节排序，查询端按同样的方式二分查找
+        terms.sort((a, b) -> compareUnsigned(a.word, b.word));
+        long termTableOffset = position;
+        int wordOffset = 0;
+        for (TermEntry term : terms) {
+            out.writeInt(wordOffset);
+            out.writeInt(term.word.length);
+            out.writeInt(term.termId);
+            out.writeInt(term.df);
+            out.writeInt(term.maxWeight);
+            out.writeInt(term.length);
+            out.writeLong(term.offset);
+            wordOffset += term.word.length;
+        }
+        position += terms.size() * 32L;
+
+        long wordsOffset = position;
+        for (TermEntry term : terms) {
+            out.write(term.word);
+        }
+        position += wordOffset;
+
+        long docTableOffset = position;
+        for (int i = 0; i < docCount; i++) {
+            out.writeInt(docIds[i]);
+            out.writeLong(docOffsets[i]);
+        }
+        position += docCount * 12L;
+        out.flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(generation)
+                .putInt(terms.size()).putInt(docCount).putInt(0)
+                .putLong(postingCount)
+                .putLong(termTableOffset).putLong(wordsOffset).putLong(postingsOffset)
+                .putLong(docTableOffset).putLong(docsOffset);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(true);
+    }
+
+    int docCount() {
+        return docCount;
+    }
+
+    long size() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeString(String s) throws IOException {
+        byte[] bytes = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        position += 4 + bytes.length;
+    }
+
+    private static int writeVarInt(byte[] buf, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        int n = Integer.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    }
+}
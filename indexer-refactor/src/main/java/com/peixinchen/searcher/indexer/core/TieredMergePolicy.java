@@ -0,0 +1,85 @@
+package com.peixinchen.searcher.indexer.core;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * 分层合并策略：按段中有效数据（去掉已删除文档）的大小分层，第 t 层是 [FLOOR_BYTES * mergeFactor^t, FLOOR_BYTES * mergeFactor^(t+1))，
+ * 某一层攒够 mergeFactor 个段就把这一层最小的 mergeFactor 个合并成一个（大约进入上一层），
+ * 这样每篇文档一共只会被重写 log(总大小) 次，段的个数也保持在 每层 mergeFactor 个 以内
+ * 没有可以合并的层时，已删除文档比例超过 maxDeletedRatio 的段单独重写一次（压缩），去掉已删除的文档
+ */
+class TieredMergePolicy {
+    static final long FLOOR_BYTES = 1 << 20;   // 比这小的段都算最低一层，避免很多很小的段各占一层
+
+    private final int mergeFactor;
+    private final double maxDeletedRatio;
+
+    TieredMergePolicy(int mergeFactor, double maxDeletedRatio) {
+        if (mergeFactor < 2) {
+            throw new IllegalArgumentException("mergeFactor 至少是 2");
+        }
+        this.mergeFactor = mergeFactor;
+        this.maxDeletedRatio = maxDeletedRatio;
+    }
+
+    static class SegmentStats {
+        final String name;
+        final long sizeInBytes;
+        final int docCount;
+        final int deletedCount;
+
+        SegmentStats(String name, long sizeInBytes, int docCount, int deletedCount) {
+            this.name = name;
+            this.sizeInBytes = sizeInBytes;
+            this.docCount = docCount;
+            this.deletedCount = deletedCount;
+        }
+
+        double deletedRatio() {
+            return docCount == 0 ? 1 : (double) deletedCount / docCount;
+        }
+
+        long liveBytes() {
+            return docCount == 0 ? 0 : (long) (sizeInBytes * (1 - deletedRatio()));
+        }
+    }
+
+    /**
+     * @return 接下来要合并成一个的段的名字，没有需要合并的返回空 List
+     */
+    List<String> findMerge(List<SegmentStats> segments) {
+        Map<Integer, List<SegmentStats>> tiers = new TreeMap<>();
+        for (SegmentStats segment : segments) {
+            tiers.computeIfAbsent(tier(segment.liveBytes()), t -> new ArrayList<>()).add(segment);
+        }
+        for (List<SegmentStats> tier : tiers.values()) {
+            if (tier.size() >= mergeFactor) {
+                return tier.stream()
+                        .sorted(Comparator.comparingLong(SegmentStats::liveBytes))
+                        .limit(mergeFactor)
+                        .map(segment -> segment.name)
+                        .collect(Collectors.toList());
+            }
+        }
+
+        List<String> compaction = new ArrayList<>();
+        segments.stream()
+                .filter(segment -> segment.deletedCount > 0 && segment.deletedRatio() >= maxDeletedRatio)
+                .max(Comparator.comparingDouble(SegmentStats::deletedRatio))
+                .ifPresent(segment -> compaction.add(segment.name));
+        return compaction;
+    }
+
+    int tier(long liveBytes) {
+        int tier = 0;
+        for (long bound = FLOOR_BYTES * mergeFactor; liveBytes >= bound && bound > 0; bound *= mergeFactor) {
+            tier++;
+        }
+        return tier;
+    }
+}
@@ -0,0 +1,72 @@
+package com.peixinchen.searcher.indexer.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * 已删除文档的 docId 集合（删除标记），段文件本身不可修改，文档被下线时只在这里记一笔，合并段时才真正去掉
+ * docId 全局唯一（数据库自增），所以一个集合对所有段都适用
+ * 文件格式：[个数: int][docId: int] ...，docId 从小到大，查询端（web 模块的 SegmentSet）读同样的格式
+ */
+class Tombstones {
+    static final Tombstones EMPTY = new Tombstones(new int[0]);
+
+    private final int[] docIds;     // 从小到大，没有重复
+
+    private Tombstones(int[] docIds) {
+        this.docIds = docIds;
+    }
+
+    static Tombstones of(int[] docIds) {
+        int[] sorted = Arrays.stream(docIds).sorted().distinct().toArray();
+        return new Tombstones(sorted);
+    }
+
+    boolean contains(int docId) {
+        return Arrays.binarySearch(docIds, docId) >= 0;
+    }
+
+    int size() {
+        return docIds.length;
+    }
+
+    int[] toArray() {
+        return docIds.clone();
+    }
+
+    Tombstones add(int[] more) {
+        int[] merged = Arrays.copyOf(docIds, docIds.length + more.length);
+        System.arraycopy(more, 0, merged, docIds.length, more.length);
+        return of(merged);
+    }
+
+    Tombstones remove(int[] dropped) {
+        int[] sortedDropped = Arrays.stream(dropped).sorted().toArray();
+        return new Tombstones(Arrays.stream(docIds)
+                .filter(docId -> Arrays.binarySearch(sortedDropped, docId) < 0)
+                .toArray());
+    }
+
+    static Tombstones read(Path path) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(path));
+        int[] docIds = new int[buf.getInt()];
+        for (int i = 0; i < docIds.length; i++) {
+            docIds[i] = buf.getInt();
+        }
+        return new Tombstones(docIds);
+    }
+
+    void write(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(docIds.length);
+            for (int docId : docIds) {
+                out.writeInt(docId);
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.peixinchen.searcher.indexer.core;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * 限制同时写数据库的线程数，并用 AIMD（加性增、乘性减）自动调整这个上限，找到写入吞吐最高的并发数，不需要手工调线程数：
+ *   每写完一批，用"每条记录的耗时"和基线比较：
+ *     没有明显变慢，而且写之前并发已经用满了：上限 +1 / limit（每写完 limit 批大约加 1）
+ *     比基线慢了 TOLERANCE 倍以上：数据库已经忙不过来了（锁等待、刷盘、连接池排队），上限乘以 BACKOFF
+ *       减了一次之后，当时正在写的那些批次不会再让上限减小（它们是在减之前开始的），同一波变慢只减一次
+ *   基线是见过的最小的每条耗时，然后慢慢向当前的耗时靠拢，表越来越大、每条都变慢了以后也还能再加上去
+ * 拿不到许可的线程阻塞等待（背压），上限变小不会让写入失败
+ * 正排、倒排每条记录的大小差得很远，各用一个 Channel 单独算基线，但共用同一个并发上限（写的是同一个数据库）
+ */
+class WriteLimiter {
+    private static final double TOLERANCE = 2.0;
+    private static final double BACKOFF = 0.75;
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final int maxLimit;
+    private double limit;
+    private int inFlight;
+    private int cooldown;
+
+    /**
+     * @param maxLimit 并发上限不会超过这个值，一般是数据库连接池的大小
+     */
+    WriteLimiter(int maxLimit) {
+        this.maxLimit = Integer.max(1, maxLimit);
+        this.limit = Integer.min(2, this.maxLimit);
+    }
+
+    synchronized int limit() {
+        return (int) limit;
+    }
+
+    Channel channel() {
+        return new Channel();
+    }
+
+    // 返回拿到许可之后并发是否用满
+    synchronized boolean acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+        // 写之前并发已经用满，说明上限确实限制住了写入，这种情况下写得不慢才值得加
+        return inFlight >= (int) limit;
+    }
+
+    private synchronized void release(boolean saturated, boolean slow) {
+        inFlight--;
+        if (cooldown > 0) {
+            cooldown--;         // 减小上限之前就开始写的批次，结果不算
+        } else if (slow) {
+            limit = Math.max(1, limit * BACKOFF);
+            cooldown = inFlight;
+        } else if (saturated) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        notifyAll();
+    }
+
+    /**
+     * 一类写入（一张表），单独维护每条记录耗时的基线
+     */
+    class Channel {
+        private double baseline = Double.NaN;
+
+        /**
+         * 拿到许可之后执行 write（写 rows 条记录），等待许可的时间不算在耗时里
+         */
+        void run(int rows, Runnable write) {
+            boolean saturated;
+            try {
+                saturated = acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            }
+            long start = System.nanoTime();
+            long nanos = -1;
+            try {
+                write.run();
+                nanos = System.nanoTime() - start;
+            } finally {
+                complete(saturated, nanos, rows);
+            }
+        }
+
+        // 释放 acquire() 拿到的许可，nanos < 0 表示写入失败，不参与调整
+        void complete(boolean saturated, long nanos, int rows) {
+            release(saturated, nanos >= 0 && slow((double) nanos / Integer.max(1, rows)));
+        }
+
+        private synchronized boolean slow(double nanosPerRow) {
+            if (Double.isNaN(baseline) || nanosPerRow < baseline) {
+                baseline = nanosPerRow;
+                return false;
+            }
+            baseline += (nanosPerRow - baseline) * BASELINE_DRIFT;
+            return nanosPerRow > baseline * TOLERANCE;
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.peixinchen.searcher.indexer.mapper;
 
 import com.peixinchen.searcher.indexer.model.Document;
+import com.peixinchen.searcher.indexer.model.GenerationRow;
 import com.peixinchen.searcher.indexer.model.InvertedRecord;
+import com.peixinchen.searcher.indexer.model.ManifestEntry;
+import com.peixinchen.searcher.indexer.model.StoredDocument;
+import com.peixinchen.searcher.indexer.model.TermDocumentFrequency;
+import com.peixinchen.searcher.indexer.model.TermDictionary;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -11,7 +17,83 @@ import java.util.List;
 @Repository // 注册 Spring bean
 @Mapper     // 是一个 Mybatis 管理的 Mapper
 public interface IndexDatabaseMapper {
-    void batchInsertForwardIndexes(@Param("list") List<Document> documentList);
+    // 正排、倒排记录都写进 generation 这一代，这一代被置为 active 之前查询端看不到；正排的 docid 需要事先分配好
+    void batchInsertForwardIndexes(@Param("list") List<Document> documentList, @Param("generation") int generation);
 
-    void batchInsertInvertedIndexes(@Param("list") List<InvertedRecord> recordList);
+    void batchInsertInvertedIndexes(@Param("list") List<InvertedRecord> recordList, @Param("generation") int generation);
+
+    void batchInsertTerms(@Param("list") List<TermDictionary.Entry> entryList);
+
+    // 以下用于增量构建
+    void scanTerms(ResultHandler<TermDictionary.Entry> handler);
+
+    List<ManifestEntry> selectManifest();
+
+    void batchUpsertManifest(@Param("list") List<ManifestEntry> entryList);
+
+    void batchDeleteManifest(@Param("list") List<String> pathList);
+
+    void deleteAllManifest();
+
+    void decrementDocumentFrequencies(@Param("list") List<Integer> docIdList);
+
+    void resetDocumentFrequencies();
+
+    // 以下用于索引的分代：下线的记录不直接删除，只标记 gen_to，等查询端都切换到新的一代之后再清理
+    Integer selectActiveGeneration();
+
+    void insertGeneration(GenerationRow row);
+
+    void updateGenerationState(@Param("generation") int generation, @Param("state") String state);
+
+    void activateGeneration(@Param("generation") int generation, @Param("docCount") int docCount, @Param("postingCount") long postingCount,
+                            @Param("nextDocId") int nextDocId);
+
+    int selectNextDocId();
+
+    void updateNextDocId(@Param("generation") int generation, @Param("nextDocId") int nextDocId);
+
+    void batchRetireForwardIndexes(@Param("list") List<Integer> docIdList, @Param("generation") int generation);
+
+    void batchRetireInvertedIndexes(@Param("list") List<Integer> docIdList, @Param("generation") int generation);
+
+    void retireAllForwardIndexes(@Param("generation") int generation);
+
+    void retireAllInvertedIndexes(@Param("generation") int generation);
+
+    int countForwardIndexes(@Param("generation") int generation);
+
+    long countInvertedIndexes(@Param("generation") int generation);
+
+    // 删除 active 这一代已经看不到的记录
+    void purgeForwardIndexes(@Param("active") int active);
+
+    void purgeInvertedIndexes(@Param("active") int active);
+
+    // 撤销没有完成的构建（比 active 新的代）留下的记录
+    void discardForwardIndexes(@Param("active") int active);
+
+    void discardInvertedIndexes(@Param("active") int active);
+
+    void abandonGenerations(@Param("active") int active);
+
+    boolean invertedIndexesEmpty();
+
+    // 以下用于写索引段文件：流式读出 generation 这一代可见、并且是 since 之后加入的记录，倒排按 (termid, docid) 排序，正排按 docid 排序
+    // since = 0 时就是这一代可见的全部记录
+    void scanVisibleInvertedIndexes(@Param("generation") int generation, @Param("since") int since, ResultHandler<InvertedRecord> handler);
+
+    void scanVisibleForwardIndexes(@Param("generation") int generation, @Param("since") int since, ResultHandler<StoredDocument> handler);
+
+    // 给索引段中的倒排记录打分（BM25F）用：这一代可见的所有文档的长度（只有 docId、titleLength、contentLength），每个词的 df
+    void scanDocumentLengths(@Param("generation") int generation, ResultHandler<StoredDocument> handler);
+
+    List<TermDocumentFrequency> selectDocumentFrequencies();
+
+    // 以下用于批量导入前后删除、重建二级索引
+    List<String> selectIndexNames(@Param("table") String table);
+
+    void dropIndex(@Param("table") String table, @Param("index") String index);
+
+    void addIndex(@Param("table") String table, @Param("index") String index, @Param("column") String column);
 }
@@ -1,30 +1,31 @@
 package com.peixinchen.searcher.indexer.model;
 
+import com.peixinchen.searcher.indexer.util.HtmlTextExtractor;
 import lombok.Data;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import org.ansj.domain.Term;
-import org.ansj.splitWord.analysis.ToAnalysis;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Scanner;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.security.MessageDigest;
 
 @Slf4j
 @Data
 public class Document {
-    private Integer docId;  // docId 会在正排索引插入后才会赋值
+    private Integer docId;  // 解析之后由索引构建程序分配（见 DocIdAllocator），正排、倒排用的是同一个
 
     private String title;   // 从文件名中解析出来
     private String url;     // 依赖两个额外的信息（1. https://docs.oracle.com/javase/8/docs/api/  2. 相对路径的相对位置）
     private String content; // 从文件中读取出来，并且做一定的处理
+    private TermFrequencies termFrequencies;    // 分词 + 词频统计的结果，调用 segment() 之后才有值
+
+    // 文件指纹，写进 document_manifest 表，下次构建时据此判断文件有没有变化
+    private String path;    // 相对 rootFile 的路径，由扫描阶段设置
+    private long size;
+    private long mtime;
+    private String hash;    // 内容的 SHA-1，解析正文时顺便计算
+
+    // 摘要源：正文开头的 SNIPPET_SOURCE_LENGTH 个码点，和正排索引一起保存，查询时只从它截摘要窗口，不需要去取整个 content
+    public static final int SNIPPET_SOURCE_LENGTH = 2000;
 
     // 专门给测试用例用的构造方法
     public Document(String title, String url, String content) {
@@ -40,51 +41,28 @@ public class Document {
 //        log.debug("构建文档：{}", title);
     }
 
-    // 针对文档进行分词，并且分别计算每个词的权重
-    public Map<String, Integer> segWordAndCalcWeight() {
-        // 统计标题中的每个词出现次数 | 分词：标题有哪些词
-        List<String> wordInTitle = ToAnalysis.parse(title)
-                .getTerms()
-                .stream()
-                .parallel()
-                .map(Term::getName)
-                .collect(Collectors.toList());
-
-        // 统计标题中，每个词的出现次数 | 统计次数
-        Map<String, Integer> titleWordCount = new HashMap<>();
-        for (String word : wordInTitle) {
-            int count = titleWordCount.getOrDefault(word, 0);
-            titleWordCount.put(word, count + 1);
-        }
-
-        // 统计内容中的词，以及词的出现次数
-        List<String> wordInContent = ToAnalysis.parse(content)
-                .getTerms()
-                .stream()
-                .parallel()
-                .map(Term::getName)
-                .collect(Collectors.toList());
-        Map<String, Integer> contentWordCount = new HashMap<>();
-        for (String word : wordInContent) {
-            int count = contentWordCount.getOrDefault(word, 0);
-            contentWordCount.put(word, count + 1);
-        }
+    /**
+     * 针对文档进行分词，并且统计每个词在标题、正文中的词频，以及标题、正文的长度（词数）
+     * 解析文档时调用一次，之后生成倒排记录直接使用 termFrequencies，不会再次分词
+     */
+    public void segment(TermDictionary dictionary) {
+        this.termFrequencies = TermFrequencies.of(title, content, dictionary);
+    }
 
-        // 计算权重值
-        Map<String, Integer> wordToWeight = new HashMap<>();
-        // 先计算出有哪些词，不重复
-        Set<String> wordSet = new HashSet<>(wordInTitle);
-        wordSet.addAll(wordInContent);
+    // 标题、正文分词后的词数，和正排一起保存；还没分词时是 0
+    public int getTitleLength() {
+        return termFrequencies == null ? 0 : termFrequencies.titleLength();
+    }
 
-        for (String word : wordSet) {
-            int titleCount = titleWordCount.getOrDefault(word, 0);
-            int contentCount = contentWordCount.getOrDefault(word, 0);
-            int weight = titleCount * 10 + contentCount;
+    public int getContentLength() {
+        return termFrequencies == null ? 0 : termFrequencies.contentLength();
+    }
 
-            wordToWeight.put(word, weight);
+    public String getSnippetSource() {
+        if (content.codePointCount(0, content.length()) <= SNIPPET_SOURCE_LENGTH) {
+            return content;
         }
-
-        return wordToWeight;
+        return content.substring(0, content.offsetByCodePoints(0, SNIPPET_SOURCE_LENGTH));
     }
 
     private String parseTitle(File file) {
@@ -118,22 +96,22 @@ public class Document {
 
     @SneakyThrows
     private String parseContent(File file) {
-        StringBuilder contentBuilder = new StringBuilder();
-
-        try (InputStream is = new FileInputStream(file)) {
-            try (Scanner scanner = new Scanner(is, "ISO-8859-1")) {
-                while (scanner.hasNextLine()) {
-                    String line = scanner.nextLine();
-                    contentBuilder.append(line).append(" ");
-                }
-
-                return contentBuilder.toString()
-                        .replaceAll("<script[^>]*>[^<]*</script>", " ")
-                        .replaceAll("<[^>]*>", " ")
-                        .replaceAll("\\s+", " ")
-                        .trim();
-            }
+        // 单趟扫描：去标签、去 <script>/<style>、解码实体、折叠空白一次完成
+        // 标题仍然从文件名中解析（<title> 中带有 "(Java Platform SE 8 )" 这类所有文档都有的后缀）
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        String text = HtmlTextExtractor.extract(file.toPath(), digest).getText();
+        this.hash = toHex(digest.digest());
+        return text;
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = digits[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = digits[bytes[i] & 0xF];
         }
+        return new String(chars);
     }
 
 //    @SneakyThrows
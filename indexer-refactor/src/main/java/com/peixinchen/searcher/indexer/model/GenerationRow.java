@@ -0,0 +1,10 @@
+package com.peixinchen.searcher.indexer.model;
+
+import lombok.Data;
+
+// index_generations 表中的一行，插入之后 generation 才有值
+@Data
+public class GenerationRow {
+    private int generation;
+    private String state;
+}
@@ -5,13 +5,23 @@ import lombok.Data;
 // 这个对象映射 inverted_indexes 表中的一条记录（我们不关心表中的 id，就不写 id 了）
 @Data
 public class InvertedRecord {
-    private String word;
+    private int termId;         // 词在 terms 表中的 id，不再在每条倒排记录中重复保存 word
     private int docId;
     private int weight;
+    private String offsets;     // 该词在正文中前几次出现的偏移（码点），逗号分隔，查询时用来定位摘要
+    private int titleTf;        // 该词在标题、正文中各出现了几次，查询端据此计算 BM25F 得分
+    private int contentTf;
 
-    public InvertedRecord(String word, int docId, int weight) {
-        this.word = word;
+    public InvertedRecord(int termId, int docId, int weight, String offsets) {
+        this.termId = termId;
         this.docId = docId;
         this.weight = weight;
+        this.offsets = offsets;
+    }
+
+    public InvertedRecord(int termId, int docId, int weight, String offsets, int titleTf, int contentTf) {
+        this(termId, docId, weight, offsets);
+        this.titleTf = titleTf;
+        this.contentTf = contentTf;
     }
 }
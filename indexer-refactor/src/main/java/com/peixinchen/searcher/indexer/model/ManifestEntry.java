@@ -0,0 +1,25 @@
+package com.peixinchen.searcher.indexer.model;
+
+import lombok.Data;
+
+// 这个对象映射 document_manifest 表中的一条记录：一个文档文件上一次被索引时的指纹
+@Data
+public class ManifestEntry {
+    private String path;        // 相对 doc-root-path 的路径（就是 url 去掉 url-prefix 的部分）
+    private int docId;          // 这个文件当前对应的正排 docId
+    private long size;          // 文件大小（字节）
+    private long mtime;         // 最后修改时间（毫秒）
+    private String hash;        // 文件内容的 SHA-1（十六进制）
+
+    // 给 MyBatis 用的
+    public ManifestEntry() {
+    }
+
+    public ManifestEntry(String path, int docId, long size, long mtime, String hash) {
+        this.path = path;
+        this.docId = docId;
+        this.size = size;
+        this.mtime = mtime;
+        this.hash = hash;
+    }
+}
@@ -0,0 +1,14 @@
+package com.peixinchen.searcher.indexer.model;
+
+import lombok.Data;
+
+// 写索引段文件时从 forward_indexes 表中读出的一行（只有查询端展示、打分需要的字段，不含 content）
+@Data
+public class StoredDocument {
+    private int docId;
+    private String title;
+    private String url;
+    private String snippetSource;
+    private int titleLength;
+    private int contentLength;
+}
@@ -0,0 +1,86 @@
+package com.peixinchen.searcher.indexer.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一次构建索引过程中的全局词典：word -> termId，同时统计每个词的文档频率（df，有多少篇文档包含这个词）
+ * 每个不同的词只分配一次 termId，文档内部统计词频、倒排表中保存的都是 int 的 termId，不再重复保存 word
+ * 多个解析线程会同时使用，所以是线程安全的
+ *
+ * 增量构建时，先用 restore() 把 terms 表中已有的词装回来，已有的词沿用原来的 termId，新词从最大 termId + 1 开始分配
+ * 这里统计的 df 只是本次构建新加入的文档数，保存时累加到 terms 表原有的 df 上（被删除文档的 df 由数据库直接扣减）
+ */
+public class TermDictionary {
+    private final ConcurrentHashMap<String, Entry> wordToEntry = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    public static class Entry {
+        private final int termId;
+        private final String word;
+        private final AtomicInteger df = new AtomicInteger();
+
+        // 包级可见给 MyBatis 从 terms 表装回词条时用
+        Entry(int termId, String word) {
+            this.termId = termId;
+            this.word = word;
+        }
+
+        public int getTermId() {
+            return termId;
+        }
+
+        public String getWord() {
+            return word;
+        }
+
+        public int getDf() {
+            return df.get();
+        }
+
+        // 一篇文档第一次出现这个词时调用
+        void addDocument() {
+            df.incrementAndGet();
+        }
+    }
+
+    // 装回上一次构建保存的词条，只在构建开始前单线程调用
+    public void restore(Entry entry) {
+        wordToEntry.put(entry.getWord(), entry);
+        nextId.accumulateAndGet(entry.getTermId() + 1, Math::max);
+    }
+
+    public Entry lookup(String word) {
+        Entry entry = wordToEntry.get(word);
+        if (entry != null) {
+            return entry;
+        }
+        return wordToEntry.computeIfAbsent(word, w -> new Entry(nextId.getAndIncrement(), w));
+    }
+
+    public int termId(String word) {
+        return lookup(word).getTermId();
+    }
+
+    public int size() {
+        return wordToEntry.size();
+    }
+
+    // 所有词条的快照
+    public List<Entry> entries() {
+        return new ArrayList<>(wordToEntry.values());
+    }
+
+    // 本次构建中有新文档包含的词条（df > 0），只有这些需要保存到 terms 表
+    public List<Entry> changedEntries() {
+        List<Entry> entryList = new ArrayList<>();
+        for (Entry entry : wordToEntry.values()) {
+            if (entry.getDf() > 0) {
+                entryList.add(entry);
+            }
+        }
+        return entryList;
+    }
+}
@@ -0,0 +1,10 @@
+package com.peixinchen.searcher.indexer.model;
+
+import lombok.Data;
+
+// terms 表中一个词的 df，写索引段文件时用来计算 IDF
+@Data
+public class TermDocumentFrequency {
+    private int termId;
+    private int df;
+}
@@ -0,0 +1,200 @@
+package com.peixinchen.searcher.indexer.model;
+
+import org.ansj.domain.Term;
+import org.ansj.splitWord.analysis.ToAnalysis;
+
+import java.util.Arrays;
+
+/**
+ * 一篇文档的词频统计，解析文档时分词一次就建好，之后直接用来生成倒排记录
+ * 内部是以 termId 为 key 的开放寻址哈希表，所有数据都放在 int 数组里，不会为每个词创建 Map.Entry / Integer 对象
+ *
+ * 用法：
+ *   for (int i = 0; i < tf.size(); i++) { tf.word(i); tf.weight(i); tf.offsets(i); }
+ */
+public class TermFrequencies {
+    // 每个词最多记录正文中前几次出现的偏移，够查询时定位摘要即可
+    public static final int MAX_OFFSETS = 4;
+
+    private int[] slots;        // 哈希槽，存 (条目下标 + 1)，0 表示空
+    private int size = 0;
+
+    // 以下数组的下标是条目下标，按词第一次出现的顺序排列
+    private TermDictionary.Entry[] terms;
+    private int[] titleCounts;
+    private int[] contentCounts;
+    private int[] offsets;      // 第 i 个词的偏移在 offsets[i * MAX_OFFSETS, (i + 1) * MAX_OFFSETS)，单位是码点
+
+    // 标题、正文分词后一共有多少个词（算重复的），BM25F 用它们做文档长度的归一化
+    private int titleLength;
+    private int contentLength;
+
+    private TermFrequencies(int expectedTerms) {
+        int capacity = Integer.highestOneBit(Integer.max(expectedTerms, 8) * 2 - 1) * 2;
+        slots = new int[capacity];
+        terms = new TermDictionary.Entry[capacity / 2];
+        titleCounts = new int[capacity / 2];
+        contentCounts = new int[capacity / 2];
+        offsets = new int[capacity / 2 * MAX_OFFSETS];
+    }
+
+    /**
+     * 对标题和正文各分词一次，统计每个词在标题、正文中的出现次数，以及在正文中前几次出现的位置
+     */
+    public static TermFrequencies of(String title, String content, TermDictionary dictionary) {
+        // 粗略估计不同词的个数，减少扩容次数
+        TermFrequencies tf = new TermFrequencies(content.length() / 16);
+
+        for (Term term : ToAnalysis.parse(title).getTerms()) {
+            tf.addTitle(dictionary.lookup(term.getName()));
+        }
+
+        // getOffe() 是词在 content 中的 char 下标（UTF-16），保存的偏移换成码点：查询端按码点从 snippet_source 中截窗口，
+        // 增补平面的字符（emoji 等）占两个 char，不换算的话出现过一个之后的窗口都会错位
+        // 词按出现的顺序返回，从上一个词的位置接着按码点往后数，整篇只扫一遍；
+        // ansj 会把一个增补字符的两个 char 分成两个词，落在两个 char 中间的词算作下一个码点
+        int previous = 0;
+        int chars = 0;
+        int codePoints = 0;
+        for (Term term : ToAnalysis.parse(content).getTerms()) {
+            int offe = term.getOffe();
+            if (offe < previous) {
+                chars = 0;
+                codePoints = 0;
+            }
+            previous = offe;
+            while (chars < offe) {
+                chars += Character.charCount(content.codePointAt(chars));
+                codePoints++;
+            }
+            tf.addContent(dictionary.lookup(term.getName()), codePoints);
+        }
+
+        return tf;
+    }
+
+    private void addTitle(TermDictionary.Entry term) {
+        titleCounts[entry(term)]++;
+        titleLength++;
+    }
+
+    private void addContent(TermDictionary.Entry term, int offset) {
+        int i = entry(term);
+        contentLength++;
+        int count = contentCounts[i]++;
+        if (count < MAX_OFFSETS) {
+            offsets[i * MAX_OFFSETS + count] = offset;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int termId(int i) {
+        return terms[i].getTermId();
+    }
+
+    public String word(int i) {
+        return terms[i].getWord();
+    }
+
+    public int titleCount(int i) {
+        return titleCounts[i];
+    }
+
+    public int contentCount(int i) {
+        return contentCounts[i];
+    }
+
+    public int titleLength() {
+        return titleLength;
+    }
+
+    public int contentLength() {
+        return contentLength;
+    }
+
+    // 旧的权重算法，仍然保存在 inverted_indexes.weight 中；查询端排序用的是 BM25F（titleCount、contentCount 和文档长度）
+    public int weight(int i) {
+        return weight(titleCounts[i], contentCounts[i]);
+    }
+
+    public static int weight(int titleCount, int contentCount) {
+        return titleCount * 10 + contentCount;
+    }
+
+    // 以 "12,340,1002" 的形式保存到 inverted_indexes.offsets 中
+    public String offsets(int i) {
+        return formatOffsets(offsets, i * MAX_OFFSETS, Integer.min(contentCounts[i], MAX_OFFSETS));
+    }
+
+    // 第 i 个词在正文中第 j 次出现的字符偏移，j < min(contentCount(i), MAX_OFFSETS)
+    public int offset(int i, int j) {
+        return offsets[i * MAX_OFFSETS + j];
+    }
+
+    public static String formatOffsets(int[] offsets, int from, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < count; j++) {
+            if (j > 0) {
+                sb.append(',');
+            }
+            sb.append(offsets[from + j]);
+        }
+        return sb.toString();
+    }
+
+    // 找到词对应的条目下标，不存在就新建一个（同时这个词的 df 加一）
+    private int entry(TermDictionary.Entry term) {
+        int termId = term.getTermId();
+        int mask = slots.length - 1;
+        int slot = hash(termId) & mask;
+        while (true) {
+            int e = slots[slot];
+            if (e == 0) {
+                break;
+            }
+            if (terms[e - 1] == term) {
+                return e - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == terms.length) {
+            grow();
+            return entry(term);
+        }
+
+        int i = size++;
+        terms[i] = term;
+        slots[slot] = i + 1;
+        term.addDocument();
+        return i;
+    }
+
+    // termId 是连续分配的，乘一个奇数再把高位混进低位，让相邻的 termId 分散开
+    private static int hash(int termId) {
+        int h = termId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // 装载因子到 1/2 时扩容，条目数组直接复制，哈希槽重新计算
+    private void grow() {
+        int capacity = slots.length * 2;
+        terms = Arrays.copyOf(terms, capacity / 2);
+        titleCounts = Arrays.copyOf(titleCounts, capacity / 2);
+        contentCounts = Arrays.copyOf(contentCounts, capacity / 2);
+        offsets = Arrays.copyOf(offsets, capacity / 2 * MAX_OFFSETS);
+
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(terms[i].getTermId()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+    }
+}
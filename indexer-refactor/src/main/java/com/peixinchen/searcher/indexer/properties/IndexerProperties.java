@@ -1,5 +1,6 @@
 package com.peixinchen.searcher.indexer.properties;
 
+import com.peixinchen.searcher.indexer.core.InvertedIndexLoader;
 import lombok.*;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
@@ -12,6 +13,26 @@ public class IndexerProperties {
     private String docRootPath;
     // 对应 application.yml 配置下的 searcher.indexer.url-prefix
     private String urlPrefix;
-    // 对应 application.yml 配置下的 searcher.indexer.index-root-path
+    // 对应 application.yml 配置下的 searcher.indexer.index-root-path，索引段文件的输出目录，不配置就不写
     private String indexRootPath;
+    // 对应 application.yml 配置下的 searcher.indexer.scan-parallelism，并行扫描目录的线程数
+    private int scanParallelism = Runtime.getRuntime().availableProcessors();
+    // 对应 application.yml 配置下的 searcher.indexer.incremental，false 表示忽略文件清单全量重建，发布时下线所有旧记录
+    private boolean incremental = true;
+    // 对应 application.yml 配置下的 searcher.indexer.inverted-loader，倒排记录的写入方式
+    private InvertedIndexLoader.Type invertedLoader = InvertedIndexLoader.Type.JDBC_BATCH;
+    // 对应 application.yml 配置下的 searcher.indexer.inverted-batch-size，每攒多少条倒排记录写一次
+    private int invertedBatchSize = 10000;
+    // 对应 application.yml 配置下的 searcher.indexer.inverted-shard-bytes，每个倒排累积线程在内存中最多攒多少字节的倒排记录，超过了就排好序写到临时文件
+    private long invertedShardBytes = 16L * 1024 * 1024;
+    // 对应 application.yml 配置下的 searcher.indexer.forward-batch-size，正排每条记录比较大（含整篇正文），一批的总大小不能超过 max_allowed_packet
+    private int forwardBatchSize = 32;
+    // 对应 application.yml 配置下的 searcher.indexer.write-concurrency，同时写数据库的线程数的上限（实际并发数在这之下自动调整），<= 0 表示取连接池的大小
+    private int writeConcurrency = 0;
+    // 对应 application.yml 配置下的 searcher.indexer.drop-indexes-during-load，倒排表为空时（第一次构建），先删掉二级索引，写完再重建
+    private boolean dropIndexesDuringLoad = true;
+    // 对应 application.yml 配置下的 searcher.indexer.merge-factor，索引段的每一层攒够多少个就合并成一个
+    private int mergeFactor = 4;
+    // 对应 application.yml 配置下的 searcher.indexer.merge-bytes-per-second，后台合并索引段的写入限速，<= 0 表示不限速
+    private long mergeBytesPerSecond = 20L * 1024 * 1024;
 }
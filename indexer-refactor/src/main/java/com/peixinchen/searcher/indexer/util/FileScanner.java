@@ -5,8 +5,20 @@ import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
 
 @Slf4j      // 添加日志
 @Service    // 注册成 Spring bean
@@ -19,16 +31,84 @@ public class FileScanner {
      */
     public List<File> scanFile(String rootPath, FileFilter filter) {
         List<File> resultList = new ArrayList<>();
+        scanFile(rootPath, filter, resultList::add);
+        return resultList;
+    }
+
+    /**
+     * 和上面一样进行扫描，但每找到一个符合条件的文件就立即交给 consumer，而不是最后一起返回
+     * 这样扫描和后续的处理可以同时进行
+     * @param consumer 每个满足条件的文件都会调用一次 consumer.accept(file)
+     */
+    public void scanFile(String rootPath, FileFilter filter, Consumer<File> consumer) {
         File rootFile = new File(rootPath);
 
         // 针对目录树进行遍历，深度优先 or 广度优先即可，确保每个文件都没遍历到即可
         // 我们这里采用深度优先遍历，使用递归完成
-        traversal(rootFile, filter, resultList);
+        traversal(rootFile, filter, consumer);
+    }
 
-        return resultList;
+    /**
+     * 并行扫描版本：基于 NIO 的 DirectoryStream，每个目录一个 ForkJoin 任务，子目录拆成子任务并行遍历
+     * 每个目录项只读一次 BasicFileAttributes（而不是分别调用 isFile() / isDirectory() 各做一次 stat），
+     * 过滤条件直接使用读到的属性；找到符合条件的文件立即交给 consumer，所以扫描和后续处理可以同时进行
+     * @param filter 通过 filter.test(path, attributes) 判断文件是否满足条件
+     * @param consumer 会被多个线程同时调用，调用者需要保证线程安全；同时传入扫描时读到的属性（大小、修改时间），增量构建时不需要再 stat 一次
+     * @param parallelism 并行扫描的线程数
+     */
+    public void scanFileParallel(String rootPath, BiPredicate<Path, BasicFileAttributes> filter, BiConsumer<Path, BasicFileAttributes> consumer, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new DirectoryTask(Paths.get(rootPath), filter, consumer));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static class DirectoryTask extends RecursiveAction {
+        private final Path directory;
+        private final BiPredicate<Path, BasicFileAttributes> filter;
+        private final BiConsumer<Path, BasicFileAttributes> consumer;
+
+        DirectoryTask(Path directory, BiPredicate<Path, BasicFileAttributes> filter, BiConsumer<Path, BasicFileAttributes> consumer) {
+            this.directory = directory;
+            this.filter = filter;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subTasks = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        log.warn("读取文件属性失败，跳过：{}", path);
+                        continue;
+                    }
+
+                    if (attributes.isDirectory()) {
+                        DirectoryTask task = new DirectoryTask(path, filter, consumer);
+                        task.fork();    // 子目录交给其他线程（或者稍后由自己）处理
+                        subTasks.add(task);
+                    } else if (filter.test(path, attributes)) {
+                        consumer.accept(path, attributes);
+                    }
+                }
+            } catch (IOException e) {
+                // 和 listFiles() 返回 null 的情况一样，一般是权限等问题，跳过这个目录
+                log.warn("读取目录失败，跳过：{}", directory);
+            }
+
+            for (DirectoryTask task : subTasks) {
+                task.join();
+            }
+        }
     }
 
-    private void traversal(File directoryFile, FileFilter filter, List<File> resultList) {
+    private void traversal(File directoryFile, FileFilter filter, Consumer<File> consumer) {
         // 1. 先通过目录，得到该目录下的孩子文件有哪些
         File[] files = directoryFile.listFiles();
         if (files == null) {
@@ -40,15 +120,15 @@ public class FileScanner {
         for (File file : files) {
             // 通过 filter.accept(file) 的返回值，判断是否符合条件
             if (filter.accept(file)) {
-                // 说明符合条件，需要把该文件加入到结果 List 中
-                resultList.add(file);
+                // 说明符合条件，需要把该文件交给 consumer
+                consumer.accept(file);
             }
         }
 
         // 3. 遍历每个文件，针对是目录的情况，继续深度优先遍历（递归）
         for (File file : files) {
             if (file.isDirectory()) {
-                traversal(file, filter, resultList);
+                traversal(file, filter, consumer);
             }
         }
     }
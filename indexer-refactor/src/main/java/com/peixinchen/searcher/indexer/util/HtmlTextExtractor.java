@@ -0,0 +1,326 @@
+package com.peixinchen.searcher.indexer.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * 单趟扫描的 HTML -> 纯文本提取器，用来代替"整篇读进来 + 三次 replaceAll 正则"的做法
+ * 通过 NIO 分块读字节（文档是 ISO-8859-1 编码，一个字节就是一个字符），用一个状态机同时完成：
+ *   1. 去掉所有标签、注释，以及 <script> / <style> 中的内容
+ *   2. 解码 &lt; &amp; &#39; &#x27; 这类字符实体
+ *   3. 把连续的空白折叠成一个空格，并去掉首尾空白
+ *   4. 取出 <title> 中的文字
+ * 每个字节只看一次，除了结果本身不产生整篇大小的中间字符串
+ *
+ * 不是线程安全的，每次提取 new 一个，或者直接用静态的 extract 方法
+ */
+public class HtmlTextExtractor {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static class Result {
+        private final String title;
+        private final String text;
+
+        Result(String title, String text) {
+            this.title = title;
+            this.text = text;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    public static Result extract(Path path) throws IOException {
+        return extract(path, null);
+    }
+
+    /**
+     * 提取的同时把读到的每个字节交给 digest，这样计算文件指纹（增量构建用）不需要再把文件读一遍
+     * @param digest 可以为 null
+     */
+    public static Result extract(Path path, MessageDigest digest) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            HtmlTextExtractor extractor = new HtmlTextExtractor((int) Long.min(size, Integer.MAX_VALUE));
+            extractor.digest = digest;
+            return extractor.read(channel);
+        }
+    }
+
+    public static Result extract(ReadableByteChannel channel) throws IOException {
+        return new HtmlTextExtractor(BUFFER_SIZE).read(channel);
+    }
+
+    private enum State {
+        TEXT,           // 正文
+        TAG_OPEN,       // 刚读到 '<'
+        TAG_NAME,       // 读标签名
+        TAG_BODY,       // 标签名之后、'>' 之前（属性）
+        TAG_QUOTE,      // 属性值的引号中，这里的 '>' 不算标签结束
+        DECLARATION,    // 刚读到 "<!"，可能是注释，也可能是 <!DOCTYPE ...>
+        COMMENT,        // <!-- ... -->
+        RAW_TEXT,       // <script> / <style> 中的内容，直到对应的结束标签
+        ENTITY          // 读到 '&' 之后的实体名
+    }
+
+    private final StringBuilder text;
+    private final StringBuilder title = new StringBuilder();
+    private final StringBuilder tagName = new StringBuilder();
+    private final StringBuilder entity = new StringBuilder();
+
+    private State state = State.TEXT;
+    private boolean closingTag;
+    private boolean inTitle;
+    private char quote;
+    private int dashes;
+    private String rawTextEnd;      // "</script" 或 "</style"
+    private int rawTextMatched;     // 已经匹配了 rawTextEnd 的几个字符
+    private boolean textSpace;      // 是否有待输出的空格（空白只在后面还有文字时才输出，这样自然就去掉了首尾空白）
+    private boolean titleSpace;
+    private MessageDigest digest;
+
+    private HtmlTextExtractor(int expectedSize) {
+        // 去掉标签之后，正文一般不到原文件的一半
+        this.text = new StringBuilder(Integer.max(16, expectedSize / 2));
+    }
+
+    private Result read(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        while (channel.read(buffer) != -1) {
+            buffer.flip();
+            if (digest != null) {
+                digest.update(buffer.array(), 0, buffer.limit());
+            }
+            while (buffer.hasRemaining()) {
+                accept((char) (buffer.get() & 0xFF));
+            }
+            buffer.clear();
+        }
+        // 文件以一个没有结束的实体收尾，原样保留
+        if (state == State.ENTITY) {
+            emit('&');
+            emitAll(entity);
+        }
+        return new Result(title.toString(), text.toString());
+    }
+
+    private void accept(char c) {
+        switch (state) {
+            case TEXT:
+                if (c == '<') {
+                    state = State.TAG_OPEN;
+                    closingTag = false;
+                    tagName.setLength(0);
+                } else if (c == '&') {
+                    state = State.ENTITY;
+                    entity.setLength(0);
+                } else {
+                    emit(c);
+                }
+                break;
+
+            case TAG_OPEN:
+                if (c == '/') {
+                    closingTag = true;
+                    state = State.TAG_NAME;
+                } else if (c == '!') {
+                    state = State.DECLARATION;
+                    dashes = 0;
+                } else if (isLetter(c)) {
+                    tagName.append(toLower(c));
+                    state = State.TAG_NAME;
+                } else if (c == '>') {
+                    endTag();
+                } else {
+                    state = State.TAG_BODY;
+                }
+                break;
+
+            case TAG_NAME:
+                if (isLetter(c) || (c >= '0' && c <= '9')) {
+                    tagName.append(toLower(c));
+                } else if (c == '>') {
+                    endTag();
+                } else {
+                    state = State.TAG_BODY;
+                }
+                break;
+
+            case TAG_BODY:
+                if (c == '>') {
+                    endTag();
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                    state = State.TAG_QUOTE;
+                }
+                break;
+
+            case TAG_QUOTE:
+                if (c == quote) {
+                    state = State.TAG_BODY;
+                }
+                break;
+
+            case DECLARATION:
+                if (c == '-' && ++dashes == 2) {
+                    state = State.COMMENT;
+                    dashes = 0;
+                } else if (c == '>') {
+                    endTag();
+                } else if (c != '-') {
+                    state = State.TAG_BODY;
+                }
+                break;
+
+            case COMMENT:
+                if (c == '>' && dashes >= 2) {
+                    state = State.TEXT;
+                    space();
+                } else if (c == '-') {
+                    dashes++;
+                } else {
+                    dashes = 0;
+                }
+                break;
+
+            case RAW_TEXT:
+                char lower = toLower(c);
+                if (lower == rawTextEnd.charAt(rawTextMatched)) {
+                    if (++rawTextMatched == rawTextEnd.length()) {
+                        // 找到了结束标签，剩下的部分（到 '>' 为止）当普通标签跳过
+                        tagName.setLength(0);
+                        closingTag = true;
+                        state = State.TAG_BODY;
+                    }
+                } else {
+                    rawTextMatched = lower == '<' ? 1 : 0;
+                }
+                break;
+
+            case ENTITY:
+                if (c == ';') {
+                    state = State.TEXT;
+                    decodeEntity();
+                } else if (entity.length() < 10 && (isLetter(c) || (c >= '0' && c <= '9') || c == '#')) {
+                    entity.append(c);
+                } else {
+                    // 不是实体，把 '&' 和读到的部分原样输出，当前字符按正文重新处理
+                    state = State.TEXT;
+                    emit('&');
+                    emitAll(entity);
+                    accept(c);
+                }
+                break;
+        }
+    }
+
+    private void endTag() {
+        state = State.TEXT;
+        // 标签视为一个空格，避免前后的文字粘在一起
+        space();
+
+        String name = tagName.toString();
+        if (name.equals("title")) {
+            inTitle = !closingTag;
+        } else if (!closingTag && (name.equals("script") || name.equals("style"))) {
+            state = State.RAW_TEXT;
+            rawTextEnd = "</" + name;
+            rawTextMatched = 0;
+        }
+    }
+
+    private void decodeEntity() {
+        int codePoint = decode(entity);
+        if (codePoint < 0) {
+            emit('&');
+            emitAll(entity);
+            emit(';');
+        } else if (Character.isBmpCodePoint(codePoint)) {
+            emit((char) codePoint);
+        } else {
+            emit(Character.highSurrogate(codePoint));
+            emit(Character.lowSurrogate(codePoint));
+        }
+    }
+
+    // 返回实体对应的字符，不认识的实体返回 -1
+    private static int decode(CharSequence entity) {
+        if (entity.length() > 1 && entity.charAt(0) == '#') {
+            try {
+                boolean hex = entity.charAt(1) == 'x' || entity.charAt(1) == 'X';
+                String digits = entity.subSequence(hex ? 2 : 1, entity.length()).toString();
+                int codePoint = Integer.parseInt(digits, hex ? 16 : 10);
+                return Character.isValidCodePoint(codePoint) ? codePoint : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        switch (entity.toString()) {
+            case "lt": return '<';
+            case "gt": return '>';
+            case "amp": return '&';
+            case "quot": return '"';
+            case "apos": return '\'';
+            case "nbsp": return '\u00A0';
+            case "copy": return '©';
+            case "reg": return '®';
+            case "middot": return '·';
+            case "mdash": return '—';
+            case "ndash": return '–';
+            default: return -1;
+        }
+    }
+
+    private void emit(char c) {
+        if (c <= ' ' || c == '\u00A0') {
+            space();
+            return;
+        }
+
+        if (textSpace) {
+            text.append(' ');
+            textSpace = false;
+        }
+        text.append(c);
+
+        if (inTitle) {
+            if (titleSpace) {
+                title.append(' ');
+                titleSpace = false;
+            }
+            title.append(c);
+        }
+    }
+
+    private void emitAll(CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            emit(s.charAt(i));
+        }
+    }
+
+    private void space() {
+        textSpace = text.length() > 0;
+        if (inTitle) {
+            titleSpace = title.length() > 0;
+        }
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static char toLower(char c) {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -28,7 +28,8 @@ class IndexerApplicationTests {
             list.add(document);
         }
 
-        mapper.batchInsertForwardIndexes(list);
+        // 写进一个永远不会被发布的代，查询端看不到，下次构建开始时会被清理掉
+        mapper.batchInsertForwardIndexes(list, Integer.MAX_VALUE);
 
         for (Document document : list) {
             System.out.println(document);
@@ -0,0 +1,28 @@
+package com.peixinchen.searcher.indexer.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocIdAllocatorTest {
+    @Test
+    void reservesBeforeAllocating() {
+        List<Integer> reserved = new ArrayList<>();
+        DocIdAllocator allocator = new DocIdAllocator(100, reserved::add);
+        // 还没有分配，就已经记下了第一段
+        assertEquals(1, reserved.size());
+        assertEquals(100 + DocIdAllocator.RESERVE, (int) reserved.get(0));
+
+        for (int i = 0; i < DocIdAllocator.RESERVE * 2 + 1; i++) {
+            int docId = allocator.allocate();
+            assertEquals(100 + i, docId);
+            // 分配出去的 docId 都小于已经记下的预留位置
+            assertTrue(docId < reserved.get(reserved.size() - 1));
+        }
+        assertEquals(3, reserved.size());
+        assertEquals(100 + DocIdAllocator.RESERVE * 2 + 1, allocator.next());
+    }
+}
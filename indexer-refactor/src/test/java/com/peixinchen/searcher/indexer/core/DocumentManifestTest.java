@@ -0,0 +1,56 @@
+package com.peixinchen.searcher.indexer.core;
+
+import com.peixinchen.searcher.indexer.model.Document;
+import com.peixinchen.searcher.indexer.model.ManifestEntry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentManifestTest {
+    private static Document document(String path, long size, long mtime, String hash) {
+        Document document = new Document("", "", "");
+        document.setPath(path);
+        document.setSize(size);
+        document.setMtime(mtime);
+        document.setHash(hash);
+        return document;
+    }
+
+    @Test
+    void classifiesAddedChangedTouchedAndDeletedFiles() {
+        DocumentManifest manifest = new DocumentManifest(Arrays.asList(
+                new ManifestEntry("same.html", 1, 100, 1000, "h1"),
+                new ManifestEntry("touched.html", 2, 200, 2000, "h2"),
+                new ManifestEntry("changed.html", 3, 300, 3000, "h3"),
+                new ManifestEntry("deleted.html", 4, 400, 4000, "h4")));
+
+        assertTrue(manifest.unchanged("same.html", 100, 1000));
+        assertFalse(manifest.unchanged("touched.html", 200, 2001));
+        assertFalse(manifest.unchanged("changed.html", 301, 3001));
+        assertFalse(manifest.unchanged("added.html", 500, 5000));
+
+        // 只改了修改时间，内容没变：不重新索引，沿用原来的 docId
+        assertFalse(manifest.needsIndexing(document("touched.html", 200, 2001, "h2")));
+        assertTrue(manifest.needsIndexing(document("changed.html", 301, 3001, "h3'")));
+        assertTrue(manifest.needsIndexing(document("added.html", 500, 5000, "h5")));
+
+        Document changed = document("changed.html", 301, 3001, "h3'");
+        changed.setDocId(5);
+        manifest.indexed(changed);
+
+        List<String> deletedPaths = manifest.deletedPaths();
+        assertEquals(Collections.singletonList("deleted.html"), deletedPaths);
+        List<Integer> retired = manifest.retiredDocIds(deletedPaths);
+        retired.sort(null);
+        assertEquals(Arrays.asList(3, 4), retired);
+
+        List<ManifestEntry> updated = manifest.updatedEntries();
+        assertEquals(2, updated.size());
+        assertTrue(updated.contains(new ManifestEntry("touched.html", 2, 200, 2001, "h2")));
+        assertTrue(updated.contains(new ManifestEntry("changed.html", 5, 301, 3001, "h3'")));
+    }
+}
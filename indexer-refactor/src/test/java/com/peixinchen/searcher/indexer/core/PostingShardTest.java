@@ -0,0 +1,128 @@
+package com.peixinchen.searcher.indexer.core;
+
+import com.peixinchen.searcher.indexer.model.InvertedRecord;
+import com.peixinchen.searcher.indexer.model.TermDictionary;
+import com.peixinchen.searcher.indexer.model.TermFrequencies;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingShardTest {
+    private static final int WORDS = 30;
+
+    @TempDir
+    Path spillDirectory;
+
+    // 先按顺序查一遍词典，第 termId 个词的 termId 就是 termId
+    private static TermDictionary dictionary() {
+        TermDictionary dictionary = new TermDictionary();
+        for (int termId = 0; termId < WORDS; termId++) {
+            dictionary.lookup(word(termId));
+        }
+        return dictionary;
+    }
+
+    // 纯小写字母的词，分词后还是它自己
+    private static String word(int termId) {
+        return "term" + (char) ('a' + termId / 26) + (char) ('a' + termId % 26);
+    }
+
+    // 把 word 重复 count 次接到 sb 后面，词之间用空格隔开
+    private static void repeat(StringBuilder sb, int termId, int count) {
+        for (int i = 0; i < count; i++) {
+            sb.append(word(termId)).append(' ');
+        }
+    }
+
+    // 分词时空格也算一个词，去掉它的记录，只看 word() 的
+    private static List<InvertedRecord> known(List<InvertedRecord> records) {
+        List<InvertedRecord> recordList = new ArrayList<>();
+        for (InvertedRecord record : records) {
+            if (record.getTermId() < WORDS) {
+                recordList.add(record);
+            }
+        }
+        return recordList;
+    }
+
+    @Test
+    void mergesSpilledAndInMemoryRunsInTermDocOrder() throws IOException {
+        TermDictionary dictionary = dictionary();
+        List<PostingRun> runs = Collections.synchronizedList(new ArrayList<>());
+        // 两个 shard 模拟两个线程，内存上限很小，加几篇文档就会写出 run 文件
+        PostingShard first = new PostingShard(1024, spillDirectory, runs);
+        PostingShard second = new PostingShard(1024, spillDirectory, runs);
+        Random random = new Random(42);
+        Map<Integer, String> contents = new HashMap<>();
+        int records = 0;
+        for (int docId = 1; docId <= 200; docId++) {
+            StringBuilder title = new StringBuilder();
+            StringBuilder content = new StringBuilder();
+            for (int termId = docId % 7; termId < WORDS; termId += 3) {
+                repeat(title, termId, termId % 2);
+                repeat(content, termId, 1 + termId % 6);
+            }
+            TermFrequencies tf = TermFrequencies.of(title.toString(), content.toString(), dictionary);
+            contents.put(docId, content.toString());
+            records += tf.size();
+            (random.nextBoolean() ? first : second).add(docId, tf);
+        }
+        int spills = first.finish() + second.finish();
+        assertTrue(spills > 0);
+
+        List<InvertedRecord> merged = new ArrayList<>();
+        PostingRun.merge(runs, merged::add);
+
+        assertEquals(records, merged.size());
+        for (int i = 1; i < merged.size(); i++) {
+            InvertedRecord previous = merged.get(i - 1);
+            InvertedRecord current = merged.get(i);
+            assertTrue(previous.getTermId() < current.getTermId()
+                    || previous.getTermId() == current.getTermId() && previous.getDocId() < current.getDocId());
+        }
+        InvertedRecord record = merged.get(0);
+        assertEquals(0, record.getTermId());
+        assertEquals(1, record.getContentTf());
+        assertEquals(record.getTitleTf() * 10 + record.getContentTf(), record.getWeight());
+        // contentTf = 1，只有一个偏移
+        assertEquals(contents.get(record.getDocId()).indexOf(word(0)) + "", record.getOffsets());
+
+        // run 文件读完就删掉了
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void sortsOutOfOrderDocIdsWithinATerm() throws IOException {
+        TermDictionary dictionary = dictionary();
+        List<PostingRun> runs = new ArrayList<>();
+        PostingShard shard = new PostingShard(Long.MAX_VALUE, spillDirectory, runs);
+        shard.add(30, TermFrequencies.of("", word(5) + " " + word(5), dictionary));
+        shard.add(10, TermFrequencies.of(word(5), "", dictionary));
+        shard.add(20, TermFrequencies.of("", word(2), dictionary));
+        shard.finish();
+
+        List<InvertedRecord> merged = new ArrayList<>();
+        PostingRun.merge(runs, merged::add);
+        merged = known(merged);
+        assertEquals(3, merged.size());
+        assertEquals(20, merged.get(0).getDocId());
+        assertEquals(10, merged.get(1).getDocId());
+        assertEquals("", merged.get(1).getOffsets());
+        assertEquals(30, merged.get(2).getDocId());
+        assertEquals("0,7", merged.get(2).getOffsets());
+    }
+}
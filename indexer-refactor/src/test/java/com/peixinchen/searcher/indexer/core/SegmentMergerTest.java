@@ -0,0 +1,144 @@
+package com.peixinchen.searcher.indexer.core;
+
+import com.peixinchen.searcher.common.Bm25f;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentMergerTest {
+    @TempDir
+    Path directory;
+
+    private SegmentReader write(String name, int[] docIds) throws IOException {
+        Path path = directory.resolve(name);
+        try (SegmentWriter writer = new SegmentWriter(path, 1)) {
+            int[] weights = new int[docIds.length];
+            Arrays.fill(weights, 10);
+            int[] titleTfs = new int[docIds.length];
+            int[] contentTfs = new int[docIds.length];
+            for (int i = 0; i < docIds.length; i++) {
+                contentTfs[i] = docIds[i];
+            }
+            writer.addPostings("apple", 1, docIds, weights, titleTfs, contentTfs, docIds.length);
+            // 只有这个段中有 banana
+            if (name.equals("a.seg")) {
+                writer.addPostings("banana", 2, docIds, weights, titleTfs, contentTfs, 1);
+            }
+            for (int docId : docIds) {
+                writer.addDocument(docId, "t" + docId, "u" + docId, "s" + docId, 1, 10 * docId);
+            }
+            writer.finish();
+        }
+        return SegmentReader.open(path);
+    }
+
+    @Test
+    void mergesPostingsAndDocumentsDroppingTombstones() throws IOException {
+        SegmentReader a = write("a.seg", new int[] { 1, 4, 7 });
+        SegmentReader b = write("b.seg", new int[] { 2, 3, 8 });
+        Tombstones tombstones = Tombstones.of(new int[] { 1, 3, 100 });
+
+        Path path = directory.resolve("merged.seg");
+        int[] dropped;
+        try (SegmentWriter writer = new SegmentWriter(path, 2)) {
+            dropped = new SegmentMerger(Arrays.asList(a, b), tombstones, stats(), written -> {}).merge(writer);
+            writer.finish();
+        }
+        Arrays.sort(dropped);
+        assertArrayEquals(new int[] { 1, 3 }, dropped);
+
+        SegmentReader merged = SegmentReader.open(path);
+        // banana 只出现在被删除的 1 号文档中，合并后整个词都没有了
+        assertEquals(1, merged.termCount());
+        assertEquals("apple", new String(merged.word(0), StandardCharsets.UTF_8));
+        assertEquals(1, merged.termId(0));
+        int[] docIds = new int[merged.df(0)];
+        int[] weights = new int[merged.df(0)];
+        merged.readPostings(0, docIds, weights);
+        assertArrayEquals(new int[] { 2, 4, 7, 8 }, docIds);
+
+        assertEquals(4, merged.docCount());
+        assertEquals(7, merged.docId(2));
+        SegmentReader copy = write("copy.seg", new int[] { 7 });
+        assertArrayEquals(copy.rawDocument(0), merged.rawDocument(2));
+    }
+
+    // 整个索引 100 篇文档，apple 出现在其中 50 篇里
+    private static CollectionStats stats() {
+        return new CollectionStats(100, 1, 40, new int[] { 0, 50, 5 });
+    }
+
+    @Test
+    void mergeRescoresPostingsWithLatestStats() throws IOException {
+        SegmentReader a = write("a.seg", new int[] { 1, 4, 7 });
+        SegmentReader b = write("b.seg", new int[] { 2, 3, 8 });
+
+        Path path = directory.resolve("merged.seg");
+        try (SegmentWriter writer = new SegmentWriter(path, 2)) {
+            new SegmentMerger(Arrays.asList(a, b), Tombstones.EMPTY, stats(), written -> {}).merge(writer);
+            writer.finish();
+        }
+
+        SegmentReader merged = SegmentReader.open(path);
+        int[] docIds = new int[merged.df(0)];
+        int[] weights = new int[merged.df(0)];
+        int[] titleTfs = new int[merged.df(0)];
+        int[] contentTfs = new int[merged.df(0)];
+        merged.readPostings(0, docIds, weights);
+        merged.readFrequencies(0, titleTfs, contentTfs);
+        assertEquals(3, merged.docId(2));
+        assertEquals(1, merged.titleLength(2));
+        assertEquals(30, merged.contentLength(2));
+
+        Bm25f.Builder lengths = new Bm25f.Builder();
+        for (int docId : docIds) {
+            lengths.add(docId, 1, 10 * docId);
+        }
+        Bm25f bm25f = lengths.build(100, 1, 40);
+        for (int i = 0; i < docIds.length; i++) {
+            // 写段时 weight 都是 10，合并后换成按统计中的 df、文档数、平均长度算出来的得分，词频原样保留
+            assertEquals(docIds[i], contentTfs[i]);
+            assertEquals(bm25f.impact(50, docIds[i], 0, docIds[i]), weights[i]);
+        }
+    }
+
+    @Test
+    void statsReadOnlyHeaderAndDocTable() throws IOException {
+        SegmentReader a = write("a.seg", new int[] { 1, 4, 7 });
+        TieredMergePolicy.SegmentStats stats = SegmentReader.stats(directory.resolve("a.seg"), Tombstones.of(new int[] { 2, 4, 7 }));
+        assertEquals("a.seg", stats.name);
+        assertEquals(a.sizeInBytes(), stats.sizeInBytes);
+        assertEquals(3, stats.docCount);
+        assertEquals(2, stats.deletedCount);
+    }
+
+    @Test
+    void tieredPolicyMergesSmallestSegmentsOfAFullTier() {
+        TieredMergePolicy policy = new TieredMergePolicy(3, 0.3);
+        long mb = TieredMergePolicy.FLOOR_BYTES;
+        List<TieredMergePolicy.SegmentStats> segments = Arrays.asList(
+                new TieredMergePolicy.SegmentStats("big", 20 * mb, 100, 0),
+                new TieredMergePolicy.SegmentStats("s1", mb / 2, 10, 0),
+                new TieredMergePolicy.SegmentStats("s2", mb / 4, 10, 0),
+                new TieredMergePolicy.SegmentStats("s3", mb / 8, 10, 0),
+                new TieredMergePolicy.SegmentStats("s4", mb / 16, 10, 0));
+        assertEquals(Arrays.asList("s4", "s3", "s2"), policy.findMerge(segments));
+
+        // 没有攒够的层，但有一个段删除了一半的文档：单独压缩
+        List<TieredMergePolicy.SegmentStats> withDeletes = Arrays.asList(
+                new TieredMergePolicy.SegmentStats("big", 20 * mb, 100, 50),
+                new TieredMergePolicy.SegmentStats("s1", mb / 2, 10, 1));
+        assertEquals(Collections.singletonList("big"), policy.findMerge(withDeletes));
+
+        assertTrue(policy.findMerge(Collections.singletonList(
+                new TieredMergePolicy.SegmentStats("big", 20 * mb, 100, 1))).isEmpty());
+    }
+}
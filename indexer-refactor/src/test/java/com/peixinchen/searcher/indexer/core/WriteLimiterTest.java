@@ -0,0 +1,82 @@
+package com.peixinchen.searcher.indexer.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteLimiterTest {
+    // 一轮：把许可全部拿完，再全部以 nanos 的耗时写完
+    private static void round(WriteLimiter limiter, WriteLimiter.Channel channel, long nanos) throws InterruptedException {
+        int limit = limiter.limit();
+        boolean[] saturated = new boolean[limit];
+        for (int i = 0; i < limit; i++) {
+            saturated[i] = limiter.acquire();
+        }
+        for (int i = 0; i < limit; i++) {
+            channel.complete(saturated[i], nanos, 100);
+        }
+    }
+
+    @Test
+    void growsWhileFastAndBacksOffWhenSlow() throws InterruptedException {
+        WriteLimiter limiter = new WriteLimiter(8);
+        WriteLimiter.Channel channel = limiter.channel();
+        assertEquals(2, limiter.limit());
+
+        for (int i = 0; i < 100; i++) {
+            round(limiter, channel, 100_000);
+        }
+        assertEquals(8, limiter.limit());
+
+        // 突然慢了 10 倍：减一次，同一轮里剩下的慢写入不再减
+        round(limiter, channel, 1_000_000);
+        assertEquals(6, limiter.limit());
+
+        for (int i = 0; i < 100; i++) {
+            round(limiter, channel, 1_000_000);
+        }
+        assertTrue(limiter.limit() >= 1);
+    }
+
+    @Test
+    void channelsKeepSeparateBaselines() throws InterruptedException {
+        WriteLimiter limiter = new WriteLimiter(8);
+        WriteLimiter.Channel small = limiter.channel();
+        WriteLimiter.Channel large = limiter.channel();
+        for (int i = 0; i < 100; i++) {
+            round(limiter, small, 1_000);
+            round(limiter, large, 1_000_000);
+        }
+        assertEquals(8, limiter.limit());
+    }
+
+    @Test
+    void neverExceedsLimit() throws InterruptedException {
+        WriteLimiter limiter = new WriteLimiter(3);
+        WriteLimiter.Channel channel = limiter.channel();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 50; i++) {
+                    channel.run(1, () -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Integer::max);
+                        Thread.yield();
+                        running.decrementAndGet();
+                    });
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(maxRunning.get() <= 3);
+    }
+}
@@ -0,0 +1,69 @@
+package com.peixinchen.searcher.indexer.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TermFrequenciesTest {
+    @Test
+    void countsAndOffsets() {
+        TermDictionary dictionary = new TermDictionary();
+        String content = "list of list and list, list again list";
+        TermFrequencies tf = TermFrequencies.of("List", content, dictionary);
+
+        Map<String, Integer> wordToIndex = new HashMap<>();
+        for (int i = 0; i < tf.size(); i++) {
+            wordToIndex.put(tf.word(i), i);
+        }
+
+        int list = wordToIndex.get("list");
+        assertEquals(1, tf.titleCount(list));
+        assertEquals(5, tf.contentCount(list));
+        assertEquals(15, tf.weight(list));
+        // 只记录前 4 次出现的位置
+        assertEquals("0,8,17,23", tf.offsets(list));
+        assertEquals(dictionary.termId("list"), tf.termId(list));
+    }
+
+    @Test
+    void offsetsAreCodePoints() {
+        TermDictionary dictionary = new TermDictionary();
+        // 😀 在 Java 中是两个 char，只算一个码点
+        String content = "\uD83D\uDE00 list \uD83D\uDE00 list";
+        TermFrequencies tf = TermFrequencies.of("", content, dictionary);
+        for (int i = 0; i < tf.size(); i++) {
+            if (tf.word(i).equals("list")) {
+                assertEquals("2,9", tf.offsets(i));
+                return;
+            }
+        }
+        fail("没有分出 list");
+    }
+
+    @Test
+    void grow() {
+        // 5000 个不同的纯字母单词：qaaa, qaab, ...
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append('q')
+                    .append((char) ('a' + i / 676))
+                    .append((char) ('a' + i / 26 % 26))
+                    .append((char) ('a' + i % 26))
+                    .append(' ');
+        }
+        TermDictionary dictionary = new TermDictionary();
+        TermFrequencies tf = TermFrequencies.of("", sb.toString(), dictionary);
+
+        int words = 0;
+        for (int i = 0; i < tf.size(); i++) {
+            if (tf.word(i).startsWith("q")) {
+                words++;
+                assertEquals(1, tf.contentCount(i));
+            }
+        }
+        assertEquals(5000, words);
+    }
+}
@@ -0,0 +1,39 @@
+package com.peixinchen.searcher.indexer.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HtmlTextExtractorTest {
+    private static HtmlTextExtractor.Result extract(String html) throws IOException {
+        byte[] bytes = html.getBytes(StandardCharsets.ISO_8859_1);
+        return HtmlTextExtractor.extract(Channels.newChannel(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    void stripsTagsScriptsAndComments() throws IOException {
+        HtmlTextExtractor.Result result = extract("<!DOCTYPE html>\n<html><head>\n"
+                + "<title>ArrayList (Java Platform SE 8 )</title>\n"
+                + "<script type=\"text/javascript\">if (a < b) { document.write('<p>x</p>'); }</script>\n"
+                + "<STYLE>p > a { color: red; }</STYLE>\n"
+                + "</head><body><!-- ======== START OF CLASS DATA -- ======== -->\n"
+                + "<a href=\"x>y\" title='a > b'>Class</a>&nbsp;ArrayList&lt;E&gt;\n\n\t"
+                + "<p>Resizable-array &amp; implementation&#46; &#x41;&unknown; a&b</p></body></html>");
+
+        assertEquals("ArrayList (Java Platform SE 8 )", result.getTitle());
+        assertEquals("ArrayList (Java Platform SE 8 ) Class ArrayList<E> Resizable-array & implementation. A&unknown; a&b",
+                result.getText());
+    }
+
+    @Test
+    void emptyDocument() throws IOException {
+        HtmlTextExtractor.Result result = extract("  <html>  </html>  ");
+        assertEquals("", result.getTitle());
+        assertEquals("", result.getText());
+    }
+}
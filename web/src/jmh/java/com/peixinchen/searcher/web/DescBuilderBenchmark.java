@@ -0,0 +1,76 @@
+package com.peixinchen.searcher.web;
+
+import com.peixinchen.searcher.common.SyntheticCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从摘要源生成一篇文档的摘要并标亮查询词（DescBuilder.build）
+ * 一半的查询词取自文档的摘要源（命中），一半是随机的词（多数不命中，要扫描整个摘要源）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DescBuilderBenchmark {
+    @Param("256")
+    public int documentCount;
+
+    @Param("20000")
+    public int vocabularySize;
+
+    @Param({"0.8", "1.2"})
+    public double skew;
+
+    private final DescBuilder descBuilder = new DescBuilder();
+    private Document[] documents;
+    private List<List<String>> queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticCorpus corpus = new SyntheticCorpus(vocabularySize, skew, 42);
+        Random random = new Random(7);
+        documents = new Document[documentCount];
+        queries = new ArrayList<>();
+        for (int i = 0; i < documentCount; i++) {
+            Document document = new Document();
+            document.setDocId(i);
+            document.setTitle(corpus.text(3));
+            document.setUrl("https://docs.oracle.com/javase/8/docs/api/" + i + ".html");
+            // 摘要源最多 1000 个字符，一个词大约 5 个字符
+            String source = corpus.text(180);
+            document.setSnippetSource(source.length() > 1000 ? source.substring(0, 1000) : source);
+            documents[i] = document;
+
+            String[] sourceWords = source.split("[ .]+");
+            String word = random.nextBoolean() ? sourceWords[random.nextInt(sourceWords.length)] : corpus.nextWord();
+            queries.add(Arrays.asList(corpus.nextWord(), word));
+        }
+    }
+
+    @Benchmark
+    public Document build() {
+        int i = next;
+        next = (next + 1) % documentCount;
+        return descBuilder.build(queries.get(i), documents[i]);
+    }
+}
@@ -0,0 +1,144 @@
+package com.peixinchen.searcher.web.engine;
+
+import com.peixinchen.searcher.common.Bm25f;
+import com.peixinchen.searcher.common.SyntheticCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询的排序部分：取到倒排列表之后得到前 k 篇
+ *   exhaustiveOr：原来 SearchController.search 的做法，把所有命中的文档放进 HashMap 累加得分，再整体排序截取
+ *   maxScoreOr：MaxScoreSearcher（OR）
+ *   booleanAnd：BooleanSearcher（所有词都必须包含）
+ * 索引是 SyntheticCorpus 生成的 documentCount 篇文档，weight 和线上一样是 BM25F 得分；查询词也按 Zipf 分布抽取，高频词更常出现在查询中
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class RankingBenchmark {
+    @Param("100000")
+    public int documentCount;
+
+    @Param("100")
+    public int wordsPerDocument;
+
+    @Param("50000")
+    public int vocabularySize;
+
+    @Param({"0.8", "1.0", "1.2"})
+    public double skew;
+
+    @Param({"2", "4"})
+    public int queryTerms;
+
+    @Param("20")
+    public int k;
+
+    private static final int QUERY_COUNT = 256;
+
+    private List<List<PostingList>> queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticCorpus corpus = new SyntheticCorpus(vocabularySize, skew, 42);
+        PostingListBuilder[] builders = new PostingListBuilder[vocabularySize];
+        Bm25f.Builder lengths = new Bm25f.Builder();
+
+        // 攒 (docId, 词频)，和 InvertedIndexEngine 一样在 build 时换成 BM25F 得分
+        int[] tfs = new int[vocabularySize];
+        List<Integer> distinct = new ArrayList<>();
+        for (int docId = 0; docId < documentCount; docId++) {
+            for (int i = 0; i < wordsPerDocument; i++) {
+                int word = corpus.nextWordIndex();
+                if (tfs[word]++ == 0) {
+                    distinct.add(word);
+                }
+            }
+            for (int word : distinct) {
+                if (builders[word] == null) {
+                    builders[word] = new PostingListBuilder();
+                }
+                builders[word].add(docId, tfs[word]);
+                tfs[word] = 0;
+            }
+            distinct.clear();
+            lengths.add(docId, 0, wordsPerDocument);
+        }
+
+        Bm25f bm25f = lengths.build();
+        PostingList[] postings = new PostingList[vocabularySize];
+        for (int word = 0; word < vocabularySize; word++) {
+            if (builders[word] != null) {
+                int df = builders[word].size();
+                postings[word] = builders[word].build((docId, tf) -> bm25f.impact(df, docId, 0, tf));
+                builders[word] = null;
+            }
+        }
+
+        queries = new ArrayList<>();
+        while (queries.size() < QUERY_COUNT) {
+            List<PostingList> query = new ArrayList<>();
+            for (int i = 0; i < queryTerms; i++) {
+                PostingList list = postings[corpus.nextWordIndex()];
+                if (list != null && !query.contains(list)) {
+                    query.add(list);
+                }
+            }
+            if (query.size() == queryTerms) {
+                queries.add(query);
+            }
+        }
+    }
+
+    private List<PostingList> nextQuery() {
+        List<PostingList> query = queries.get(next);
+        next = (next + 1) % QUERY_COUNT;
+        return query;
+    }
+
+    @Benchmark
+    public List<Map.Entry<Integer, Integer>> exhaustiveOr() {
+        Map<Integer, Integer> docIdToScore = new HashMap<>();
+        for (PostingList list : nextQuery()) {
+            PostingList.PostingIterator it = list.iterator();
+            for (int docId = it.nextDoc(); docId != PostingList.NO_MORE_DOCS; docId = it.nextDoc()) {
+                docIdToScore.merge(docId, it.weight(), Integer::sum);
+            }
+        }
+        List<Map.Entry<Integer, Integer>> entries = new ArrayList<>(docIdToScore.entrySet());
+        entries.sort((a, b) -> b.getValue().compareTo(a.getValue()));
+        return entries.subList(0, Integer.min(k, entries.size()));
+    }
+
+    @Benchmark
+    public ScoredDocs maxScoreOr() {
+        return MaxScoreSearcher.search(nextQuery(), k);
+    }
+
+    @Benchmark
+    public ScoredDocs booleanAnd() {
+        return BooleanSearcher.searchAfter(nextQuery(), Collections.emptyList(), Collections.emptyList(),
+                k, Integer.MAX_VALUE, -1, null);
+    }
+}
@@ -0,0 +1,164 @@
+package com.peixinchen.searcher.web;
+
+import com.peixinchen.searcher.web.engine.InvertedIndex;
+import com.peixinchen.searcher.web.engine.InvertedIndexEngine;
+import com.peixinchen.searcher.web.engine.PostingList;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * /api/search 用的异步检索，请求线程只负责把任务提交出去，检索在 SearchExecutors 的线程池中完成：
+ *   1. 每个词的倒排列表并发地取（数据库模式下倒排列表在内存中，索引段模式下要在每个段中查词条表、读映射的文件）
+ *   2. 排序、取这一页的文档
+ *   3. 生成摘要（数据库模式下要查两次数据库）
+ * 每个请求有一个截止时间（searcher.web.search-timeout），到了还没完成的步骤不再等待：
+ *   1 没完成：没取到的词不参与排序；2 总是要做完的；3 没完成：用摘要源的开头作为摘要
+ * 这时返回的结果 partial = true，不放进结果缓存
+ */
+@Slf4j
+@Service
+public class AsyncSearchService {
+    private final SearchService searchService;
+    private final SnippetService snippetService;
+    private final DescBuilder descBuilder;
+    private final InvertedIndexEngine engine;
+    private final SearchCache searchCache;
+    private final SearchExecutors executors;
+    private final WebProperties properties;
+    private final SearchMetrics metrics;
+
+    @Autowired
+    public AsyncSearchService(SearchService searchService, SnippetService snippetService, DescBuilder descBuilder,
+                              InvertedIndexEngine engine, SearchCache searchCache, SearchExecutors executors, WebProperties properties,
+                              SearchMetrics metrics) {
+        this.searchService = searchService;
+        this.snippetService = snippetService;
+        this.descBuilder = descBuilder;
+        this.engine = engine;
+        this.searchCache = searchCache;
+        this.executors = executors;
+        this.properties = properties;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param cursor 上一页返回的游标，没有时按 page 取
+     */
+    public CompletableFuture<SearchResponse> search(SearchQuery query, int page, String cursor) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(properties.getSearchTimeout());
+        InvertedIndex index = engine.current();
+        Executor executor = executors.executor();
+
+        PageCursor after = cursor == null || cursor.isEmpty() ? null : PageCursor.decode(cursor, query, properties.getMaxPage());
+        int pageNumber = after == null ? page : after.getPage();
+        SearchPage cached = searchCache.getResult(index, query, pageNumber, after);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(response(cached, false, start));
+        }
+
+        // 1. 每个词的倒排列表并发地取
+        Set<String> words = new LinkedHashSet<>(query.getMust());
+        words.addAll(query.getShould());
+        words.addAll(query.getMustNot());
+        Map<String, CompletableFuture<PostingList>> fetches = new LinkedHashMap<>();
+        for (String word : words) {
+            fetches.put(word, CompletableFuture.supplyAsync(() -> metrics.fetch(() -> searchCache.getPostingList(index, word)), executor));
+        }
+        CompletableFuture<Void> allFetched = CompletableFuture.allOf(fetches.values().toArray(new CompletableFuture[0]));
+
+        return executors.within(allFetched, deadline)
+                .handle((ignored, e) -> new Fetched(fetches))
+                .thenComposeAsync(fetched -> {
+                    // 2. 排序、取文档
+                    SearchQuery effective = query;
+                    if (!fetched.missing.isEmpty()) {
+                        log.debug("截止时间之前没有取到 {} 的倒排列表，不参与排序", fetched.missing);
+                        effective = query.without(fetched.missing);
+                    }
+                    SearchService.Ranking ranking = searchService.rank(index, effective, fetched.postings::get, pageNumber, after);
+                    List<Document> documentList = metrics.documents(() -> SearchService.fetchDocuments(index.documents(), ranking.getDocIdList()));
+                    // 少了词的排序和完整的排序不一样，不能再用它的游标接着往后翻
+                    String nextCursor = fetched.missing.isEmpty() ? ranking.getNextCursor() : null;
+
+                    // 3. 摘要
+                    CompletableFuture<List<Document>> snippets = CompletableFuture.supplyAsync(() -> {
+                        metrics.snippet(() -> snippetService.build(index, query.words(), documentList));
+                        return documentList;
+                    }, executor);
+                    return executors.within(snippets, deadline).handle((withSnippets, e) -> {
+                        boolean partial = !fetched.missing.isEmpty();
+                        SearchPage searchPage;
+                        if (e == null) {
+                            searchPage = new SearchPage(pageNumber, withSnippets, nextCursor);
+                        } else {
+                            if (!(unwrap(e) instanceof TimeoutException)) {
+                                log.warn("生成摘要失败：{}", unwrap(e).toString());
+                            }
+                            // 摘要线程可能还在修改 documentList，返回的是复制出来的文档
+                            partial = true;
+                            searchPage = new SearchPage(pageNumber, fallbackSnippets(query, documentList), nextCursor);
+                        }
+                        if (partial) {
+                            metrics.partial();
+                        } else {
+                            searchCache.putResult(index, query, pageNumber, after, searchPage);
+                        }
+                        return response(searchPage, partial, start);
+                    });
+                }, executor);
+    }
+
+    private List<Document> fallbackSnippets(SearchQuery query, List<Document> documentList) {
+        List<Document> copies = new ArrayList<>();
+        for (Document document : documentList) {
+            Document copy = new Document();
+            copy.setDocId(document.getDocId());
+            copy.setTitle(document.getTitle());
+            copy.setUrl(document.getUrl());
+            copy.setSnippetSource(document.getSnippetSource());
+            copies.add(descBuilder.build(query.words(), copy));
+        }
+        return copies;
+    }
+
+    private static SearchResponse response(SearchPage searchPage, boolean partial, long start) {
+        long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return new SearchResponse(searchPage.getPage(), searchPage.getDocumentList(), searchPage.getNextCursor(), partial, tookMillis);
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    // 截止时间到了的时候，已经取到的倒排列表；没取到的词（超时或者出错）放在 missing 里
+    private static class Fetched {
+        private final Map<String, PostingList> postings = new HashMap<>();
+        private final Set<String> missing = new LinkedHashSet<>();
+
+        Fetched(Map<String, CompletableFuture<PostingList>> fetches) {
+            for (Map.Entry<String, CompletableFuture<PostingList>> entry : fetches.entrySet()) {
+                CompletableFuture<PostingList> fetch = entry.getValue();
+                if (fetch.isDone() && !fetch.isCompletedExceptionally()) {
+                    postings.put(entry.getKey(), fetch.join());
+                } else {
+                    missing.add(entry.getKey());
+                }
+            }
+        }
+    }
+}
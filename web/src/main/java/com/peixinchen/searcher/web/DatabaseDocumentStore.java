@@ -0,0 +1,22 @@
+package com.peixinchen.searcher.web;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// 从 forward_indexes 表中取文档，不取 content
+@Component
+public class DatabaseDocumentStore implements DocumentStore {
+    private final SearchMapper mapper;
+
+    @Autowired
+    public DatabaseDocumentStore(SearchMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public List<Document> queryByDocIds(List<Integer> docIdList) {
+        return mapper.queryByDocIds(docIdList);
+    }
+}
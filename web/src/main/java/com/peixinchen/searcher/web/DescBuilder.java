@@ -3,31 +3,36 @@ package com.peixinchen.searcher.web;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.util.Collections;
 import java.util.List;
 
 @Slf4j
 @Component
 public class DescBuilder {
     public Document build(List<String> queryList, Document doc) {
-        // 找到 content 中包含关键字的位置
+        // 找到 snippetSource 中包含关键字的位置
         // query = "list"
-        // content = "..... hello list go come do ...."
-        // desc = "hello <i>list</i> go com..."
+        // snippetSource = "..... hello List go come do ...."
+        // desc = "hello <i>List</i> go com..."
+
+        String source = doc.getSnippetSource();
+        if (source == null) {
+            source = "";
+        }
 
-        String content = doc.getContent().toLowerCase();
         String word = "";
         int i = -1;
         for (String query : queryList) {
-            i = content.indexOf(query);
+            i = indexOfIgnoreCase(source, query, 0);
             if (i != -1) {
                 word = query;
                 break;
             }
         }
         if (i == -1) {
-            // 这里中情况如果出现了，说明咱的倒排索引建立的有问题
-            log.error("docId = {} 中不包含 {}", doc.getDocId(), queryList);
-            throw new RuntimeException();
+            // snippetSource 只是正文的开头部分，关键字可能出现在更后面，这时就用开头作为摘要
+            log.debug("docId = {} 的摘要源中不包含 {}", doc.getDocId(), queryList);
+            i = 0;
         }
 
         // 前面截 120 个字，后边截 120 个字
@@ -38,17 +43,68 @@ public class DescBuilder {
         }
 
         int to = i + 120;
-        if (to > content.length()) {
+        if (to > source.length()) {
             // 说明后面不够 120 个字了
-            to = content.length();
+            to = source.length();
         }
 
-        String desc = content.substring(from, to);
-
-        desc = desc.replace(word, "<i>" + word + "</i>");
+        String desc = source.substring(from, to);
 
-        doc.setDesc(desc);
+        doc.setDesc(highlight(desc, Collections.singletonList(word)));
 
         return doc;
     }
+
+    // 不区分大小写地查找 word，不需要把整个字符串先转成小写
+    private static int indexOfIgnoreCase(String s, String word, int fromIndex) {
+        if (word.isEmpty()) {
+            return -1;
+        }
+        for (int i = fromIndex; i <= s.length() - word.length(); i++) {
+            if (s.regionMatches(true, i, word, 0, word.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 把 text 中所有的查询词（不区分大小写，保留原文的大小写）用 <i></i> 包起来，重叠的命中合并成一段
+     * 正文中的实体已经在构建索引时解码过了（比如 List<E>），所以其余字符都要做 HTML 转义，页面上用 th:utext 输出
+     */
+    static String highlight(String text, List<String> wordList) {
+        boolean[] marked = new boolean[text.length()];
+        for (String word : wordList) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            for (int i = indexOfIgnoreCase(text, word, 0); i != -1; i = indexOfIgnoreCase(text, word, i + 1)) {
+                for (int j = i; j < i + word.length(); j++) {
+                    marked[j] = true;
+                }
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(text.length() + 32);
+        for (int i = 0; i < text.length(); i++) {
+            if (marked[i] && (i == 0 || !marked[i - 1])) {
+                sb.append("<i>");
+            }
+            appendEscaped(sb, text.charAt(i));
+            if (marked[i] && (i == text.length() - 1 || !marked[i + 1])) {
+                sb.append("</i>");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendEscaped(StringBuilder sb, char c) {
+        switch (c) {
+            case '<': sb.append("&lt;"); break;
+            case '>': sb.append("&gt;"); break;
+            case '&': sb.append("&amp;"); break;
+            case '"': sb.append("&quot;"); break;
+            default: sb.append(c);
+        }
+    }
 }
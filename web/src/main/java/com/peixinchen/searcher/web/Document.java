@@ -1,5 +1,6 @@
 package com.peixinchen.searcher.web;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 
 @Data
@@ -7,7 +8,8 @@ public class Document {
     private Integer docId;
     private String title;
     private String url;
-    private String content;
+    @JsonIgnore     // /api/search 返回的 JSON 中只需要生成好的摘要（desc）
+    private String snippetSource;   // 构建索引时预先截好的正文开头部分，用来生成摘要
     private String desc;
 
     @Override
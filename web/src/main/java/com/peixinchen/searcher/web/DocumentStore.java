@@ -0,0 +1,13 @@
+package com.peixinchen.searcher.web;
+
+import java.util.List;
+
+/**
+ * 根据 docId 取最终页面要展示的文档信息（title、url、snippetSource）
+ */
+public interface DocumentStore {
+    /**
+     * @return 找到的文档，顺序不保证和 docIdList 一致，不存在的 docId 会被跳过
+     */
+    List<Document> queryByDocIds(List<Integer> docIdList);
+}
@@ -0,0 +1,57 @@
+package com.peixinchen.searcher.web;
+
+import lombok.Data;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * 翻页游标：上一页最后一篇文档的 (score, docId)，下一页从它之后接着取（见 MaxScoreSearcher.searchAfter）
+ * 对用户不透明，编码成 URL 安全的 Base64；带上查询的哈希，换了查询的游标不能用
+ * 索引切换了代之后旧的游标仍然可以用，只是相邻两页可能有少量重复或遗漏
+ */
+@Data
+public class PageCursor {
+    private static final int BYTES = 20;
+
+    private final int generation;
+    private final int queryHash;
+    private final int page;         // 游标指向的是第几页（上一页 + 1），只用于显示和缓存
+    private final int afterScore;
+    private final int afterDocId;
+
+    public String encode() {
+        ByteBuffer buf = ByteBuffer.allocate(BYTES)
+                .putInt(generation).putInt(queryHash).putInt(page).putInt(afterScore).putInt(afterDocId);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buf.array());
+    }
+
+    /**
+     * 游标没有签名，客户端可以随便改，解析出来的内容都要当作不可信的：
+     * 位置是 (Integer.MAX_VALUE, -1) 的是按页码取时用的"从头开始"，不是真正的游标；页码和按页码取一样最多到 maxPage
+     * @return 解析不了、或者不是这个查询的游标时返回 null
+     */
+    public static PageCursor decode(String cursor, SearchQuery query, int maxPage) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (bytes.length != BYTES) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        PageCursor pageCursor = new PageCursor(buf.getInt(), buf.getInt(), buf.getInt(), buf.getInt(), buf.getInt());
+        if (pageCursor.queryHash != query.hashCode() || pageCursor.page < 2) {
+            return null;
+        }
+        if (pageCursor.afterScore == Integer.MAX_VALUE && pageCursor.afterDocId == -1) {
+            return null;
+        }
+        if (pageCursor.page > maxPage) {
+            return new PageCursor(pageCursor.generation, pageCursor.queryHash, maxPage, pageCursor.afterScore, pageCursor.afterDocId);
+        }
+        return pageCursor;
+    }
+}
@@ -0,0 +1,140 @@
+package com.peixinchen.searcher.web;
+
+import com.peixinchen.searcher.web.engine.CandidateVerifier;
+import com.peixinchen.searcher.web.engine.InvertedIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用构建索引时保存的词偏移（inverted_indexes.offsets，每个词最多前 MAX_OFFSETS 次）检查短语是否出现：
+ * 短语中第一个词出现在 p 时，第 i 个词必须出现在 p + positions[i]
+ *
+ * 偏移只记录了正文中的前几次出现，所以只有在能确定不匹配时才排除一篇文档：
+ *   所有词的偏移都是完整的（少于 MAX_OFFSETS 个）并且对不上，再看标题中也没有这个短语，才排除
+ *   有词的偏移记满了（后面可能还有），保留
+ * 索引段文件中没有词偏移，索引段模式下短语退化成所有的词都必须包含
+ */
+@Component
+public class PhraseVerifier {
+    private final SearchMapper mapper;
+    private final WebProperties properties;
+
+    @Autowired
+    public PhraseVerifier(SearchMapper mapper, WebProperties properties) {
+        this.mapper = mapper;
+        this.properties = properties;
+    }
+
+    /**
+     * @return 不需要（或者没法）检查时返回 null
+     */
+    public CandidateVerifier verifier(InvertedIndex index, List<SearchQuery.Phrase> phrases) {
+        if (phrases.isEmpty() || properties.getStorage() != WebProperties.Storage.DATABASE) {
+            return null;
+        }
+
+        // 短语中所有的词 -> termId，词不存在时交集为空，不会走到检查这一步
+        Map<String, Integer> wordToTermId = new HashMap<>();
+        for (SearchQuery.Phrase phrase : phrases) {
+            for (String word : phrase.getWords()) {
+                wordToTermId.put(word, index.termId(word));
+            }
+        }
+        List<Integer> termIdList = new ArrayList<>(new LinkedHashSet<>(wordToTermId.values()));
+
+        return docIds -> {
+            List<Integer> docIdList = new ArrayList<>(docIds.length);
+            for (int docId : docIds) {
+                docIdList.add(docId);
+            }
+
+            // docId -> termId -> 偏移
+            Map<Integer, Map<Integer, int[]>> offsets = new HashMap<>();
+            for (TermOffsets termOffsets : mapper.queryTermOffsets(docIdList, termIdList)) {
+                offsets.computeIfAbsent(termOffsets.getDocId(), docId -> new HashMap<>())
+                        .put(termOffsets.getTermId(), parse(termOffsets.getOffsets()));
+            }
+
+            // 正文中确定没有某个短语的文档，再看看标题中有没有
+            boolean[] accepted = new boolean[docIds.length];
+            List<Integer> titleCheck = new ArrayList<>();
+            for (int i = 0; i < docIds.length; i++) {
+                accepted[i] = matches(phrases, wordToTermId, offsets.get(docIds[i]), null);
+                if (!accepted[i]) {
+                    titleCheck.add(docIds[i]);
+                }
+            }
+            if (titleCheck.isEmpty()) {
+                return accepted;
+            }
+
+            Map<Integer, String> docIdToTitle = new HashMap<>();
+            for (Document document : index.documents().queryByDocIds(titleCheck)) {
+                docIdToTitle.put(document.getDocId(), document.getTitle() == null ? "" : document.getTitle().toLowerCase());
+            }
+            for (int i = 0; i < docIds.length; i++) {
+                String title = docIdToTitle.get(docIds[i]);
+                if (!accepted[i] && title != null) {
+                    accepted[i] = matches(phrases, wordToTermId, offsets.get(docIds[i]), title);
+                }
+            }
+            return accepted;
+        };
+    }
+
+    // 每个短语都可能出现在正文中（title 不为 null 时，或者出现在标题中）
+    private static boolean matches(List<SearchQuery.Phrase> phrases, Map<String, Integer> wordToTermId,
+                                   Map<Integer, int[]> docOffsets, String title) {
+        for (SearchQuery.Phrase phrase : phrases) {
+            boolean inContent = docOffsets != null && mayMatch(phrase, wordToTermId, docOffsets);
+            if (!inContent && (title == null || !title.contains(phrase.getText()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 正文中可能有这个短语：对得上，或者偏移不完整没法确定
+    private static boolean mayMatch(SearchQuery.Phrase phrase, Map<String, Integer> wordToTermId, Map<Integer, int[]> docOffsets) {
+        List<String> words = phrase.getWords();
+        int[][] wordOffsets = new int[words.size()][];
+        for (int i = 0; i < words.size(); i++) {
+            wordOffsets[i] = docOffsets.getOrDefault(wordToTermId.get(words.get(i)), new int[0]);
+            if (wordOffsets[i].length >= TermOffsets.MAX_OFFSETS) {
+                return true;
+            }
+        }
+
+        for (int start : wordOffsets[0]) {
+            boolean match = true;
+            for (int i = 1; i < words.size() && match; i++) {
+                match = Arrays.binarySearch(wordOffsets[i], start + phrase.getPositions().get(i)) >= 0;
+            }
+            if (match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // "12,340,1002" -> 从小到大的偏移
+    private static int[] parse(String offsets) {
+        if (offsets == null || offsets.isEmpty()) {
+            return new int[0];
+        }
+        String[] parts = offsets.split(",");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Integer.parseInt(parts[i]);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,38 @@
+package com.peixinchen.searcher.web;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 记录渲染页面的耗时：postHandle 在 controller 返回之后、渲染模板之前调用，afterCompletion 在渲染完之后调用
+ * controller 出错、或者重定向（没有渲染模板）时不记
+ */
+public class RenderTimingInterceptor implements HandlerInterceptor {
+    private static final String START = RenderTimingInterceptor.class.getName() + ".start";
+
+    private final Timer timer;
+
+    public RenderTimingInterceptor(Timer timer) {
+        this.timer = timer;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) {
+        if (modelAndView != null && modelAndView.getViewName() != null && !modelAndView.getViewName().startsWith("redirect:")) {
+            request.setAttribute(START, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object start = request.getAttribute(START);
+        if (start != null) {
+            timer.record(System.nanoTime() - (Long) start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
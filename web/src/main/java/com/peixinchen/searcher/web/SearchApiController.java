@@ -0,0 +1,54 @@
+package com.peixinchen.searcher.web;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 和 /web 页面同样的检索，返回 JSON
+ * 返回 CompletableFuture：Tomcat 的请求线程提交完任务就回去处理别的请求，检索完成之后再写响应（Servlet 异步请求），
+ * 同时在检索的请求数不再受 Tomcat 线程数的限制
+ */
+@Slf4j
+@RestController
+public class SearchApiController {
+    private final SearchService searchService;
+    private final AsyncSearchService asyncSearchService;
+    private final WebProperties properties;
+
+    @Autowired
+    public SearchApiController(SearchService searchService, AsyncSearchService asyncSearchService, WebProperties properties) {
+        this.searchService = searchService;
+        this.asyncSearchService = asyncSearchService;
+        this.properties = properties;
+    }
+
+    @GetMapping("/api/search")
+    public CompletableFuture<SearchResponse> search(@RequestParam("query") String query,
+                                                    @RequestParam(value = "page", defaultValue = "1") int page,
+                                                    @RequestParam(value = "cursor", required = false) String cursor) {
+        query = query.trim().toLowerCase();
+        SearchQuery searchQuery = query.isEmpty() ? null : searchService.parse(query);
+        if (searchQuery == null || searchQuery.isEmpty()) {
+            return CompletableFuture.completedFuture(new SearchResponse(1, Collections.emptyList(), null, false, 0));
+        }
+        page = Integer.min(Integer.max(page, 1), properties.getMaxPage());
+        return asyncSearchService.search(searchQuery, page, cursor);
+    }
+
+    // 检索线程池的队列满了
+    @ExceptionHandler(RejectedExecutionException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public void rejected(RejectedExecutionException e) {
+        log.warn("检索线程池已满，拒绝请求");
+    }
+}
@@ -0,0 +1,177 @@
+package com.peixinchen.searcher.web;
+
+import com.peixinchen.searcher.web.cache.TinyLfuCache;
+import com.peixinchen.searcher.web.engine.InvertedIndex;
+import com.peixinchen.searcher.web.engine.InvertedIndexEngine;
+import com.peixinchen.searcher.web.engine.PostingList;
+import com.peixinchen.searcher.web.engine.SegmentSet;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 查询用到的缓存，都是 TinyLfuCache（少数热门查询占了大部分流量，长尾查询不会把它们挤出去）：
+ *   解析缓存：查询字符串 -> 解析、分词之后的 SearchQuery，和索引无关，不需要清空
+ *   结果缓存：(SearchQuery, 页码, 是否用游标取, 游标位置) -> 这一页生成好摘要的文档和下一页的游标，命中时不用再排序、取文档、生成摘要
+ *     按页码取的和用游标取的分开放：游标是客户端传上来的，伪造的游标最多只能占一个自己的位置，不会把某个页码的结果换掉
+ *   倒排列表缓存：词 -> PostingList，不同的查询包含同一个词时共用；索引段有多个时，省去在每个段的词条表中查找
+ *
+ * 结果缓存和倒排列表缓存的内容只对某一个索引（InvertedIndex 对象）有效：引擎切换到新的索引之前（见 InvertedIndexEngine.SwitchListener）
+ * 缓存就改为属于新的索引，接着由 Warmup 用热门查询把新索引的缓存填上，然后才真正切换；
+ * 倒排列表缓存总是清空，结果缓存只在后台合并了段、可见的文档没有变化时保留（见 SegmentSet.sameDocuments）
+ * 还拿着旧索引的请求（切换之前开始的，或者预热期间的）既不读也不写缓存
+ */
+@Slf4j
+@Component
+public class SearchCache {
+    private static final int EXPECTED_QUERIES = 10000;
+    private static final int EXPECTED_RESULTS = 10000;
+    private static final int EXPECTED_POSTING_LISTS = 10000;
+
+    @Data
+    private static class ResultKey {
+        private final SearchQuery query;
+        private final int page;
+        private final boolean cursor;
+        private final int afterScore;
+        private final int afterDocId;
+
+        ResultKey(SearchQuery query, int page, PageCursor after) {
+            this.query = query;
+            this.page = page;
+            this.cursor = after != null;
+            this.afterScore = after == null ? Integer.MAX_VALUE : after.getAfterScore();
+            this.afterDocId = after == null ? -1 : after.getAfterDocId();
+        }
+    }
+
+    private final InvertedIndexEngine engine;
+    private final TinyLfuCache<String, SearchQuery> queries;
+    private final TinyLfuCache<ResultKey, SearchPage> results;
+    private final TinyLfuCache<String, PostingList> postingLists;
+    private volatile InvertedIndex owner;     // 缓存中的内容来自哪个索引
+
+    @Autowired
+    public SearchCache(InvertedIndexEngine engine, WebProperties properties) {
+        this.engine = engine;
+        this.queries = new TinyLfuCache<>(properties.getQueryParseCacheBytes(), EXPECTED_QUERIES, SearchCache::weigh);
+        this.results = new TinyLfuCache<>(properties.getResultCacheBytes(), EXPECTED_RESULTS, SearchCache::weigh);
+        this.postingLists = new TinyLfuCache<>(properties.getPostingCacheBytes(), EXPECTED_POSTING_LISTS,
+                (word, postingList) -> 2L * word.length() + postingList.sizeInBytes() + 64);
+        this.owner = engine.current();
+    }
+
+    // SearchService、Warmup 都依赖这个 bean，这里注册的监听一定排在 Warmup 的前面
+    @PostConstruct
+    public void listen() {
+        engine.addSwitchListener(this::switchTo);
+    }
+
+    // 解析结果，没有命中返回 null
+    public SearchQuery getQuery(String query) {
+        return queries.get(query);
+    }
+
+    public void putQuery(String query, SearchQuery searchQuery) {
+        queries.put(query, searchQuery);
+    }
+
+    /**
+     * @param after 用游标取时是解析出来的游标，按页码取时为 null
+     * @return 缓存的这一页，没有命中返回 null
+     */
+    public SearchPage getResult(InvertedIndex index, SearchQuery query, int page, PageCursor after) {
+        if (!owns(index)) {
+            return null;
+        }
+        return results.get(new ResultKey(query, page, after));
+    }
+
+    public void putResult(InvertedIndex index, SearchQuery query, int page, PageCursor after, SearchPage searchPage) {
+        if (owns(index)) {
+            results.put(new ResultKey(query, page, after), searchPage);
+        }
+    }
+
+    /**
+     * 取词的倒排列表，没有缓存时从 index 中取，再放进缓存；词不存在返回 null（不缓存）
+     */
+    public PostingList getPostingList(InvertedIndex index, String word) {
+        if (!owns(index)) {
+            return index.get(word);
+        }
+        PostingList postingList = postingLists.get(word);
+        if (postingList == null) {
+            postingList = index.get(word);
+            if (postingList != null) {
+                postingLists.put(word, postingList);
+            }
+        }
+        return postingList;
+    }
+
+    public Map<String, TinyLfuCache.Stats> stats() {
+        Map<String, TinyLfuCache.Stats> stats = new LinkedHashMap<>();
+        stats.put("queries", queries.stats());
+        stats.put("results", results.stats());
+        stats.put("postingLists", postingLists.stats());
+        return stats;
+    }
+
+    // index 是不是缓存内容所属的索引
+    private boolean owns(InvertedIndex index) {
+        return index == owner;
+    }
+
+    private synchronized void switchTo(InvertedIndex current, InvertedIndex next) {
+        postingLists.invalidateAll();
+        boolean keepResults = current instanceof SegmentSet && next instanceof SegmentSet
+                && ((SegmentSet) next).sameDocuments((SegmentSet) current);
+        if (!keepResults) {
+            results.invalidateAll();
+        }
+        owner = next;
+        log.debug("索引将切换到第 {} 代，{}查询结果缓存", next.generation(), keepResults ? "保留" : "清空");
+    }
+
+    private static long weigh(String query, SearchQuery searchQuery) {
+        return 2L * query.length() + weigh(searchQuery);
+    }
+
+    private static long weigh(SearchQuery query) {
+        long chars = 0;
+        int words = 0;
+        for (List<String> wordList : Arrays.asList(query.getShould(), query.getMust(), query.getMustNot())) {
+            for (String word : wordList) {
+                chars += word.length();
+            }
+            words += wordList.size();
+        }
+        for (SearchQuery.Phrase phrase : query.getPhrases()) {
+            chars += 2L * phrase.getText().length();
+            words += 2 * phrase.getWords().size();
+        }
+        return 2 * chars + 16L * (words + 8);
+    }
+
+    private static long weigh(ResultKey key, SearchPage searchPage) {
+        List<Document> documentList = searchPage.getDocumentList();
+        long chars = searchPage.getNextCursor() == null ? 0 : searchPage.getNextCursor().length();
+        for (Document document : documentList) {
+            chars += length(document.getTitle()) + length(document.getUrl())
+                    + length(document.getSnippetSource()) + length(document.getDesc());
+        }
+        return 2 * chars + 64L * (documentList.size() + 1) + weigh(key.getQuery());
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+}
@@ -0,0 +1,78 @@
+package com.peixinchen.searcher.web;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步检索用的线程池，没有做成 ExecutorService 类型的 bean：
+ * 容器中有 Executor / ScheduledExecutorService 类型的 bean 时，Spring Boot 默认的任务线程池和 @Scheduled 的调度线程会被替换掉
+ *   executor：取倒排列表、排序、取文档、生成摘要，队列满了直接拒绝（请求失败），不让排队的请求无限堆积
+ *   timer：只用来在截止时间到了的时候让等待的 future 超时，不执行任何检索的代码
+ * executor 的排队任务数、活跃线程数等注册为 executor.* 指标（tag name = search）
+ */
+@Component
+public class SearchExecutors {
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService timer;
+
+    @Autowired
+    public SearchExecutors(WebProperties properties, MeterRegistry registry) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                properties.getSearchThreads(), properties.getSearchThreads(), 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1000),
+                (Runnable task) -> {
+                    Thread thread = new Thread(task);
+                    thread.setName("检索线程-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        new ExecutorServiceMetrics(executor, "search", Tags.empty()).bindTo(registry);
+        this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task);
+            thread.setName("检索截止时间");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public ThreadPoolExecutor executor() {
+        return executor;
+    }
+
+    /**
+     * 到了 deadline（System.nanoTime()）还没完成时，返回的 future 以 TimeoutException 结束；future 本身不受影响，照样在后台执行完
+     */
+    public <T> CompletableFuture<T> within(CompletableFuture<T> future, long deadline) {
+        if (future.isDone()) {
+            return future;
+        }
+        CompletableFuture<T> timeout = new CompletableFuture<>();
+        ScheduledFuture<?> timeoutTask = timer.schedule(() -> timeout.completeExceptionally(new TimeoutException()),
+                Long.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        future.whenComplete((value, e) -> timeoutTask.cancel(false));
+        return future.applyToEither(timeout, value -> value);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        executor.shutdown();
+    }
+}
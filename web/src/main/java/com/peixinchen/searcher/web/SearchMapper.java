@@ -1,7 +1,11 @@
 package com.peixinchen.searcher.web;
 
+import com.peixinchen.searcher.web.engine.DocumentLengthRow;
+import com.peixinchen.searcher.web.engine.PostingRow;
+import com.peixinchen.searcher.web.engine.TermRow;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -9,14 +13,21 @@ import java.util.List;
 @Repository
 @Mapper
 public interface SearchMapper {
-    List<Document> query(
-            @Param("word") String word,
-            @Param("limit") int limit,
-            @Param("offset") int offset);
-
-    List<DocumentWightWeight> queryWithWeight(
-            @Param("word") String word,
-            @Param("limit") int limit,
-            @Param("offset") int offset
-    );
+    // 当前 active 的那一代索引，还没有发布过任何一代时返回 null
+    Integer selectActiveGeneration();
+
+    // 流式读出整张 terms 表（termid, word），用于构建内存词典
+    void scanTerms(ResultHandler<TermRow> handler);
+
+    // 流式读出 generation 这一代可见的倒排记录（只有 termid, docid, title_tf, content_tf），每一行回调一次 handler，用于构建内存索引
+    void scanInvertedIndexes(@Param("generation") int generation, ResultHandler<PostingRow> handler);
+
+    // 流式读出 generation 这一代可见的文档的长度（docid, title_length, content_length），用于 BM25F 打分
+    void scanDocumentLengths(@Param("generation") int generation, ResultHandler<DocumentLengthRow> handler);
+
+    // 根据 docId 列表批量取文档（只取 title、url、snippet_source，不取 content），用于最终页面的渲染
+    List<Document> queryByDocIds(@Param("list") List<Integer> docIdList);
+
+    // 取这一页文档中，所有查询词在正文中的偏移
+    List<TermOffsets> queryTermOffsets(@Param("docIdList") List<Integer> docIdList, @Param("termIdList") List<Integer> termIdList);
 }
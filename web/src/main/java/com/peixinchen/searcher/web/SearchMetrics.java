@@ -0,0 +1,77 @@
+package com.peixinchen.searcher.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * 一次查询各个阶段的耗时，每个阶段一个 Timer（search.stage，tag stage = 阶段名）：
+ *   parse：解析、分词   fetch：取一个词的倒排列表（每个词记一次）   rank：Top-K 排序
+ *   documents：取这一页的文档   snippet：生成摘要   render：渲染 /web 的页面（见 RenderTimingInterceptor）
+ * 超过截止时间、返回部分结果的 /api/search 请求数记在 search.partial
+ * 除了次数、总耗时、最大值，还在客户端算好 p50 / p95 / p99（最近几分钟滑动窗口内的）
+ * 通过 /actuator/metrics/search.stage?tag=stage:rank 和 /actuator/metrics/search.stage.percentile?tag=stage:rank 查看
+ */
+@Component
+public class SearchMetrics {
+    private final Timer parse;
+    private final Timer fetch;
+    private final Timer rank;
+    private final Timer documents;
+    private final Timer snippet;
+    private final Timer render;
+    private final Counter partial;
+
+    @Autowired
+    public SearchMetrics(MeterRegistry registry) {
+        this.parse = stage(registry, "parse");
+        this.fetch = stage(registry, "fetch");
+        this.rank = stage(registry, "rank");
+        this.documents = stage(registry, "documents");
+        this.snippet = stage(registry, "snippet");
+        this.render = stage(registry, "render");
+        this.partial = Counter.builder("search.partial")
+                .description("超过截止时间、返回部分结果的请求数")
+                .register(registry);
+    }
+
+    private static Timer stage(MeterRegistry registry, String stage) {
+        return Timer.builder("search.stage")
+                .description("一次查询中各个阶段的耗时")
+                .tag("stage", stage)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry);
+    }
+
+    public <T> T parse(Supplier<T> supplier) {
+        return parse.record(supplier);
+    }
+
+    public <T> T fetch(Supplier<T> supplier) {
+        return fetch.record(supplier);
+    }
+
+    public <T> T rank(Supplier<T> supplier) {
+        return rank.record(supplier);
+    }
+
+    public <T> T documents(Supplier<T> supplier) {
+        return documents.record(supplier);
+    }
+
+    public void snippet(Runnable runnable) {
+        snippet.record(runnable);
+    }
+
+    public void partial() {
+        partial.increment();
+    }
+
+    public Timer render() {
+        return render;
+    }
+}
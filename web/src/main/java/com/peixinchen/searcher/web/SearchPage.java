@@ -0,0 +1,15 @@
+package com.peixinchen.searcher.web;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 一页查询结果：文档（已经生成好摘要），以及取下一页用的游标（没有下一页时为 null）
+ */
+@Data
+public class SearchPage {
+    private final int page;
+    private final List<Document> documentList;
+    private final String nextCursor;
+}
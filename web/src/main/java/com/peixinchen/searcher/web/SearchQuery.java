@@ -0,0 +1,147 @@
+package com.peixinchen.searcher.web;
+
+import lombok.Data;
+import org.ansj.domain.Term;
+import org.ansj.splitWord.analysis.ToAnalysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 解析之后的查询（不可变，可以作为缓存的 key）
+ * 查询按空白切成若干个子句，每个子句再分词：
+ *   词             普通的词，任意一个命中即可（OR）
+ *   +词            必须包含（AND），子句分出多个词时每个词都必须包含
+ *   -词            不能包含，子句分出多个词时包含其中任何一个都不行
+ *   "一个短语"      必须包含短语中所有的词，并且它们在正文中按短语中的间隔依次出现
+ * 有必须包含的词（+词、短语）时，普通的词不再用来筛选文档，只给命中的文档加分
+ */
+@Data
+public class SearchQuery {
+    private final List<String> should;
+    private final List<String> must;        // +词，以及短语中所有的词
+    private final List<String> mustNot;
+    private final List<Phrase> phrases;
+
+    @Data
+    public static class Phrase {
+        private final String text;
+        private final List<String> words;
+        private final List<Integer> positions;  // 每个词相对第一个词的偏移（码点，和 inverted_indexes.offsets 一样）
+    }
+
+    /**
+     * query 需要已经 trim、转成小写
+     */
+    public static SearchQuery parse(String query) {
+        Set<String> should = new LinkedHashSet<>();
+        Set<String> must = new LinkedHashSet<>();
+        Set<String> mustNot = new LinkedHashSet<>();
+        List<Phrase> phrases = new ArrayList<>();
+
+        int i = 0;
+        int n = query.length();
+        while (i < n) {
+            if (Character.isWhitespace(query.charAt(i))) {
+                i++;
+                continue;
+            }
+
+            // + / - 后面紧跟着内容时才是运算符，单独的 "-" 当作普通的词
+            char operator = 0;
+            char c = query.charAt(i);
+            if ((c == '+' || c == '-') && i + 1 < n && !Character.isWhitespace(query.charAt(i + 1))) {
+                operator = c;
+                i++;
+            }
+
+            String text;
+            boolean quoted = query.charAt(i) == '"';
+            if (quoted) {
+                int end = query.indexOf('"', i + 1);
+                if (end < 0) {
+                    end = n;    // 引号没有闭合，到结尾为止
+                }
+                text = query.substring(i + 1, end);
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < n && !Character.isWhitespace(query.charAt(end))) {
+                    end++;
+                }
+                text = query.substring(i, end);
+                i = end;
+            }
+
+            List<String> words = new ArrayList<>();
+            List<Integer> positions = new ArrayList<>();
+            for (Term term : ToAnalysis.parse(text).getTerms()) {
+                // 空白符号也会被分成词，它们不能用来检索
+                if (!term.getName().trim().isEmpty()) {
+                    words.add(term.getName());
+                    positions.add(text.codePointCount(0, term.getOffe()));
+                }
+            }
+            if (words.isEmpty()) {
+                continue;
+            }
+
+            if (operator == '-') {
+                mustNot.addAll(words);
+            } else if (quoted && words.size() > 1) {
+                int first = positions.get(0);
+                positions.replaceAll(position -> position - first);
+                phrases.add(new Phrase(text, Collections.unmodifiableList(words), Collections.unmodifiableList(positions)));
+                must.addAll(words);
+            } else if (operator == '+' || quoted) {
+                must.addAll(words);
+            } else {
+                should.addAll(words);
+            }
+        }
+
+        should.removeAll(must);
+        should.removeAll(mustNot);      // "+a -a" 这种自相矛盾的查询检索时自然一篇都不会命中
+        return new SearchQuery(freeze(should), freeze(must), freeze(mustNot), Collections.unmodifiableList(phrases));
+    }
+
+    private static List<String> freeze(Set<String> words) {
+        return Collections.unmodifiableList(new ArrayList<>(words));
+    }
+
+    /**
+     * 去掉 words 中的词之后的查询（包含其中某个词的短语整个去掉，短语中其它的词仍然必须包含）
+     * 异步检索时有的词的倒排列表没能在截止时间之前取到，就用剩下的词检索
+     */
+    public SearchQuery without(Set<String> words) {
+        List<String> should = new ArrayList<>(this.should);
+        List<String> must = new ArrayList<>(this.must);
+        List<String> mustNot = new ArrayList<>(this.mustNot);
+        should.removeAll(words);
+        must.removeAll(words);
+        mustNot.removeAll(words);
+        List<Phrase> phrases = new ArrayList<>();
+        for (Phrase phrase : this.phrases) {
+            if (phrase.getWords().stream().noneMatch(words::contains)) {
+                phrases.add(phrase);
+            }
+        }
+        return new SearchQuery(Collections.unmodifiableList(should), Collections.unmodifiableList(must),
+                Collections.unmodifiableList(mustNot), Collections.unmodifiableList(phrases));
+    }
+
+    // 没有任何可以用来检索的词（只有 -词 的查询也算）
+    public boolean isEmpty() {
+        return should.isEmpty() && must.isEmpty();
+    }
+
+    // 命中时要标亮的词
+    public List<String> words() {
+        List<String> words = new ArrayList<>(must);
+        words.addAll(should);
+        return words;
+    }
+}
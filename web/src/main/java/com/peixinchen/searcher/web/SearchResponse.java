@@ -0,0 +1,19 @@
+package com.peixinchen.searcher.web;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * /api/search 返回的 JSON
+ * partial = true 表示到了截止时间还没有全部完成，返回的是已经得到的部分结果：
+ *   有的词的倒排列表没有取到（没有参与排序），这时没有 nextCursor；或者摘要没有生成完，用摘要源的开头代替
+ */
+@Data
+public class SearchResponse {
+    private final int page;
+    private final List<Document> documentList;
+    private final String nextCursor;
+    private final boolean partial;
+    private final long tookMillis;
+}
@@ -0,0 +1,209 @@
+package com.peixinchen.searcher.web;
+
+import com.peixinchen.searcher.web.engine.BooleanSearcher;
+import com.peixinchen.searcher.web.engine.CandidateVerifier;
+import com.peixinchen.searcher.web.engine.InvertedIndex;
+import com.peixinchen.searcher.web.engine.InvertedIndexEngine;
+import com.peixinchen.searcher.web.engine.MaxScoreSearcher;
+import com.peixinchen.searcher.web.engine.PostingList;
+import com.peixinchen.searcher.web.engine.ScoredDocs;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 一次查询的核心流程：解析、分词 -> 取倒排列表 -> Top-K 排序（OR 用 MaxScoreSearcher，有必须包含的词时用 BooleanSearcher 求交集）
+ *   -> 取这一页的文档 -> 生成摘要
+ * 从 SearchController 中拆出来，启动预热（Warmup）走的也是同一条路径
+ */
+@Slf4j
+@Service
+public class SearchService {
+    public static final int PAGE_SIZE = 20;
+
+    private final SnippetService snippetService;
+    private final InvertedIndexEngine engine;
+    private final SearchCache searchCache;
+    private final PhraseVerifier phraseVerifier;
+    private final SearchMetrics metrics;
+    private final WebProperties properties;
+
+    @Autowired
+    public SearchService(SnippetService snippetService, InvertedIndexEngine engine, SearchCache searchCache,
+                         PhraseVerifier phraseVerifier, SearchMetrics metrics, WebProperties properties) {
+        this.snippetService = snippetService;
+        this.engine = engine;
+        this.searchCache = searchCache;
+        this.phraseVerifier = phraseVerifier;
+        this.metrics = metrics;
+        this.properties = properties;
+    }
+
+    /**
+     * 解析查询（见 SearchQuery），query 需要已经 trim、转成小写；同一个查询只解析一次，结果缓存起来
+     */
+    public SearchQuery parse(String query) {
+        return metrics.parse(() -> {
+            SearchQuery searchQuery = searchCache.getQuery(query);
+            if (searchQuery == null) {
+                searchQuery = SearchQuery.parse(query);
+                searchCache.putQuery(query, searchQuery);
+            }
+            return searchQuery;
+        });
+    }
+
+    /**
+     * 第 page 页（从 1 开始）的文档，已经生成好摘要；热门查询直接用缓存的结果
+     * 需要先排出前 page * 20 篇，页数越大越慢，顺序翻页时用 searchAfter
+     */
+    public SearchPage search(SearchQuery query, int page) {
+        return search(engine.current(), query, page);
+    }
+
+    // 在指定的索引上查，同样读写缓存；切换索引之前预热新索引时用（见 Warmup）
+    SearchPage search(InvertedIndex index, SearchQuery query, int page) {
+        SearchPage searchPage = searchCache.getResult(index, query, page, null);
+        if (searchPage == null) {
+            searchPage = search(index, query, page, null);
+            searchCache.putResult(index, query, page, null, searchPage);
+        } else {
+            log.debug("命中查询结果缓存");
+        }
+        return searchPage;
+    }
+
+    /**
+     * 用上一页返回的游标取下一页，只需要一个一页大小的 Top-K 堆；游标无效时返回第 1 页
+     */
+    public SearchPage searchAfter(SearchQuery query, String cursor) {
+        PageCursor pageCursor = PageCursor.decode(cursor, query, properties.getMaxPage());
+        if (pageCursor == null) {
+            log.debug("游标无效，从第 1 页开始");
+            return search(query, 1);
+        }
+
+        // 结果只由游标中的位置决定，按这个位置缓存，不和按页码取的结果共用（游标可能是伪造的）
+        InvertedIndex index = engine.current();
+        SearchPage searchPage = searchCache.getResult(index, query, pageCursor.getPage(), pageCursor);
+        if (searchPage == null) {
+            searchPage = search(index, query, pageCursor.getPage(), pageCursor);
+            searchCache.putResult(index, query, pageCursor.getPage(), pageCursor, searchPage);
+        }
+        return searchPage;
+    }
+
+    // 不读也不写缓存，预热时用来反复执行排序的代码
+    SearchPage searchUncached(SearchQuery query, int page) {
+        return search(engine.current(), query, page, null);
+    }
+
+    private SearchPage search(InvertedIndex index, SearchQuery query, int page, PageCursor after) {
+        Ranking ranking = rank(index, query, word -> metrics.fetch(() -> searchCache.getPostingList(index, word)), page, after);
+        List<Document> documentList = metrics.documents(() -> fetchDocuments(index.documents(), ranking.getDocIdList()));
+
+        // 根据保存的词偏移生成摘要
+        metrics.snippet(() -> snippetService.build(index, query.words(), documentList));
+        return new SearchPage(page, documentList, ranking.getNextCursor());
+    }
+
+    /**
+     * 排序之后这一页的 docId（按顺序），以及取下一页用的游标（没有下一页时为 null）
+     */
+    @Data
+    static class Ranking {
+        private final List<Integer> docIdList;
+        private final String nextCursor;
+    }
+
+    /**
+     * 取倒排列表 -> Top-K 排序 -> 区间
+     * 排序在内存索引上完成，只有最终这一页的文档才去取（数据库，或者索引段文件）
+     * @param postings 词 -> 倒排列表，取不到（词不存在，或者异步取的时候超时了）时返回 null，当作这个词不存在
+     */
+    Ranking rank(InvertedIndex index, SearchQuery query, Function<String, PostingList> postings, int page, PageCursor after) {
+        List<PostingList> should = postingLists(query.getShould(), postings);
+        List<PostingList> must = postingLists(query.getMust(), postings);
+        List<PostingList> mustNot = postingLists(query.getMustNot(), postings);
+
+        // 第 page 页需要排名前 page * 20 的文档；从游标接着取时只需要一页
+        // 按 long 计算，page 很大时不会溢出成负数
+        int topK = after == null ? (int) Long.min((long) page * PAGE_SIZE, Integer.MAX_VALUE) : PAGE_SIZE;
+        int afterScore = after == null ? Integer.MAX_VALUE : after.getAfterScore();
+        int afterDocId = after == null ? -1 : after.getAfterDocId();
+        if (after != null) {
+            log.debug("从 ({}, {}) 之后取第 {} 页", afterScore, afterDocId, page);
+        } else {
+            log.debug("topK = {}, page = {}", topK, page);
+        }
+
+        // 每篇文档的得分是各个词的 weight 之和，只保留前 topK 篇，不需要把所有命中的文档都排一遍
+        ScoredDocs scoredDocs = metrics.rank(() -> {
+            if (query.getMust().isEmpty()) {
+                return MaxScoreSearcher.searchAfter(should, mustNot, topK, afterScore, afterDocId);
+            } else if (must.size() < query.getMust().size()) {
+                return ScoredDocs.EMPTY;      // 有必须包含的词在索引中不存在
+            } else {
+                // 有必须包含的词时，只在它们的交集上打分，候选文档少得多
+                CandidateVerifier verifier = phraseVerifier.verifier(index, query.getPhrases());
+                return BooleanSearcher.searchAfter(must, should, mustNot, topK, afterScore, afterDocId, verifier);
+            }
+        });
+        int from = after == null ? (int) Long.min((long) (page - 1) * PAGE_SIZE, scoredDocs.size()) : 0;
+        int to = scoredDocs.size();
+        // 从结果中把分页区间取出来
+        List<Integer> pageDocIdList = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            pageDocIdList.add(scoredDocs.docId(i));
+        }
+
+        // 这一页是满的，可能还有下一页：记下最后一篇的位置
+        String nextCursor = null;
+        if (to - from == PAGE_SIZE) {
+            nextCursor = new PageCursor(index.generation(), query.hashCode(), page + 1,
+                    scoredDocs.score(to - 1), scoredDocs.docId(to - 1)).encode();
+        }
+
+        return new Ranking(pageDocIdList, nextCursor);
+    }
+
+    // 词不存在时跳过
+    private static List<PostingList> postingLists(List<String> words, Function<String, PostingList> postings) {
+        List<PostingList> postingLists = new ArrayList<>();
+        for (String word : words) {
+            PostingList postingList = postings.apply(word);
+            if (postingList != null) {
+                postingLists.add(postingList);
+            }
+        }
+        return postingLists;
+    }
+
+    // 批量取出这一页的文档，并保持 docIdList 中的排序
+    static List<Document> fetchDocuments(DocumentStore documents, List<Integer> docIdList) {
+        if (docIdList.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Integer, Document> docIdToDocument = new HashMap<>();
+        for (Document document : documents.queryByDocIds(docIdList)) {
+            docIdToDocument.put(document.getDocId(), document);
+        }
+
+        List<Document> documentList = new ArrayList<>();
+        for (Integer docId : docIdList) {
+            Document document = docIdToDocument.get(docId);
+            if (document != null) {
+                documentList.add(document);
+            }
+        }
+        return documentList;
+    }
+}
@@ -0,0 +1,159 @@
+package com.peixinchen.searcher.web;
+
+import com.peixinchen.searcher.web.engine.InvertedIndex;
+import com.peixinchen.searcher.web.engine.TermDictionary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 根据构建索引时保存的词偏移（inverted_indexes.offsets，单位是码点）生成摘要
+ * 1. 一次查询取出这一页所有文档中所有查询词的偏移
+ * 2. 对每篇文档选一个包含查询词最多的窗口
+ * 3. 从文档的 snippetSource（正文开头 SNIPPET_SOURCE_LENGTH 个码点，和文档一起取出来的）中截出窗口，然后把窗口中所有查询词标亮
+ * 不读 content：LONGTEXT 存在行外，哪怕只 substring 一小段 InnoDB 也要把整个值读出来；超出 snippetSource 的命中不用
+ * 整个过程只和窗口大小有关，和文档长度无关；任何一步出问题都退回到 DescBuilder，不会让请求失败
+ */
+@Slf4j
+@Service
+public class SnippetService {
+    // 摘要窗口的长度（码点），和 DescBuilder 一样前后各 120 个字
+    private static final int WINDOW = 240;
+    private static final int BEFORE = 120;
+
+    private final SearchMapper mapper;
+    private final DescBuilder descBuilder;
+    private final WebProperties properties;
+
+    @Autowired
+    public SnippetService(SearchMapper mapper, DescBuilder descBuilder, WebProperties properties) {
+        this.mapper = mapper;
+        this.descBuilder = descBuilder;
+        this.properties = properties;
+    }
+
+    /**
+     * @param index 这些文档来自的索引，用它的词典把查询词换成 termId（切换索引前预热时还不是 engine.current()）
+     */
+    public void build(InvertedIndex index, List<String> queryList, List<Document> documentList) {
+        if (documentList.isEmpty()) {
+            return;
+        }
+
+        // 空白符号也会被分成词，它们不能用来定位摘要
+        List<String> wordList = queryList.stream()
+                .filter(word -> !word.trim().isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+
+        Map<Integer, String> docIdToWindow = new HashMap<>();
+        try {
+            // 索引段文件中没有词偏移和正文，只能用摘要源生成
+            if (!wordList.isEmpty() && properties.getStorage() == WebProperties.Storage.DATABASE) {
+                docIdToWindow = fetchWindows(index, wordList, documentList);
+            }
+        } catch (RuntimeException e) {
+            log.warn("根据词偏移生成摘要失败，退回到摘要源: {}", e.toString());
+        }
+
+        for (Document doc : documentList) {
+            String window = docIdToWindow.get(doc.getDocId());
+            if (window == null) {
+                // 没有偏移信息（比如词只出现在标题中、或者只出现在摘要源之后），用摘要源生成
+                descBuilder.build(queryList, doc);
+                continue;
+            }
+            doc.setDesc(DescBuilder.highlight(window, wordList));
+        }
+    }
+
+    // docId -> 窗口中的文字
+    private Map<Integer, String> fetchWindows(InvertedIndex index, List<String> wordList, List<Document> documentList) {
+        List<Integer> docIdList = documentList.stream()
+                .map(Document::getDocId)
+                .collect(Collectors.toList());
+
+        // 通过内存词典把查询词换成 termId，termId -> 词在 wordList 中的下标
+        Map<Integer, Integer> termIdToWordIndex = new HashMap<>();
+        for (int i = 0; i < wordList.size(); i++) {
+            int termId = index.termId(wordList.get(i));
+            if (termId != TermDictionary.NOT_FOUND) {
+                termIdToWordIndex.put(termId, i);
+            }
+        }
+
+        Map<Integer, String> docIdToWindow = new HashMap<>();
+        if (termIdToWordIndex.isEmpty()) {
+            return docIdToWindow;
+        }
+
+        // docId -> 所有查询词的命中：{ 偏移, 词长, 词在 wordList 中的下标 }
+        Map<Integer, List<int[]>> docIdToHits = new HashMap<>();
+        List<Integer> termIdList = new ArrayList<>(termIdToWordIndex.keySet());
+        for (TermOffsets termOffsets : mapper.queryTermOffsets(docIdList, termIdList)) {
+            String offsets = termOffsets.getOffsets();
+            if (offsets == null || offsets.isEmpty()) {
+                continue;
+            }
+            int wordIndex = termIdToWordIndex.get(termOffsets.getTermId());
+            String word = wordList.get(wordIndex);
+            int length = word.codePointCount(0, word.length());
+            List<int[]> hits = docIdToHits.computeIfAbsent(termOffsets.getDocId(), docId -> new ArrayList<>());
+            for (String offset : offsets.split(",")) {
+                hits.add(new int[] { Integer.parseInt(offset), length, wordIndex });
+            }
+        }
+
+        for (Document document : documentList) {
+            List<int[]> hits = docIdToHits.get(document.getDocId());
+            String source = document.getSnippetSource();
+            if (hits == null || source == null) {
+                continue;
+            }
+            // 偏移和长度都是码点，换算成 String 的下标之前先去掉落在摘要源之外的命中
+            int sourceLength = source.codePointCount(0, source.length());
+            hits.removeIf(hit -> hit[0] + hit[1] > sourceLength);
+            if (hits.isEmpty()) {
+                continue;
+            }
+            int start = chooseWindowStart(hits, wordList.size());
+            int end = Integer.min(start + WINDOW, sourceLength);
+            int from = source.offsetByCodePoints(0, start);
+            docIdToWindow.put(document.getDocId(), source.substring(from, source.offsetByCodePoints(from, end - start)));
+        }
+        return docIdToWindow;
+    }
+
+    /**
+     * 每个命中位置都可以作为窗口的"中心"，选一个能覆盖最多不同查询词的窗口
+     * 命中数最多 查询词个数 * 4，所以这里的平方复杂度可以忽略
+     */
+    private static int chooseWindowStart(List<int[]> hits, int wordCount) {
+        int bestStart = 0;
+        int bestCount = -1;
+        for (int[] center : hits) {
+            int start = Integer.max(0, center[0] - BEFORE);
+            int end = start + WINDOW;
+
+            int count = 0;
+            boolean[] seen = new boolean[wordCount];
+            for (int[] hit : hits) {
+                if (hit[0] >= start && hit[0] + hit[1] <= end && !seen[hit[2]]) {
+                    seen[hit[2]] = true;
+                    count++;
+                }
+            }
+            if (count > bestCount || (count == bestCount && start < bestStart)) {
+                bestCount = count;
+                bestStart = start;
+            }
+        }
+        return bestStart;
+    }
+}
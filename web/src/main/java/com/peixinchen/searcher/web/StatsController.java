@@ -0,0 +1,27 @@
+package com.peixinchen.searcher.web;
+
+import com.peixinchen.searcher.web.cache.TinyLfuCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 运行状态，返回 JSON，给监控或者排查问题时看
+ */
+@RestController
+public class StatsController {
+    private final SearchCache searchCache;
+
+    @Autowired
+    public StatsController(SearchCache searchCache) {
+        this.searchCache = searchCache;
+    }
+
+    // 查询缓存的命中率（hitRatio）、淘汰和准入拒绝次数、当前大小
+    @GetMapping("/stats/cache")
+    public Map<String, TinyLfuCache.Stats> cache() {
+        return searchCache.stats();
+    }
+}
@@ -0,0 +1,14 @@
+package com.peixinchen.searcher.web;
+
+import lombok.Data;
+
+// inverted_indexes 中一个词在一篇文档正文中前几次出现的偏移（码点，不是 Java 的 char 下标），例如 offsets = "12,340,1002"
+@Data
+public class TermOffsets {
+    // 每个词最多保存前几次出现的偏移，和 indexer 模块的 TermFrequencies.MAX_OFFSETS 一致
+    public static final int MAX_OFFSETS = 4;
+
+    private int docId;
+    private int termId;
+    private String offsets;
+}
@@ -0,0 +1,135 @@
+package com.peixinchen.searcher.web;
+
+import com.peixinchen.searcher.web.engine.InvertedIndex;
+import com.peixinchen.searcher.web.engine.InvertedIndexEngine;
+import lombok.extern.slf4j.Slf4j;
+import org.ansj.library.AmbiguityLibrary;
+import org.ansj.library.DicLibrary;
+import org.ansj.splitWord.analysis.ToAnalysis;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 启动预热，避免第一批真实用户替我们付加载词典、JIT 编译的时间：
+ *   1. 加载 ansj 的词典（第一次分词时才会加载，要好几秒）
+ *   2. 把采样的线上查询（warmup-queries）完整地查一遍，分词缓存、结果缓存、倒排列表缓存里就有了热门查询
+ *   3. 再不经过缓存重放几轮，让分词、排序、取文档、生成摘要的代码被 JIT 编译
+ *
+ * ApplicationRunner 在应用启动完成、标记为可以接收流量（readiness = ACCEPTING_TRAFFIC）之前执行，
+ * 所以预热没做完时 /actuator/health/readiness 返回 503，负载均衡不会把请求转发过来
+ * 预热中的任何错误都只打日志，不影响启动
+ *
+ * 之后每次切换索引（新的一代、合并后的索引段）之前，也在新索引上把热门查询查一遍（第 2 步），缓存是热的才切换过去
+ */
+@Slf4j
+@Component
+public class Warmup implements ApplicationRunner {
+    private final SearchService searchService;
+    private final InvertedIndexEngine engine;
+    private final WebProperties properties;
+    private final ResourceLoader resourceLoader;
+    private volatile List<String> queries = Collections.emptyList();
+
+    @Autowired
+    public Warmup(SearchService searchService, InvertedIndexEngine engine, WebProperties properties, ResourceLoader resourceLoader) {
+        this.searchService = searchService;
+        this.engine = engine;
+        this.properties = properties;
+        this.resourceLoader = resourceLoader;
+    }
+
+    @PostConstruct
+    public void listen() {
+        engine.addSwitchListener((current, next) -> {
+            long b = System.currentTimeMillis();
+            int failed = warm(next);
+            log.info("第 {} 代索引切换前预热完成：{} 个查询（失败 {} 个）{} 毫秒。",
+                    next.generation(), queries.size(), failed, System.currentTimeMillis() - b);
+        });
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long b = System.currentTimeMillis();
+
+        // 1. 词典
+        DicLibrary.get();
+        AmbiguityLibrary.get();
+        ToAnalysis.parse("预热分词");
+        long dictionaryLoaded = System.currentTimeMillis();
+
+        // 2. 热门查询，正常查一遍，结果留在缓存中
+        queries = loadQueries();
+        int failed = warm(engine.current());
+
+        // 3. 绕过缓存重放
+        for (int round = 1; round < properties.getWarmupRounds() && failed < queries.size(); round++) {
+            for (String query : queries) {
+                try {
+                    SearchQuery searchQuery = SearchQuery.parse(query);
+                    if (!searchQuery.isEmpty()) {
+                        searchService.searchUncached(searchQuery, 1);
+                    }
+                } catch (RuntimeException ignored) {
+                    // 第一轮已经记过了
+                }
+            }
+        }
+
+        long e = System.currentTimeMillis();
+        log.info("预热完成：加载词典 {} 毫秒，重放 {} 个查询 {} 轮（失败 {} 个）{} 毫秒。",
+                dictionaryLoaded - b, queries.size(), properties.getWarmupRounds(), failed, e - dictionaryLoaded);
+    }
+
+    // 在 index 上把热门查询查一遍，结果留在缓存中，返回失败的个数
+    private int warm(InvertedIndex index) {
+        int failed = 0;
+        for (String query : queries) {
+            try {
+                SearchQuery searchQuery = searchService.parse(query);
+                if (!searchQuery.isEmpty()) {
+                    searchService.search(index, searchQuery, 1);
+                }
+            } catch (RuntimeException e) {
+                failed++;
+                log.debug("预热查询 {} 失败：{}", query, e.toString());
+            }
+        }
+        return failed;
+    }
+
+    private List<String> loadQueries() {
+        List<String> queries = new ArrayList<>();
+        Resource resource = resourceLoader.getResource(properties.getWarmupQueries());
+        if (!resource.exists()) {
+            log.warn("预热查询文件 {} 不存在，只加载词典", properties.getWarmupQueries());
+            return queries;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // 和 SearchController 一样处理
+                line = line.trim().toLowerCase();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    queries.add(line);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("读取预热查询文件 {} 失败：{}", properties.getWarmupQueries(), e.toString());
+        }
+        return queries;
+    }
+}
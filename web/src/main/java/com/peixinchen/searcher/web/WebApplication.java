@@ -2,8 +2,10 @@ package com.peixinchen.searcher.web;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling   // InvertedIndexEngine 定时检查有没有发布新的一代索引
 public class WebApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,36 @@
+package com.peixinchen.searcher.web;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties("searcher.web")
+@Data
+public class WebProperties {
+    public enum Storage {
+        DATABASE,   // 启动时从数据库加载索引到堆内存，文档信息和摘要查数据库
+        SEGMENT     // 映射索引构建程序写出的索引段文件，完全不访问数据库（摘要只用摘要源生成）
+    }
+
+    // 对应 application.yml 配置下的 searcher.web.storage
+    private Storage storage = Storage.DATABASE;
+    // 对应 application.yml 配置下的 searcher.web.segment-path，索引段文件所在的目录（索引构建程序的 index-root-path）
+    private String segmentPath;
+    // 对应 application.yml 配置下的 searcher.web.query-parse-cache-bytes，解析缓存（查询字符串 -> 解析、分词之后的 SearchQuery）的大小上限
+    private long queryParseCacheBytes = 4L * 1024 * 1024;
+    // 对应 application.yml 配置下的 searcher.web.result-cache-bytes，查询结果缓存（每页文档 + 摘要）的大小上限，按估计的字节数
+    private long resultCacheBytes = 32L * 1024 * 1024;
+    // 对应 application.yml 配置下的 searcher.web.posting-cache-bytes，倒排列表缓存的大小上限
+    private long postingCacheBytes = 128L * 1024 * 1024;
+    // 对应 application.yml 配置下的 searcher.web.warmup-queries，启动预热时重放的查询（每行一个，# 开头是注释），可以从线上日志中采样
+    private String warmupQueries = "classpath:warmup-queries.txt";
+    // 对应 application.yml 配置下的 searcher.web.warmup-rounds，重放几轮，让分词、排序的代码被 JIT 编译
+    private int warmupRounds = 10;
+    // 对应 application.yml 配置下的 searcher.web.search-threads，异步检索（/api/search）用的线程数，默认是 CPU 核数
+    private int searchThreads = Runtime.getRuntime().availableProcessors();
+    // 对应 application.yml 配置下的 searcher.web.search-timeout，异步检索的截止时间（毫秒），超过之后返回已经得到的部分结果
+    private long searchTimeout = 300;
+    // 对应 application.yml 配置下的 searcher.web.max-page，按页码最多能翻到第几页，第 page 页要先排出前 page * 20 篇，页码不能不设上限
+    private int maxPage = 50;
+}
@@ -0,0 +1,82 @@
+package com.peixinchen.searcher.web.cache;
+
+import java.util.Arrays;
+
+/**
+ * 近似统计每个 key 最近被访问的次数（Count-Min Sketch），给 TinyLfuCache 决定新来的 key 值不值得替换掉老的
+ * 4 行计数器，每个 key 在每行对应一个位置，估计值取 4 个计数器中最小的；计数器最大到 15，够区分冷热就行
+ * 累计访问次数到 sampleSize 时所有计数器减半（老化），很久以前热门的 key 慢慢就不热了
+ *
+ * 不是线程安全的，由 TinyLfuCache 加锁
+ */
+class FrequencySketch {
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = { 0x97cb3127, 0xb25a1af5, 0x5e2c4d3b, 0x1d8e4e27 };
+
+    private final byte[][] rows;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param capacity 预计缓存中最多有多少个 key
+     */
+    FrequencySketch(int capacity) {
+        int size = Integer.highestOneBit(Integer.max(capacity, 16) - 1) << 1;
+        // 每行的计数器比 key 多几倍，长尾中大量只出现一次的 key 才不容易撞到热门 key 的计数器上
+        int width = size * 8;
+        rows = new byte[SEEDS.length][width];
+        mask = width - 1;
+        sampleSize = 10 * size;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < rows.length; i++) {
+            int index = index(hash, i);
+            if (rows[i][index] < MAX_COUNT) {
+                rows[i][index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < rows.length; i++) {
+            frequency = Integer.min(frequency, rows[i][index(hash, i)]);
+        }
+        return frequency;
+    }
+
+    void clear() {
+        for (byte[] row : rows) {
+            Arrays.fill(row, (byte) 0);
+        }
+        additions = 0;
+    }
+
+    private void reset() {
+        for (byte[] row : rows) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] >>= 1;
+            }
+        }
+        additions /= 2;
+    }
+
+    private int index(int hash, int row) {
+        int h = (hash + SEEDS[row]) * SEEDS[row];
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
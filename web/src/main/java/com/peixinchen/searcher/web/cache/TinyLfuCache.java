@@ -0,0 +1,260 @@
+package com.peixinchen.searcher.web.cache;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * 按大小限制的缓存，淘汰策略参考 W-TinyLFU：
+ *   窗口区（总大小的 1%）：新来的 key 先放这里，按 LRU 淘汰，让突发的新 key 有机会积累访问次数
+ *   主区（99%）：分为试用区（20%）和保护区（80%），试用区中再被访问一次的进入保护区，保护区满了把最久没访问的降回试用区
+ *   准入：窗口区淘汰出来的 key 想进入主区，而主区满了时，和主区中最该被淘汰的 key 比较最近的访问次数（FrequencySketch），
+ *   次数多的留下，这样偶尔查一次的长尾查询不会把热门查询挤出去
+ * 大小由 weigher 计算（比如估计的字节数），不是条目数
+ *
+ * 所有方法都加同一把锁，临界区只有几次哈希表操作，并发量不大时足够
+ */
+public class TinyLfuCache<K, V> {
+    private enum Region { WINDOW, PROBATION, PROTECTED }
+
+    private static class Node<K, V> {
+        final K key;
+        V value;
+        long weight;
+        Region region;
+
+        Node(K key, V value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final ToLongBiFunction<K, V> weigher;
+    private final FrequencySketch sketch;
+
+    // 三个 LinkedHashMap 都按插入顺序，头部是最久没有访问的；访问一次就删掉重新插入到尾部
+    private final Map<K, Node<K, V>> data = new HashMap<>();
+    private final LinkedHashMap<K, Node<K, V>> window = new LinkedHashMap<>();
+    private final LinkedHashMap<K, Node<K, V>> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<K, Node<K, V>> protectedRegion = new LinkedHashMap<>();
+    private long windowWeight;
+    private long probationWeight;
+    private long protectedWeight;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+
+    /**
+     * @param maximumWeight 所有条目的 weigher 之和的上限
+     * @param expectedEntries 预计最多有多少个条目，用来确定 FrequencySketch 的大小
+     */
+    public TinyLfuCache(long maximumWeight, int expectedEntries, ToLongBiFunction<K, V> weigher) {
+        this.maximumWeight = maximumWeight;
+        this.windowMaximum = Long.max(1, maximumWeight / 100);
+        this.protectedMaximum = (maximumWeight - windowMaximum) * 8 / 10;
+        this.weigher = weigher;
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    public synchronized V get(K key) {
+        sketch.increment(key);
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        touch(node);
+        return node.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        long weight = weigher.applyAsLong(key, value);
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            // 已有的（比如两个请求同时没命中、都算了一遍）：换成新值，大小可能变了
+            if (weight > maximumWeight - windowMaximum) {
+                remove(node);   // 新值放不下，旧值也不留了
+                return;
+            }
+            node.value = value;
+            adjustWeight(node, weight - node.weight);
+            node.weight = weight;
+            touch(node);
+        } else {
+            if (weight > maximumWeight - windowMaximum) {
+                return;     // 比整个主区还大，放不下
+            }
+            node = new Node<>(key, value, weight);
+            node.region = Region.WINDOW;
+            data.put(key, node);
+            window.put(key, node);
+            windowWeight += weight;
+        }
+        evictFromWindow();
+        demoteFromProtected();
+        evictFromMain();
+    }
+
+    // 发布了新的一代索引时清空
+    public synchronized void invalidateAll() {
+        data.clear();
+        window.clear();
+        probation.clear();
+        protectedRegion.clear();
+        windowWeight = probationWeight = protectedWeight = 0;
+        sketch.clear();
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, rejections, data.size(), windowWeight + probationWeight + protectedWeight);
+    }
+
+    private void touch(Node<K, V> node) {
+        switch (node.region) {
+            case WINDOW:
+                window.remove(node.key);
+                window.put(node.key, node);
+                break;
+            case PROBATION:
+                // 试用期又被访问了，进入保护区
+                probation.remove(node.key);
+                probationWeight -= node.weight;
+                node.region = Region.PROTECTED;
+                protectedRegion.put(node.key, node);
+                protectedWeight += node.weight;
+                demoteFromProtected();
+                break;
+            case PROTECTED:
+                protectedRegion.remove(node.key);
+                protectedRegion.put(node.key, node);
+                break;
+        }
+    }
+
+    private void adjustWeight(Node<K, V> node, long delta) {
+        switch (node.region) {
+            case WINDOW:
+                windowWeight += delta;
+                break;
+            case PROBATION:
+                probationWeight += delta;
+                break;
+            case PROTECTED:
+                protectedWeight += delta;
+                break;
+        }
+    }
+
+    // 窗口区超出大小时，把最久没访问的候选者往主区放，主区满了就和主区的淘汰者比访问次数
+    private void evictFromWindow() {
+        while (windowWeight > windowMaximum) {
+            Node<K, V> candidate = removeFirst(window);
+            windowWeight -= candidate.weight;
+
+            boolean admitted = true;
+            while (mainWeight() + candidate.weight > maximumWeight - windowMaximum) {
+                if (probation.isEmpty() && protectedRegion.isEmpty()) {
+                    admitted = false;
+                    break;
+                }
+                Node<K, V> victim = firstOf(probation.isEmpty() ? protectedRegion : probation);
+                if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                    remove(victim);
+                    evictions++;
+                } else {
+                    admitted = false;
+                    break;
+                }
+            }
+
+            if (admitted) {
+                candidate.region = Region.PROBATION;
+                probation.put(candidate.key, candidate);
+                probationWeight += candidate.weight;
+            } else {
+                data.remove(candidate.key);
+                rejections++;
+            }
+        }
+    }
+
+    // 已有的条目换成了更大的值时，主区可能超出大小，从最该被淘汰的开始删
+    private void evictFromMain() {
+        while (mainWeight() > maximumWeight - windowMaximum) {
+            remove(firstOf(probation.isEmpty() ? protectedRegion : probation));
+            evictions++;
+        }
+    }
+
+    private void demoteFromProtected() {
+        while (protectedWeight > protectedMaximum) {
+            Node<K, V> node = removeFirst(protectedRegion);
+            protectedWeight -= node.weight;
+            node.region = Region.PROBATION;
+            probation.put(node.key, node);
+            probationWeight += node.weight;
+        }
+    }
+
+    private long mainWeight() {
+        return probationWeight + protectedWeight;
+    }
+
+    private void remove(Node<K, V> node) {
+        data.remove(node.key);
+        switch (node.region) {
+            case WINDOW:
+                window.remove(node.key);
+                windowWeight -= node.weight;
+                break;
+            case PROBATION:
+                probation.remove(node.key);
+                probationWeight -= node.weight;
+                break;
+            case PROTECTED:
+                protectedRegion.remove(node.key);
+                protectedWeight -= node.weight;
+                break;
+        }
+    }
+
+    private static <K, V> Node<K, V> firstOf(LinkedHashMap<K, Node<K, V>> map) {
+        return map.values().iterator().next();
+    }
+
+    private static <K, V> Node<K, V> removeFirst(LinkedHashMap<K, Node<K, V>> map) {
+        Iterator<Node<K, V>> it = map.values().iterator();
+        Node<K, V> node = it.next();
+        it.remove();
+        return node;
+    }
+
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PACKAGE)
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long rejections;      // 没有通过准入、直接丢掉的
+        private final int size;
+        private final long weight;
+
+        public double getHitRatio() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.peixinchen.searcher.web.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 编码好的一个词的倒排列表（不可变），按照 docId 从小到大排列
+ *
+ * 编码格式：每 BLOCK_SIZE 条记录一块，前面是每块一项的跳表，后面是所有记录
+ *   跳表：[块中最后一个 docId: int][块数据的结束位置（相对数据区开头）: int][块中最大的 weight: int] ...
+ *   数据：[docId 差值: VarInt][weight: VarInt] [docId 差值][weight] ...
+ *   第一个 docId 差值就是 docId 本身，之后每条（包括每块的第一条）都和前一条相减
+ * advance() 先在跳表中找到目标 docId 所在的块（galloping + 二分），直接跳过去，不再逐条解码前面的块
+ *
+ * 数据放在 ByteBuffer 中，可以是堆上的数组，也可以是索引段文件映射的内存（见 Segment），两者格式完全一样
+ */
+class BlockPostingList extends PostingList {
+    static final int BLOCK_SIZE = 128;
+    static final int SKIP_ENTRY_BYTES = 12;
+
+    private final ByteBuffer buf;       // 只用绝对位置读，多个线程共享同一个 buffer 也没有问题
+    private final int base;             // 这个列表在 buf 中的起始位置
+    private final int length;
+    private final int size;
+    private final int maxWeight;
+    private final int blockCount;
+    private final int dataStart;        // 数据区在 buf 中的起始位置
+
+    BlockPostingList(ByteBuffer buf, int base, int length, int size, int maxWeight) {
+        this.buf = buf;
+        this.base = base;
+        this.length = length;
+        this.size = size;
+        this.maxWeight = maxWeight;
+        this.blockCount = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.dataStart = base + blockCount * SKIP_ENTRY_BYTES;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int maxWeight() {
+        return maxWeight;
+    }
+
+    // 压缩后占用的字节数（包括跳表）
+    @Override
+    public int sizeInBytes() {
+        return length;
+    }
+
+    @Override
+    public PostingIterator iterator() {
+        return new BlockIterator();
+    }
+
+    private int lastDocId(int block) {
+        return buf.getInt(base + block * SKIP_ENTRY_BYTES);
+    }
+
+    private int blockEnd(int block) {
+        return buf.getInt(base + block * SKIP_ENTRY_BYTES + 4);
+    }
+
+    private int blockMaxWeight(int block) {
+        return buf.getInt(base + block * SKIP_ENTRY_BYTES + 8);
+    }
+
+    /**
+     * 从 from 开始第一个最后一个 docId >= target 的块，没有时返回 blockCount
+     * 求交集时短列表驱动长列表，长列表每次往往要跳过很多块：先按 1、2、4、8 ... 的步长往后探（galloping），
+     * 越过 target 之后再在最后一段中二分，跳过 n 块只需要 O(log n) 次读跳表
+     */
+    private int findBlock(int from, int target) {
+        int lo = from;      // lo 之前的块都比 target 小
+        int hi = from;      // hi < blockCount 时，hi 这一块已经 >= target
+        int step = 1;
+        while (hi < blockCount && lastDocId(hi) < target) {
+            lo = hi + 1;
+            hi = lo + step;
+            step <<= 1;
+        }
+        hi = Integer.min(hi, blockCount);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (lastDocId(mid) < target) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // 顺序解码的游标
+    private class BlockIterator extends PostingIterator {
+        private int pos = dataStart;
+        private int index = 0;
+        private int docId = -1;
+        private int weight = 0;
+
+        @Override
+        public int nextDoc() {
+            if (index == size) {
+                return docId = NO_MORE_DOCS;
+            }
+
+            docId = (index == 0 ? 0 : docId) + readVarInt();
+            weight = readVarInt();
+            index++;
+            return docId;
+        }
+
+        @Override
+        public int advance(int target) {
+            if (docId >= target) {
+                return docId;
+            }
+            if (size == 0) {
+                return docId = NO_MORE_DOCS;
+            }
+
+            // 当前块中的记录都比 target 小时，通过跳表找到第一个最后一个 docId >= target 的块，跳到它的开头
+            int block = index == 0 ? 0 : (index - 1) / BLOCK_SIZE;
+            if (lastDocId(block) < target) {
+                block = findBlock(block + 1, target);
+                if (block == blockCount) {
+                    index = size;
+                    return docId = NO_MORE_DOCS;
+                }
+                index = block * BLOCK_SIZE;
+                pos = dataStart + blockEnd(block - 1);
+                docId = lastDocId(block - 1);
+            }
+
+            int doc = docId;
+            while (doc < target) {
+                doc = nextDoc();
+            }
+            return doc;
+        }
+
+        @Override
+        public int docId() {
+            return docId;
+        }
+
+        @Override
+        public int weight() {
+            return weight;
+        }
+
+        @Override
+        public int maxWeight() {
+            return maxWeight;
+        }
+
+        // 当前记录所在块中最大的 weight
+        private int blockMaxWeight() {
+            return BlockPostingList.this.blockMaxWeight(index == 0 ? 0 : (index - 1) / BLOCK_SIZE);
+        }
+
+        // 如果 advance(target)，会停在的那一块中最大的 weight；只查跳表，不解码任何记录
+        @Override
+        public int blockMaxWeight(int target) {
+            if (docId >= target) {
+                return docId == NO_MORE_DOCS ? 0 : blockMaxWeight();
+            }
+            int block = index == 0 ? 0 : (index - 1) / BLOCK_SIZE;
+            if (lastDocId(block) < target) {
+                block = findBlock(block + 1, target);
+            }
+            return block == blockCount ? 0 : BlockPostingList.this.blockMaxWeight(block);
+        }
+
+        private int readVarInt() {
+            byte b = buf.get(pos++);
+            int value = b & 0x7F;
+            for (int shift = 7; b < 0; shift += 7) {
+                b = buf.get(pos++);
+                value |= (b & 0x7F) << shift;
+            }
+            return value;
+        }
+    }
+}
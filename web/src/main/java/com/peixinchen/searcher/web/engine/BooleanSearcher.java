@@ -0,0 +1,143 @@
+package com.peixinchen.searcher.web.engine;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 带必须词（AND）的检索：文档必须包含 required 中所有的词，不能包含 excluded 中任何一个词，
+ * optional 中的词只给命中的文档加分，得分 = 命中的各个词的 weight 之和
+ *
+ * 求交集时按倒排列表从短到长排，最短的列表驱动（leapfrog）：
+ *   候选文档 = 最短列表的当前 docId，其它列表依次 advance 到它；谁跳过了它，就让最短列表 advance 到谁停下的位置，重新开始
+ * advance 通过跳表 galloping 跳块，长列表中和短列表无关的块完全不解码，所以开销只和最短的列表有关
+ *
+ * 有短语时交集只是候选，还要用 CandidateVerifier 检查词的位置：先把所有候选排好序，再从前往后一批一批地检查，
+ * 凑够 k 篇就停，排在后面的候选文档不用检查
+ */
+public final class BooleanSearcher {
+    // 一批检查多少篇候选文档
+    private static final int VERIFY_BATCH = 64;
+
+    private BooleanSearcher() {}
+
+    /**
+     * 按 score 从大到小、score 相同时 docId 从小到大的顺序，取排在 (afterScore, afterDocId) 之后的前 k 篇
+     * @param required 不能为空
+     * @param verifier 不需要检查时传 null
+     */
+    public static ScoredDocs searchAfter(List<PostingList> required, List<PostingList> optional, List<PostingList> excluded,
+                                         int k, int afterScore, int afterDocId, CandidateVerifier verifier) {
+        PostingList.PostingIterator[] requiredIts = required.stream()
+                .sorted(Comparator.comparingInt(PostingList::size))
+                .map(PostingList::iterator)
+                .toArray(PostingList.PostingIterator[]::new);
+        PostingList.PostingIterator[] optionalIts = optional.stream()
+                .map(PostingList::iterator)
+                .toArray(PostingList.PostingIterator[]::new);
+        PostingList.PostingIterator[] excludedIts = excluded.stream()
+                .map(PostingList::iterator)
+                .toArray(PostingList.PostingIterator[]::new);
+
+        long optionalBound = 0;
+        for (PostingList.PostingIterator it : optionalIts) {
+            optionalBound += it.maxWeight();
+        }
+
+        // 不需要检查时直接进 Top-K 堆；需要检查时先全部收下来
+        TopKCollector collector = verifier == null ? new TopKCollector(k) : null;
+        Candidates candidates = verifier == null ? null : new Candidates();
+
+        PostingList.PostingIterator lead = requiredIts[0];
+        int candidate = lead.nextDoc();
+        while (candidate != PostingList.NO_MORE_DOCS) {
+            int doc = candidate;
+            for (int i = 1; i < requiredIts.length; i++) {
+                doc = requiredIts[i].advance(candidate);
+                if (doc != candidate) {
+                    break;
+                }
+            }
+            if (doc != candidate) {
+                candidate = lead.advance(doc);
+                continue;
+            }
+
+            if (!matchesAny(excludedIts, candidate)) {
+                long score = 0;
+                for (PostingList.PostingIterator it : requiredIts) {
+                    score += it.weight();
+                }
+
+                int threshold = collector == null ? -1 : collector.threshold();
+                if (score + optionalBound > threshold) {
+                    for (PostingList.PostingIterator it : optionalIts) {
+                        if (it.advance(candidate) == candidate) {
+                            score += it.weight();
+                        }
+                    }
+                }
+
+                int cappedScore = (int) Long.min(score, Integer.MAX_VALUE);
+                boolean after = cappedScore < afterScore || (cappedScore == afterScore && candidate > afterDocId);
+                if (after && cappedScore > threshold) {
+                    if (collector != null) {
+                        collector.collect(candidate, cappedScore);
+                    } else {
+                        candidates.add(candidate, cappedScore);
+                    }
+                }
+            }
+            candidate = lead.nextDoc();
+        }
+
+        return collector != null ? collector.drain() : candidates.verify(verifier, k);
+    }
+
+    // 文档是否包含 its 中的某个词；调用时 docId 必须是递增的
+    static boolean matchesAny(PostingList.PostingIterator[] its, int docId) {
+        for (PostingList.PostingIterator it : its) {
+            if (it.advance(docId) == docId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 待检查的候选文档，(score, docId) 压成一个 long，排序之后就是最终的顺序
+    private static class Candidates {
+        private long[] keys = new long[64];
+        private int size;
+
+        void add(int docId, int score) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            // score 越大、docId 越小，key 越小
+            keys[size++] = ((long) (Integer.MAX_VALUE - score) << 32) | docId;
+        }
+
+        ScoredDocs verify(CandidateVerifier verifier, int k) {
+            Arrays.sort(keys, 0, size);
+            int[] docIds = new int[k];
+            int[] scores = new int[k];
+            int n = 0;
+            for (int from = 0; from < size && n < k; from += VERIFY_BATCH) {
+                int to = Integer.min(from + VERIFY_BATCH, size);
+                int[] batch = new int[to - from];
+                for (int i = from; i < to; i++) {
+                    batch[i - from] = (int) keys[i];
+                }
+                boolean[] accepted = verifier.verify(batch);
+                for (int i = 0; i < batch.length && n < k; i++) {
+                    if (accepted[i]) {
+                        docIds[n] = batch[i];
+                        scores[n] = Integer.MAX_VALUE - (int) (keys[from + i] >>> 32);
+                        n++;
+                    }
+                }
+            }
+            return new ScoredDocs(Arrays.copyOf(docIds, n), Arrays.copyOf(scores, n));
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.peixinchen.searcher.web.engine;
+
+/**
+ * 倒排列表只能判断文档包含哪些词，更细的条件（比如短语中的词是不是相邻）需要在候选文档上再检查一次
+ * 检查往往要访问数据库，所以按批调用，只检查排名靠前、真正可能出现在这一页的候选文档
+ */
+@FunctionalInterface
+public interface CandidateVerifier {
+    /**
+     * @return 和 docIds 一一对应，true 表示保留这篇文档
+     */
+    boolean[] verify(int[] docIds);
+}
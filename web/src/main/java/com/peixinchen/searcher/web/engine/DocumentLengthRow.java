@@ -0,0 +1,11 @@
+package com.peixinchen.searcher.web.engine;
+
+import lombok.Data;
+
+// 启动加载倒排索引时，forward_indexes 表中一篇文档的长度（BM25F 长度归一化用）
+@Data
+public class DocumentLengthRow {
+    private int docId;
+    private int titleLength;
+    private int contentLength;
+}
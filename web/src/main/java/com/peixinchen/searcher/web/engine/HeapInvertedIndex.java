@@ -0,0 +1,70 @@
+package com.peixinchen.searcher.web.engine;
+
+import com.peixinchen.searcher.web.DocumentStore;
+
+/**
+ * 从数据库加载到内存中的整个倒排索引：word -> termId（词典） -> PostingList（按 termId 下标的数组）
+ * 对应数据库中的某一代索引（generation），所有统计都只反映这一代；文档信息仍然查数据库
+ */
+public class HeapInvertedIndex implements InvertedIndex {
+    private final int generation;
+    private final TermDictionary dictionary;
+    private final PostingList[] postingsByTermId;
+    private final DocumentStore documents;
+    private final long postingCount;
+    private final long sizeInBytes;
+
+    HeapInvertedIndex(int generation, TermDictionary dictionary, PostingList[] postingsByTermId, DocumentStore documents) {
+        this.generation = generation;
+        this.dictionary = dictionary;
+        this.postingsByTermId = postingsByTermId;
+        this.documents = documents;
+
+        long count = 0;
+        long bytes = 0;
+        for (PostingList list : postingsByTermId) {
+            if (list != null) {
+                count += list.size();
+                bytes += list.sizeInBytes();
+            }
+        }
+        this.postingCount = count;
+        this.sizeInBytes = bytes;
+    }
+
+    @Override
+    public int generation() {
+        return generation;
+    }
+
+    @Override
+    public PostingList get(String word) {
+        int termId = dictionary.termId(word);
+        return termId == TermDictionary.NOT_FOUND ? null : postingsByTermId[termId];
+    }
+
+    @Override
+    public int termId(String word) {
+        return dictionary.termId(word);
+    }
+
+    @Override
+    public DocumentStore documents() {
+        return documents;
+    }
+
+    @Override
+    public int termCount() {
+        return dictionary.size();
+    }
+
+    @Override
+    public long postingCount() {
+        return postingCount;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return sizeInBytes;
+    }
+}
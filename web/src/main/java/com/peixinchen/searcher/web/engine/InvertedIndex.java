@@ -0,0 +1,33 @@
+package com.peixinchen.searcher.web.engine;
+
+import com.peixinchen.searcher.web.DocumentStore;
+
+/**
+ * 查询时看到的一份完整的索引（某一代），构建完成后不再修改，多个请求线程可以放心地并发读
+ * 一次查询从头到尾使用同一个 InvertedIndex，倒排列表和文档信息来自同一代，不会因为中途切换而对不上
+ *   HeapInvertedIndex：从数据库加载到堆内存中，文档信息查数据库
+ *   Segment：直接映射一个索引段文件，倒排和文档信息都从映射的内存中读，不需要数据库
+ *   SegmentSet：索引段目录中的一个提交点，若干个 Segment 加上删除标记
+ */
+public interface InvertedIndex {
+    int generation();
+
+    /**
+     * @return 该词的倒排列表，词不存在时返回 null；列表的 size() 就是这一代中包含该词的文档数（df）
+     */
+    PostingList get(String word);
+
+    /**
+     * @return 该词的 termId，词不存在时返回 TermDictionary.NOT_FOUND
+     */
+    int termId(String word);
+
+    // 取这一代的文档信息
+    DocumentStore documents();
+
+    int termCount();
+
+    long postingCount();
+
+    long sizeInBytes();
+}
@@ -0,0 +1,172 @@
+package com.peixinchen.searcher.web.engine;
+
+import com.peixinchen.searcher.common.Bm25f;
+import com.peixinchen.searcher.web.DatabaseDocumentStore;
+import com.peixinchen.searcher.web.SearchMapper;
+import com.peixinchen.searcher.web.WebProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 进程内的倒排索引引擎
+ * 把 terms 词典和 active 那一代可见的倒排记录流式读一遍，压缩成每个 termId 一个 PostingList 放在内存里
+ * 之后的查询只读内存，不再访问数据库（除了最终渲染页面时取文档信息）
+ *
+ * 定时检查 active 的代有没有变化：变了就在后台线程中完整地加载新的一代，加载完成后一次性替换掉引用，
+ * 正在进行的查询继续使用它拿到的旧索引，旧索引没有人引用之后由 GC 回收；加载期间内存中会同时存在新旧两份索引
+ *
+ * searcher.web.storage = segment 时不访问数据库：定时检查 segment-path 下的 CURRENT 文件（里面是最新的提交点文件名），
+ * 变了就打开新的提交点（见 SegmentSet），只映射新出现的段文件，映射只读文件头，切换几乎是瞬间完成的
+ *
+ * 替换引用之前先依次通知 SwitchListener（SearchCache 为新索引准备缓存，Warmup 用热门查询预热），预热完了才切换
+ */
+@Slf4j
+@Component
+public class InvertedIndexEngine {
+    private final SearchMapper mapper;
+    private final DatabaseDocumentStore databaseDocumentStore;
+    private final WebProperties properties;
+    private final List<SwitchListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile InvertedIndex index;
+
+    /**
+     * 切换到新的索引之前调用，在检查索引的定时任务线程中执行，这时查询还在用 current；抛出的异常只打日志，照样切换
+     */
+    public interface SwitchListener {
+        void beforeSwitch(InvertedIndex current, InvertedIndex next);
+    }
+
+    @Autowired
+    public InvertedIndexEngine(SearchMapper mapper, DatabaseDocumentStore databaseDocumentStore, WebProperties properties) {
+        this.mapper = mapper;
+        this.databaseDocumentStore = databaseDocumentStore;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void load() {
+        refresh();
+    }
+
+    // 检查间隔对应 application.yml 配置下的 searcher.web.generation-check-interval（毫秒）
+    @Scheduled(initialDelayString = "${searcher.web.generation-check-interval:10000}",
+            fixedDelayString = "${searcher.web.generation-check-interval:10000}")
+    public void refresh() {
+        if (properties.getStorage() == WebProperties.Storage.SEGMENT) {
+            refreshSegment();
+            return;
+        }
+
+        Integer active = mapper.selectActiveGeneration();
+        int generation = active == null ? 0 : active;
+        InvertedIndex current = index;
+        if (current != null && current.generation() == generation) {
+            return;
+        }
+
+        InvertedIndex loaded = load(generation);
+        publish(current, loaded);
+        if (current != null) {
+            log.info("已从第 {} 代索引切换到第 {} 代", current.generation(), generation);
+        }
+    }
+
+    private void refreshSegment() {
+        Path directory = Paths.get(properties.getSegmentPath());
+        try {
+            InvertedIndex current = index;
+            SegmentSet previous = current instanceof SegmentSet ? (SegmentSet) current : null;
+            SegmentSet segmentSet = SegmentSet.open(directory, previous);
+            if (segmentSet == previous) {
+                return;
+            }
+
+            publish(current, segmentSet);
+            log.info("已切换到索引段提交点 {}（第 {} 代），{} 个段，{} 条记录，{} 字节。", segmentSet.commit(), segmentSet.generation(),
+                    segmentSet.segments().size(), segmentSet.postingCount(), segmentSet.sizeInBytes());
+        } catch (IOException e) {
+            if (index == null) {
+                // 启动时就打不开，直接失败
+                throw new UncheckedIOException(e);
+            }
+            log.warn("打开新的索引段失败，继续使用当前的：{}", e.toString());
+        }
+    }
+
+    private InvertedIndex load(int generation) {
+        long b = System.currentTimeMillis();
+
+        // 1. 词典：word -> termId
+        List<TermRow> termRowList = new ArrayList<>();
+        mapper.scanTerms(context -> termRowList.add(context.getResultObject()));
+        TermDictionary dictionary = new TermDictionary(termRowList);
+
+        // 2. 文档长度：算出 BM25F 的平均长度和每篇文档的归一化因子
+        Bm25f.Builder lengths = new Bm25f.Builder();
+        mapper.scanDocumentLengths(generation, context -> {
+            DocumentLengthRow row = context.getResultObject();
+            lengths.add(row.getDocId(), row.getTitleLength(), row.getContentLength());
+        });
+        Bm25f bm25f = lengths.build();
+
+        // 3. 倒排：按 termId 下标攒 (docId, 标题词频 << 16 | 正文词频)，一个词的记录攒完才知道 df，build 时再换成得分
+        PostingListBuilder[] builders = new PostingListBuilder[dictionary.maxTermId() + 1];
+        mapper.scanInvertedIndexes(generation, context -> {
+            PostingRow row = context.getResultObject();
+            PostingListBuilder builder = builders[row.getTermId()];
+            if (builder == null) {
+                builder = builders[row.getTermId()] = new PostingListBuilder();
+            }
+            builder.add(row.getDocId(), Integer.min(row.getTitleTf(), 0x7FFF) << 16 | Integer.min(row.getContentTf(), 0xFFFF));
+        });
+
+        PostingList[] postings = new PostingList[builders.length];
+        for (int termId = 0; termId < builders.length; termId++) {
+            if (builders[termId] != null) {
+                int df = builders[termId].size();
+                postings[termId] = builders[termId].build((docId, tfs) -> bm25f.impact(df, docId, tfs >>> 16, tfs & 0xFFFF));
+                builders[termId] = null;    // 尽早释放 builder 里的数组
+            }
+        }
+
+        InvertedIndex loaded = new HeapInvertedIndex(generation, dictionary, postings, databaseDocumentStore);
+
+        long e = System.currentTimeMillis();
+        log.info("第 {} 代倒排索引加载完成，{} 个词，{} 条记录，压缩后 {} 字节，耗时 {} 秒。",
+                generation, loaded.termCount(), loaded.postingCount(), loaded.sizeInBytes(), (e - b) / 1000.0);
+        return loaded;
+    }
+
+    public InvertedIndex current() {
+        return index;
+    }
+
+    // 按注册的顺序调用
+    public void addSwitchListener(SwitchListener listener) {
+        listeners.add(listener);
+    }
+
+    private void publish(InvertedIndex current, InvertedIndex next) {
+        if (current != null) {
+            for (SwitchListener listener : listeners) {
+                try {
+                    listener.beforeSwitch(current, next);
+                } catch (RuntimeException e) {
+                    log.warn("切换索引之前的准备失败：{}", e.toString());
+                }
+            }
+        }
+        index = next;
+    }
+}
@@ -0,0 +1,110 @@
+package com.peixinchen.searcher.web.engine;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 基于 MaxScore 的多词 OR 检索：每篇文档的得分 = 它在各个词下 weight 之和
+ *
+ * 所有词的倒排列表按 docId 同步往后走，同时维护一个 Top-K 堆
+ * 把词按 maxWeight 从小到大排，前缀和 upperBounds[i] 表示只命中前 i+1 个词时得分的上限
+ * 一旦 upperBounds[i] <= 堆的门槛，前 i+1 个词就成了"非必要词"：只命中它们的文档不可能进 Top-K，
+ * 所以候选文档只从"必要词"里产生，非必要词只在候选文档上 advance 过去补分
+ * 补分之前先用跳表查出每个非必要词在候选文档所在块的最大 weight（不解码），块上限加起来都够不到门槛的文档，
+ * 连 advance 都不用做；块上限为 0（这个词后面已经没有这篇文档了）的词也直接跳过
+ *
+ * 翻页时用 searchAfter：只收集排在上一页最后一篇 (afterScore, afterDocId) 之后的文档，堆的大小始终是一页，
+ * 第 50 页和第 1 页的开销差不多，不需要先排出前 50 页再截取
+ */
+public final class MaxScoreSearcher {
+    private MaxScoreSearcher() {}
+
+    public static ScoredDocs search(List<PostingList> postingLists, int k) {
+        return searchAfter(postingLists, k, Integer.MAX_VALUE, -1);
+    }
+
+    /**
+     * 按 score 从大到小、score 相同时 docId 从小到大的顺序，取排在 (afterScore, afterDocId) 之后的前 k 篇
+     */
+    public static ScoredDocs searchAfter(List<PostingList> postingLists, int k, int afterScore, int afterDocId) {
+        return searchAfter(postingLists, Collections.emptyList(), k, afterScore, afterDocId);
+    }
+
+    /**
+     * 同上，但包含 excluded 中任何一个词的文档不要（查询中的 -词）
+     * 被排除的词不参与打分，只在文档要进堆时 advance 过去看一眼
+     */
+    public static ScoredDocs searchAfter(List<PostingList> postingLists, List<PostingList> excluded,
+                                         int k, int afterScore, int afterDocId) {
+        TopKCollector collector = new TopKCollector(k);
+        PostingList.PostingIterator[] excludedIts = excluded.stream()
+                .map(PostingList::iterator)
+                .toArray(PostingList.PostingIterator[]::new);
+
+        PostingList.PostingIterator[] its = postingLists.stream()
+                .sorted(Comparator.comparingInt(PostingList::maxWeight))
+                .map(PostingList::iterator)
+                .toArray(PostingList.PostingIterator[]::new);
+        int n = its.length;
+
+        long[] upperBounds = new long[n];
+        int[] blockMaxWeights = new int[n];
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += its[i].maxWeight();
+            upperBounds[i] = sum;
+            its[i].nextDoc();
+        }
+
+        int firstEssential = 0;
+        while (firstEssential < n) {
+            // 候选文档：必要词中最小的 docId
+            int candidate = PostingList.NO_MORE_DOCS;
+            for (int i = firstEssential; i < n; i++) {
+                candidate = Integer.min(candidate, its[i].docId());
+            }
+            if (candidate == PostingList.NO_MORE_DOCS) {
+                break;
+            }
+
+            long score = 0;
+            for (int i = firstEssential; i < n; i++) {
+                if (its[i].docId() == candidate) {
+                    score += its[i].weight();
+                    its[i].nextDoc();
+                }
+            }
+
+            // 从上限大的非必要词开始补分，补不到门槛就提前放弃这篇文档
+            int threshold = collector.threshold();
+            long blockBound = 0;
+            for (int i = 0; i < firstEssential; i++) {
+                blockMaxWeights[i] = its[i].blockMaxWeight(candidate);
+                blockBound += blockMaxWeights[i];
+            }
+            for (int i = firstEssential - 1; i >= 0; i--) {
+                if (score + Long.min(upperBounds[i], blockBound) <= threshold) {
+                    break;
+                }
+                blockBound -= blockMaxWeights[i];
+                if (blockMaxWeights[i] > 0 && its[i].advance(candidate) == candidate) {
+                    score += its[i].weight();
+                }
+            }
+
+            int cappedScore = (int) Long.min(score, Integer.MAX_VALUE);
+            boolean after = cappedScore < afterScore || (cappedScore == afterScore && candidate > afterDocId);
+            if (score > threshold && after && !BooleanSearcher.matchesAny(excludedIts, candidate)) {
+                collector.collect(candidate, cappedScore);
+
+                threshold = collector.threshold();
+                while (firstEssential < n && upperBounds[firstEssential] <= threshold) {
+                    firstEssential++;
+                }
+            }
+        }
+
+        return collector.drain();
+    }
+}
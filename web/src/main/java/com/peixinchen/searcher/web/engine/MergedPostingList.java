@@ -0,0 +1,131 @@
+package com.peixinchen.searcher.web.engine;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 同一个词在几个索引段中的倒排列表（见 SegmentSet），各个段中的 docId 互不重复
+ * 不在查询时复制成一个新的列表：遍历时在各个段的游标中取 docId 最小的那个，已删除的文档（删除标记）直接跳过
+ * 段数一般只有几个，每一步线性地找最小值就够了
+ */
+class MergedPostingList extends PostingList {
+    private final PostingList[] parts;
+    private final int[] tombstones;     // 从小到大
+    private final int size;
+    private final int maxWeight;
+    private final int sizeInBytes;
+
+    MergedPostingList(List<PostingList> parts, int[] tombstones) {
+        this.parts = parts.toArray(new PostingList[0]);
+        this.tombstones = tombstones;
+        int size = 0;
+        int maxWeight = 0;
+        int sizeInBytes = 0;
+        for (PostingList part : parts) {
+            size += part.size();
+            maxWeight = Integer.max(maxWeight, part.maxWeight());
+            sizeInBytes += part.sizeInBytes();
+        }
+        this.size = size;
+        this.maxWeight = maxWeight;
+        this.sizeInBytes = sizeInBytes;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int maxWeight() {
+        return maxWeight;
+    }
+
+    @Override
+    public int sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    @Override
+    public PostingIterator iterator() {
+        return new MergedIterator();
+    }
+
+    private class MergedIterator extends PostingIterator {
+        private final PostingIterator[] its = new PostingIterator[parts.length];
+        private int docId = -1;
+        private int weight = 0;
+        private int tombstone = 0;      // tombstones 中第一个还没有越过的位置，docId 只会增大
+
+        MergedIterator() {
+            for (int i = 0; i < parts.length; i++) {
+                its[i] = parts[i].iterator();
+            }
+        }
+
+        @Override
+        public int nextDoc() {
+            return docId == NO_MORE_DOCS ? NO_MORE_DOCS : advance(docId + 1);
+        }
+
+        @Override
+        public int advance(int target) {
+            if (docId >= target) {
+                return docId;
+            }
+            while (true) {
+                int min = NO_MORE_DOCS;
+                PostingIterator current = null;
+                for (PostingIterator it : its) {
+                    int doc = it.advance(target);
+                    if (doc < min) {
+                        min = doc;
+                        current = it;
+                    }
+                }
+                if (current == null) {
+                    return docId = NO_MORE_DOCS;
+                }
+                if (!deleted(min)) {
+                    weight = current.weight();
+                    return docId = min;
+                }
+                target = min + 1;
+            }
+        }
+
+        private boolean deleted(int doc) {
+            int at = Arrays.binarySearch(tombstones, tombstone, tombstones.length, doc);
+            tombstone = at >= 0 ? at : -at - 1;
+            return at >= 0;
+        }
+
+        @Override
+        public int docId() {
+            return docId;
+        }
+
+        @Override
+        public int weight() {
+            return weight;
+        }
+
+        @Override
+        public int maxWeight() {
+            return maxWeight;
+        }
+
+        // 各个段中的上限取最大的；已删除的文档不排除，仍然是上限
+        @Override
+        public int blockMaxWeight(int target) {
+            if (docId >= target) {
+                return docId == NO_MORE_DOCS ? 0 : weight;
+            }
+            int bound = 0;
+            for (PostingIterator it : its) {
+                bound = Integer.max(bound, it.blockMaxWeight(target));
+            }
+            return bound;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.peixinchen.searcher.web.engine;
+
+/**
+ * 一个词的倒排列表（不可变）
+ * 按照 docId 从小到大排列，这样多个词的倒排列表可以同时从头往后走（DAAT），配合 maxWeight 做提前终止
+ *
+ * 两种实现：
+ *   BlockPostingList：编码好的一个列表，在堆上（数据库模式），或者在索引段文件映射的内存中（见 Segment）
+ *   MergedPostingList：同一个词在几个索引段中的列表，遍历时再归并、跳过已删除的文档，不复制
+ */
+public abstract class PostingList {
+    // docId 用完之后返回的哨兵值
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    // 记录数，也就是 df（MergedPostingList 中包括已删除的文档，是上限）
+    public abstract int size();
+
+    // 整个列表中最大的 weight，也就是这个词能给任何一篇文档贡献的权重上限
+    public abstract int maxWeight();
+
+    // 占用的字节数，用于缓存的容量计算
+    public abstract int sizeInBytes();
+
+    public abstract PostingIterator iterator();
+
+    /**
+     * 顺序遍历的游标，用法：
+     *   PostingIterator it = list.iterator();
+     *   for (int docId = it.nextDoc(); docId != NO_MORE_DOCS; docId = it.nextDoc()) { it.weight(); }
+     */
+    public abstract static class PostingIterator {
+        // 移动到下一条，返回它的 docId，没有了返回 NO_MORE_DOCS
+        public abstract int nextDoc();
+
+        // 移动到第一条 docId >= target 的记录，返回它的 docId
+        public abstract int advance(int target);
+
+        public abstract int docId();
+
+        public abstract int weight();
+
+        public abstract int maxWeight();
+
+        /**
+         * 如果 advance(target)，会停在的那一条的 weight 的上限（编码好的列表是那一块中最大的 weight）
+         * 不移动游标，也不解码任何记录；target 之后已经没有记录时返回 0
+         */
+        public abstract int blockMaxWeight(int target);
+    }
+}
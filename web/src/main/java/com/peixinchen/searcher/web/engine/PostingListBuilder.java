@@ -0,0 +1,78 @@
+package com.peixinchen.searcher.web.engine;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * 加载阶段用来攒一个词的所有 (docId, weight)，攒完之后调用 build() 压缩成 PostingList
+ * 内部只用基本类型数组，避免每条记录一个对象
+ */
+class PostingListBuilder {
+    private int[] docIds = new int[4];
+    private int[] weights = new int[4];
+    private int size = 0;
+
+    void add(int docId, int weight) {
+        if (size == docIds.length) {
+            docIds = Arrays.copyOf(docIds, size * 2);
+            weights = Arrays.copyOf(weights, size * 2);
+        }
+        docIds[size] = docId;
+        weights[size] = weight;
+        size++;
+    }
+
+    // 攒了多少条，也就是这个词的 df
+    int size() {
+        return size;
+    }
+
+    PostingList build() {
+        return build((docId, weight) -> weight);
+    }
+
+    /**
+     * 压缩之前先用 weigher(docId, weight) 把攒的值换成最终的 weight（加载时攒的是词频，在这里换成 BM25F 得分）
+     */
+    PostingList build(IntBinaryOperator weigher) {
+        // 把 (docId, weight) 压成一个 long，直接对 long[] 排序，避免装箱
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) docIds[i] << 32) | weigher.applyAsInt(docIds[i], weights[i]);
+        }
+        Arrays.sort(keys);
+
+        int blockCount = (size + BlockPostingList.BLOCK_SIZE - 1) / BlockPostingList.BLOCK_SIZE;
+        int skipBytes = blockCount * BlockPostingList.SKIP_ENTRY_BYTES;
+        byte[] buf = new byte[skipBytes + size * 2 * VarInt.MAX_BYTES];
+        ByteBuffer skip = ByteBuffer.wrap(buf);
+        int pos = skipBytes;
+        int maxWeight = 0;
+        int blockMaxWeight = 0;
+        int prevDocId = 0;
+        for (int i = 0; i < size; i++) {
+            int docId = (int) (keys[i] >>> 32);
+            int weight = (int) keys[i];
+
+            pos = VarInt.write(buf, pos, docId - prevDocId);
+            pos = VarInt.write(buf, pos, weight);
+
+            maxWeight = Integer.max(maxWeight, weight);
+            blockMaxWeight = Integer.max(blockMaxWeight, weight);
+            prevDocId = docId;
+
+            // 一块结束，写跳表项
+            if ((i + 1) % BlockPostingList.BLOCK_SIZE == 0 || i == size - 1) {
+                skip.putInt(docId).putInt(pos - skipBytes).putInt(blockMaxWeight);
+                blockMaxWeight = 0;
+            }
+        }
+
+        // 这个 builder 用完就丢了，释放数组
+        docIds = null;
+        weights = null;
+
+        return new BlockPostingList(ByteBuffer.wrap(Arrays.copyOf(buf, pos)), 0, pos, size, maxWeight);
+    }
+}
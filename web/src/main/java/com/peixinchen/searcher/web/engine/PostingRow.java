@@ -0,0 +1,12 @@
+package com.peixinchen.searcher.web.engine;
+
+import lombok.Data;
+
+// 启动加载倒排索引时，inverted_indexes 表中的一行（只在加载过程中短暂存在）
+@Data
+public class PostingRow {
+    private int termId;
+    private int docId;
+    private int titleTf;
+    private int contentTf;
+}
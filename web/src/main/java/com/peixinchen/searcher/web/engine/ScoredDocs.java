@@ -0,0 +1,28 @@
+package com.peixinchen.searcher.web.engine;
+
+/**
+ * 排好序的检索结果：docIds[i] 的得分是 scores[i]，按 score 从大到小排列
+ */
+public class ScoredDocs {
+    public static final ScoredDocs EMPTY = new ScoredDocs(new int[0], new int[0]);
+
+    private final int[] docIds;
+    private final int[] scores;
+
+    ScoredDocs(int[] docIds, int[] scores) {
+        this.docIds = docIds;
+        this.scores = scores;
+    }
+
+    public int size() {
+        return docIds.length;
+    }
+
+    public int docId(int i) {
+        return docIds[i];
+    }
+
+    public int score(int i) {
+        return scores[i];
+    }
+}
@@ -0,0 +1,220 @@
+package com.peixinchen.searcher.web.engine;
+
+import com.peixinchen.searcher.web.Document;
+import com.peixinchen.searcher.web.DocumentStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 索引构建程序写出的索引段文件（见 indexer 模块的 SegmentWriter），通过 FileChannel.map 映射到内存，
+ * 查询时词典查找、倒排列表解码、取文档信息都直接读映射的内存，不复制到堆上，也不需要数据库
+ * 打开时只读文件头，启动几乎不花时间；文件内容由操作系统按需读入 page cache，多个进程可以共享
+ *
+ * 文件格式（所有整数都是大端）：
+ *   文件头（HEADER_BYTES 字节）：
+ *     [magic: int][version: int][generation: int][termCount: int][docCount: int][保留: int][postingCount: long]
+ *     [词条表位置: long][词的字节位置: long][倒排区位置: long][文档表位置: long][文档区位置: long]
+ *   词条表：按词的 UTF-8 字节（无符号）排好序，每项 TERM_ENTRY_BYTES 字节
+ *     [词在词的字节中的位置: int][词的字节数: int][termId: int][df: int][maxWeight: int][倒排列表字节数: int][倒排列表在倒排区中的位置: long]
+ *   词的字节：所有词的 UTF-8 编码首尾相接
+ *   倒排区：每个词的倒排列表，格式和 PostingList 完全一样（跳表 + VarInt 数据）
+ *   文档表：按 docId 排好序，每项 DOC_ENTRY_BYTES 字节：[docId: int][文档在文档区中的位置: long]
+ *   文档区：每篇文档依次是 title、url、snippetSource，每个都是 [UTF-8 字节数: int][UTF-8 字节]
+ * 版本 2 在每个词的倒排列表后面、每篇文档后面多存了词频和文档长度，是索引构建程序合并段时重新打分用的，这里不读，版本 1、2 都能打开
+ *
+ * 映射的内存在 Segment 对象被 GC 回收后才释放，切换到新的段之后旧的段还会占用一段时间的虚拟内存（不占堆）
+ */
+public class Segment implements InvertedIndex, DocumentStore {
+    static final int MAGIC = 0x53454731;    // "SEG1"
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 72;
+    static final int TERM_ENTRY_BYTES = 32;
+    static final int DOC_ENTRY_BYTES = 12;
+
+    private final Path path;
+    private final ByteBuffer buf;
+    private final int generation;
+    private final int termCount;
+    private final int docCount;
+    private final long postingCount;
+    private final int termTable;
+    private final int words;
+    private final int postings;
+    private final int docTable;
+    private final int docs;
+
+    private Segment(Path path, ByteBuffer buf) throws IOException {
+        this.path = path;
+        this.buf = buf;
+        if (buf.limit() < HEADER_BYTES || buf.getInt(0) != MAGIC) {
+            throw new IOException("不是索引段文件：" + path);
+        }
+        if (buf.getInt(4) < 1 || buf.getInt(4) > VERSION) {
+            throw new IOException("不支持的索引段版本 " + buf.getInt(4) + "：" + path);
+        }
+        generation = buf.getInt(8);
+        termCount = buf.getInt(12);
+        docCount = buf.getInt(16);
+        postingCount = buf.getLong(24);
+        termTable = (int) buf.getLong(32);
+        words = (int) buf.getLong(40);
+        postings = (int) buf.getLong(48);
+        docTable = (int) buf.getLong(56);
+        docs = (int) buf.getLong(64);
+    }
+
+    public static Segment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            // 一次 map 最多 2GB，目前的文档规模远远用不到
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("索引段文件超过 2GB，暂不支持：" + path);
+            }
+            // 映射建立之后，关闭 channel 不影响映射的内存
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    @Override
+    public int generation() {
+        return generation;
+    }
+
+    @Override
+    public PostingList get(String word) {
+        int entry = findTerm(word);
+        if (entry < 0) {
+            return null;
+        }
+        int df = buf.getInt(entry + 12);
+        int maxWeight = buf.getInt(entry + 16);
+        int length = buf.getInt(entry + 20);
+        int offset = (int) buf.getLong(entry + 24);
+        return new BlockPostingList(buf, postings + offset, length, df, maxWeight);
+    }
+
+    @Override
+    public int termId(String word) {
+        int entry = findTerm(word);
+        return entry < 0 ? TermDictionary.NOT_FOUND : buf.getInt(entry + 8);
+    }
+
+    // 二分查找，返回词条在 buf 中的位置，找不到返回 -1
+    private int findTerm(String word) {
+        byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = termCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = termTable + mid * TERM_ENTRY_BYTES;
+            int c = compareWord(entry, key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    // 按无符号字节比较词条中的词和 key，和写文件时的排序方式一致
+    private int compareWord(int entry, byte[] key) {
+        int start = words + buf.getInt(entry);
+        int length = buf.getInt(entry + 4);
+        int n = Integer.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int c = (buf.get(start + i) & 0xFF) - (key[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return length - key.length;
+    }
+
+    @Override
+    public DocumentStore documents() {
+        return this;
+    }
+
+    @Override
+    public List<Document> queryByDocIds(List<Integer> docIdList) {
+        List<Document> documentList = new ArrayList<>();
+        for (int docId : docIdList) {
+            int offset = findDocument(docId);
+            if (offset < 0) {
+                continue;
+            }
+            int pos = docs + offset;
+            Document document = new Document();
+            document.setDocId(docId);
+            document.setTitle(readString(pos));
+            pos += 4 + buf.getInt(pos);
+            document.setUrl(readString(pos));
+            pos += 4 + buf.getInt(pos);
+            document.setSnippetSource(readString(pos));
+            documentList.add(document);
+        }
+        return documentList;
+    }
+
+    // 二分查找文档表，返回文档在文档区中的位置，找不到返回 -1
+    private int findDocument(int docId) {
+        int lo = 0;
+        int hi = docCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = docTable + mid * DOC_ENTRY_BYTES;
+            int midDocId = buf.getInt(entry);
+            if (midDocId < docId) {
+                lo = mid + 1;
+            } else if (midDocId > docId) {
+                hi = mid - 1;
+            } else {
+                return (int) buf.getLong(entry + 4);
+            }
+        }
+        return -1;
+    }
+
+    private String readString(int pos) {
+        int length = buf.getInt(pos);
+        byte[] bytes = new byte[length];
+        // duplicate() 出一个独立的 position，不影响其他线程
+        ByteBuffer view = buf.duplicate();
+        view.position(pos + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int docCount() {
+        return docCount;
+    }
+
+    @Override
+    public int termCount() {
+        return termCount;
+    }
+
+    @Override
+    public long postingCount() {
+        return postingCount;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return buf.limit();
+    }
+}
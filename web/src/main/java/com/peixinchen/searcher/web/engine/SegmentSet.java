@@ -0,0 +1,205 @@
+package com.peixinchen.searcher.web.engine;
+
+import com.peixinchen.searcher.web.Document;
+import com.peixinchen.searcher.web.DocumentStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 索引段目录中的一个提交点（见 indexer 模块的 SegmentCommit、SegmentStore）：若干个不可变的段 + 已删除文档的 docId（删除标记）
+ * CURRENT 文件中是最新的提交点文件名，提交点文件每行一项：
+ *   sequence 15 / generation 12 / segment segment-3.seg（可以有多行）/ tombstones tombstones-15.del（可选）
+ *   stats stats-14.bin（索引构建程序合并段时用的统计，这里不读）
+ * 删除标记文件：[个数: int][docId: int] ...，docId 从小到大
+ *
+ * 各个段中的 docId 互不重复，同一个词在各个段中的倒排列表由 MergedPostingList 在遍历时归并、跳过已删除的文档，不复制；
+ * 只有一个段并且没有删除标记时（刚合并完、或者全量重建之后）直接返回映射的倒排列表
+ * 段多了、删除多了之后由索引构建程序在后台合并
+ */
+public class SegmentSet implements InvertedIndex, DocumentStore {
+    private final String commit;
+    private final int generation;
+    private final List<Segment> segments;
+    private final int[] tombstones;     // 从小到大
+
+    private SegmentSet(String commit, int generation, List<Segment> segments, int[] tombstones) {
+        this.commit = commit;
+        this.generation = generation;
+        this.segments = segments;
+        this.tombstones = tombstones;
+    }
+
+    /**
+     * 打开 directory 下 CURRENT 指向的提交点
+     * @param previous 当前在用的，没有变化的段直接复用它已经映射好的，可以为 null
+     */
+    public static SegmentSet open(Path directory, SegmentSet previous) throws IOException {
+        String commit = new String(Files.readAllBytes(directory.resolve("CURRENT")), StandardCharsets.UTF_8).trim();
+        if (previous != null && previous.commit.equals(commit)) {
+            return previous;
+        }
+
+        Map<Path, Segment> opened = new HashMap<>();
+        if (previous != null) {
+            for (Segment segment : previous.segments) {
+                opened.put(segment.path(), segment);
+            }
+        }
+
+        int generation = 0;
+        List<Segment> segments = new ArrayList<>();
+        int[] tombstones = new int[0];
+        for (String line : Files.readAllLines(directory.resolve(commit), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            int space = line.indexOf(' ');
+            String key = line.substring(0, space);
+            String value = line.substring(space + 1);
+            if (key.equals("generation")) {
+                generation = Integer.parseInt(value);
+            } else if (key.equals("segment")) {
+                Path path = directory.resolve(value);
+                Segment segment = opened.get(path);
+                segments.add(segment != null ? segment : Segment.open(path));
+            } else if (key.equals("tombstones")) {
+                tombstones = readTombstones(directory.resolve(value));
+            }
+        }
+        return new SegmentSet(commit, generation, Collections.unmodifiableList(segments), tombstones);
+    }
+
+    private static int[] readTombstones(Path path) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(path));
+        int[] docIds = new int[buf.getInt()];
+        for (int i = 0; i < docIds.length; i++) {
+            docIds[i] = buf.getInt();
+        }
+        return docIds;
+    }
+
+    private boolean deleted(int docId) {
+        return Arrays.binarySearch(tombstones, docId) >= 0;
+    }
+
+    public String commit() {
+        return commit;
+    }
+
+    /**
+     * 没有被删除的文档数：删除标记中的 docId 都在某个段中（合并时连同文档一起去掉）
+     */
+    public long liveDocCount() {
+        long docCount = 0;
+        for (Segment segment : segments) {
+            docCount += segment.docCount();
+        }
+        return docCount - tombstones.length;
+    }
+
+    /**
+     * other 和这个提交点是不是同一代、可见的文档一样：只是后台合并了段，查询结果不变（合并时按最新的统计重新打分，
+     * 得分可能有很小的变化，和换代之后旧游标的误差一样可以接受）
+     */
+    public boolean sameDocuments(SegmentSet other) {
+        return other.generation == generation && other.liveDocCount() == liveDocCount();
+    }
+
+    public List<Segment> segments() {
+        return segments;
+    }
+
+    @Override
+    public int generation() {
+        return generation;
+    }
+
+    @Override
+    public PostingList get(String word) {
+        List<PostingList> lists = new ArrayList<>();
+        for (Segment segment : segments) {
+            PostingList list = segment.get(word);
+            if (list != null) {
+                lists.add(list);
+            }
+        }
+        if (lists.isEmpty()) {
+            return null;
+        }
+        if (lists.size() == 1 && tombstones.length == 0) {
+            return lists.get(0);
+        }
+        return new MergedPostingList(lists, tombstones);
+    }
+
+    @Override
+    public int termId(String word) {
+        for (Segment segment : segments) {
+            int termId = segment.termId(word);
+            if (termId != TermDictionary.NOT_FOUND) {
+                return termId;
+            }
+        }
+        return TermDictionary.NOT_FOUND;
+    }
+
+    @Override
+    public DocumentStore documents() {
+        return this;
+    }
+
+    @Override
+    public List<Document> queryByDocIds(List<Integer> docIdList) {
+        List<Integer> liveDocIdList = new ArrayList<>();
+        for (int docId : docIdList) {
+            if (!deleted(docId)) {
+                liveDocIdList.add(docId);
+            }
+        }
+        // 每个段只返回它有的文档
+        List<Document> documentList = new ArrayList<>();
+        for (Segment segment : segments) {
+            documentList.addAll(segment.queryByDocIds(liveDocIdList));
+        }
+        return documentList;
+    }
+
+    @Override
+    public int termCount() {
+        // 各个段的词有重复，这里是上限
+        int termCount = 0;
+        for (Segment segment : segments) {
+            termCount += segment.termCount();
+        }
+        return termCount;
+    }
+
+    @Override
+    public long postingCount() {
+        long postingCount = 0;
+        for (Segment segment : segments) {
+            postingCount += segment.postingCount();
+        }
+        return postingCount;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.sizeInBytes();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,50 @@
+package com.peixinchen.searcher.web.engine;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 内存中的词典：按 word 排好序的数组 + 二分查找，word -> termId
+ * 不可变，构建完成后多个请求线程可以并发读
+ */
+public class TermDictionary {
+    public static final int NOT_FOUND = -1;
+
+    private final String[] words;       // 按字典序排好
+    private final int[] termIds;        // termIds[i] 是 words[i] 的 termId
+    private final int maxTermId;
+
+    TermDictionary(List<TermRow> rowList) {
+        rowList.sort(Comparator.comparing(TermRow::getWord));
+
+        int n = rowList.size();
+        words = new String[n];
+        termIds = new int[n];
+        int max = -1;
+        for (int i = 0; i < n; i++) {
+            TermRow row = rowList.get(i);
+            words[i] = row.getWord();
+            termIds[i] = row.getTermId();
+            max = Integer.max(max, row.getTermId());
+        }
+        maxTermId = max;
+    }
+
+    /**
+     * @return word 对应的 termId，词不存在时返回 NOT_FOUND
+     */
+    public int termId(String word) {
+        int i = Arrays.binarySearch(words, word);
+        return i < 0 ? NOT_FOUND : termIds[i];
+    }
+
+    public int size() {
+        return words.length;
+    }
+
+    // termId 的上界（包含），用来确定按 termId 下标的数组长度
+    public int maxTermId() {
+        return maxTermId;
+    }
+}
@@ -0,0 +1,10 @@
+package com.peixinchen.searcher.web.engine;
+
+import lombok.Data;
+
+// 启动加载词典时，terms 表中的一行
+@Data
+public class TermRow {
+    private int termId;
+    private String word;
+}
@@ -0,0 +1,119 @@
+package com.peixinchen.searcher.web.engine;
+
+import java.util.Arrays;
+
+/**
+ * 有界的 Top-K 小顶堆，只保留得分最高的 k 篇文档
+ * 排序规则：score 大的在前，score 相同时 docId 小的在前
+ * 堆顶是当前 k 篇里最差的那篇，新文档只需要和堆顶比较，复杂度 O(log k)
+ * k 可能很大（翻到很后面的页）而命中的文档很少，数组按需扩容，不一开始就分配 k 个位置
+ */
+public class TopKCollector {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int k;
+    private int[] docIds;
+    private int[] scores;
+    private int size = 0;
+
+    public TopKCollector(int k) {
+        this.k = k;
+        this.docIds = new int[Integer.min(k, INITIAL_CAPACITY)];
+        this.scores = new int[docIds.length];
+    }
+
+    public void collect(int docId, int score) {
+        if (size < k) {
+            if (size == docIds.length) {
+                int capacity = (int) Long.min((long) size * 2, k);
+                docIds = Arrays.copyOf(docIds, capacity);
+                scores = Arrays.copyOf(scores, capacity);
+            }
+            docIds[size] = docId;
+            scores[size] = score;
+            siftUp(size++);
+            return;
+        }
+
+        if (k == 0 || !better(docId, score, docIds[0], scores[0])) {
+            return;
+        }
+        docIds[0] = docId;
+        scores[0] = score;
+        siftDown(0);
+    }
+
+    /**
+     * 进入 Top-K 的门槛：堆还没满时为 -1，满了之后是堆顶的 score
+     * 由于文档是按 docId 从小到大依次送进来的，后来的文档 score 必须严格大于门槛才能进堆
+     */
+    public int threshold() {
+        return size < k ? -1 : scores[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 把堆中的结果按 score 从大到小取出来（会清空堆）
+     */
+    public ScoredDocs drain() {
+        int n = size;
+        int[] sortedDocIds = new int[n];
+        int[] sortedScores = new int[n];
+        for (int i = n - 1; i >= 0; i--) {
+            sortedDocIds[i] = docIds[0];
+            sortedScores[i] = scores[0];
+            size--;
+            docIds[0] = docIds[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+        return new ScoredDocs(sortedDocIds, sortedScores);
+    }
+
+    // a 是否排在 b 前面
+    private static boolean better(int docIdA, int scoreA, int docIdB, int scoreB) {
+        return scoreA > scoreB || (scoreA == scoreB && docIdA < docIdB);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(docIds[parent], scores[parent], docIds[i], scores[i])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = i * 2 + 1;
+            if (left >= size) {
+                break;
+            }
+            int worst = left;
+            int right = left + 1;
+            if (right < size && better(docIds[left], scores[left], docIds[right], scores[right])) {
+                worst = right;
+            }
+            if (!better(docIds[i], scores[i], docIds[worst], scores[worst])) {
+                break;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int d = docIds[i];
+        docIds[i] = docIds[j];
+        docIds[j] = d;
+        int s = scores[i];
+        scores[i] = scores[j];
+        scores[j] = s;
+    }
+}
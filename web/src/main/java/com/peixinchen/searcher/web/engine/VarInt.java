@@ -0,0 +1,25 @@
+package com.peixinchen.searcher.web.engine;
+
+/**
+ * 变长整数编码：每个字节低 7 位存数据，最高位为 1 表示后面还有字节
+ * 小的数字（比如差值编码后的 docId、权重）只需要 1~2 个字节
+ */
+final class VarInt {
+    private VarInt() {}
+
+    // value 最多需要 5 个字节
+    static final int MAX_BYTES = 5;
+
+    /**
+     * 把 value 写到 buf[pos] 开始的位置
+     * @return 写完之后的下一个位置
+     */
+    static int write(byte[] buf, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+        return pos;
+    }
+}
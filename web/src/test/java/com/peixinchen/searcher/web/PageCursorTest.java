@@ -0,0 +1,24 @@
+package com.peixinchen.searcher.web;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageCursorTest {
+    @Test
+    void forgedCursorsAreRejectedOrClamped() {
+        SearchQuery query = SearchQuery.parse("list map");
+
+        PageCursor cursor = PageCursor.decode(new PageCursor(1, query.hashCode(), 3, 500, 42).encode(), query, 50);
+        assertEquals(3, cursor.getPage());
+        assertEquals(500, cursor.getAfterScore());
+        assertEquals(42, cursor.getAfterDocId());
+
+        // 按页码取时用的"从头开始"的位置，当成游标会把第 1 页的结果放到别的页码下
+        assertNull(PageCursor.decode(new PageCursor(1, query.hashCode(), 3, Integer.MAX_VALUE, -1).encode(), query, 50));
+        assertNull(PageCursor.decode(new PageCursor(1, query.hashCode() + 1, 3, 500, 42).encode(), query, 50));
+
+        // 页码和按页码取一样最多到 maxPage，下一页的页码不会溢出
+        assertEquals(50, PageCursor.decode(new PageCursor(1, query.hashCode(), Integer.MAX_VALUE, 500, 42).encode(), query, 50).getPage());
+    }
+}
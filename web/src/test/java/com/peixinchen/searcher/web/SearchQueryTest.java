@@ -0,0 +1,38 @@
+package com.peixinchen.searcher.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchQueryTest {
+    @Test
+    void operators() {
+        SearchQuery query = SearchQuery.parse("list +map -set");
+        assertEquals(Collections.singletonList("list"), query.getShould());
+        assertEquals(Collections.singletonList("map"), query.getMust());
+        assertEquals(Collections.singletonList("set"), query.getMustNot());
+        assertTrue(query.getPhrases().isEmpty());
+    }
+
+    @Test
+    void phrase() {
+        SearchQuery query = SearchQuery.parse("\"string builder\" java");
+        assertEquals(Arrays.asList("string", "builder"), query.getMust());
+        assertEquals(Collections.singletonList("java"), query.getShould());
+
+        SearchQuery.Phrase phrase = query.getPhrases().get(0);
+        assertEquals("string builder", phrase.getText());
+        assertEquals(Arrays.asList("string", "builder"), phrase.getWords());
+        assertEquals(Arrays.asList(0, 7), phrase.getPositions());
+    }
+
+    @Test
+    void onlyExclusionIsEmpty() {
+        assertTrue(SearchQuery.parse("-list").isEmpty());
+        assertFalse(SearchQuery.parse("- list").isEmpty());
+        assertEquals(SearchQuery.parse("list  +map"), SearchQuery.parse("list +map"));
+    }
+}
@@ -0,0 +1,79 @@
+package com.peixinchen.searcher.web.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TinyLfuCacheTest {
+    @Test
+    void hotKeysSurviveAScanOfColdKeys() {
+        // 每个条目大小 1，一共 100
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(100, 100, (k, v) -> 1);
+        for (int i = 0; i < 50; i++) {
+            cache.put("hot" + i, "v");
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                assertNotNull(cache.get("hot" + i));
+            }
+        }
+
+        // 大量只出现一次的长尾查询
+        for (int i = 0; i < 1000; i++) {
+            String key = "cold" + i;
+            if (cache.get(key) == null) {
+                cache.put(key, "v");
+            }
+        }
+
+        int survived = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get("hot" + i) != null) {
+                survived++;
+            }
+        }
+        assertEquals(50, survived);
+        assertTrue(cache.stats().getWeight() <= 100);
+        assertTrue(cache.stats().getRejections() > 0);
+    }
+
+    @Test
+    void respectsWeightsAndInvalidation() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(100, 100, (k, v) -> v.length());
+        cache.put("too-big", new String(new char[200]));
+        assertNull(cache.get("too-big"));
+
+        cache.put("a", "12345");
+        assertEquals("12345", cache.get("a"));
+        assertEquals(5, cache.stats().getWeight());
+
+        cache.invalidateAll();
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.stats().getSize());
+        assertEquals(1.0 / 3, cache.stats().getHitRatio(), 1e-9);
+    }
+
+    @Test
+    void replacingWithAHeavierValueEvictsFromTheMainRegion() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(100, 100, (k, v) -> v.length());
+        // 窗口区只有 1，每放一个新的，上一个就进了主区；主区一共 99
+        for (int i = 0; i < 9; i++) {
+            cache.put("k" + i, "0123456789");
+            cache.get("k" + i);
+        }
+        cache.put("filler", "x");
+        assertEquals(91, cache.stats().getWeight());
+
+        // k8 已经在主区，换成 50 之后主区超出，要删掉最久没访问的
+        cache.put("k8", new String(new char[50]));
+        assertTrue(cache.stats().getWeight() <= 100);
+        assertEquals(50, cache.get("k8").length());
+        assertNull(cache.get("k0"));
+        assertTrue(cache.stats().getEvictions() > 0);
+
+        // 换成主区都放不下的值，整个条目去掉
+        cache.put("k8", new String(new char[200]));
+        assertNull(cache.get("k8"));
+        assertTrue(cache.stats().getWeight() <= 100);
+    }
+}
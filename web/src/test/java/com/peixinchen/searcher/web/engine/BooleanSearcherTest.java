@@ -0,0 +1,117 @@
+package com.peixinchen.searcher.web.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BooleanSearcherTest {
+    // 用最朴素的方式算出期望的结果：required 全有、excluded 全无的文档，得分是 required 和 optional 的 weight 之和
+    private static ScoredDocs exhaustive(int[][] required, int[][] optional, int[][] excluded, int k, int skipDocIdsDivisibleBy) {
+        TopKCollector collector = new TopKCollector(k);
+        docs:
+        for (int docId = 0; docId < required[0].length; docId++) {
+            int score = 0;
+            for (int[] weights : required) {
+                if (weights[docId] == 0) {
+                    continue docs;
+                }
+                score += weights[docId];
+            }
+            for (int[] weights : excluded) {
+                if (weights[docId] > 0) {
+                    continue docs;
+                }
+            }
+            for (int[] weights : optional) {
+                score += weights[docId];
+            }
+            if (skipDocIdsDivisibleBy == 0 || docId % skipDocIdsDivisibleBy != 0) {
+                collector.collect(docId, score);
+            }
+        }
+        return collector.drain();
+    }
+
+    private static int[][] randomWeights(Random random, int terms, int docs, List<PostingList> lists) {
+        int[][] weights = new int[terms][docs];
+        for (int t = 0; t < terms; t++) {
+            PostingListBuilder builder = new PostingListBuilder();
+            double density = random.nextDouble() * 0.6 + 0.05;
+            for (int docId = 0; docId < docs; docId++) {
+                if (random.nextDouble() < density) {
+                    weights[t][docId] = random.nextInt(50) + 1;
+                    builder.add(docId, weights[t][docId]);
+                }
+            }
+            lists.add(builder.build());
+        }
+        return weights;
+    }
+
+    private static void assertSame(ScoredDocs expected, ScoredDocs actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.docId(i), actual.docId(i));
+            assertEquals(expected.score(i), actual.score(i));
+        }
+    }
+
+    @Test
+    void sameAsExhaustive() {
+        Random random = new Random(11);
+        for (int round = 0; round < 50; round++) {
+            int docs = 3000;
+            List<PostingList> required = new ArrayList<>();
+            List<PostingList> optional = new ArrayList<>();
+            List<PostingList> excluded = new ArrayList<>();
+            int[][] requiredWeights = randomWeights(random, random.nextInt(3) + 1, docs, required);
+            int[][] optionalWeights = randomWeights(random, random.nextInt(3), docs, optional);
+            int[][] excludedWeights = randomWeights(random, random.nextInt(2), docs, excluded);
+
+            int k = random.nextInt(60) + 1;
+            ScoredDocs expected = exhaustive(requiredWeights, optionalWeights, excludedWeights, k, 0);
+            assertSame(expected, BooleanSearcher.searchAfter(required, optional, excluded, k, Integer.MAX_VALUE, -1, null));
+
+            // 检查时去掉 docId 是 3 的倍数的文档，结果应该和事先去掉它们一样
+            CandidateVerifier verifier = docIds -> {
+                boolean[] accepted = new boolean[docIds.length];
+                for (int i = 0; i < docIds.length; i++) {
+                    accepted[i] = docIds[i] % 3 != 0;
+                }
+                return accepted;
+            };
+            expected = exhaustive(requiredWeights, optionalWeights, excludedWeights, k, 3);
+            assertSame(expected, BooleanSearcher.searchAfter(required, optional, excluded, k, Integer.MAX_VALUE, -1, verifier));
+        }
+    }
+
+    @Test
+    void excludedDocumentsNeverReturned() {
+        PostingListBuilder a = new PostingListBuilder();
+        PostingListBuilder b = new PostingListBuilder();
+        PostingListBuilder c = new PostingListBuilder();
+        for (int docId = 0; docId < 1000; docId++) {
+            a.add(docId, 1);
+            if (docId % 2 == 0) {
+                b.add(docId, 1);
+            }
+            if (docId % 4 == 0) {
+                c.add(docId, 1);
+            }
+        }
+
+        // a AND b AND NOT c：docId % 4 == 2 的 250 篇
+        ScoredDocs docs = BooleanSearcher.searchAfter(Arrays.asList(a.build(), b.build()), Collections.emptyList(),
+                Collections.singletonList(c.build()), 1000, Integer.MAX_VALUE, -1, null);
+        assertEquals(250, docs.size());
+        for (int i = 0; i < docs.size(); i++) {
+            assertEquals(2, docs.docId(i) % 4);
+        }
+    }
+}
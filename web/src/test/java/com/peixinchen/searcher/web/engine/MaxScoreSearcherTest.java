@@ -0,0 +1,122 @@
+package com.peixinchen.searcher.web.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MaxScoreSearcherTest {
+    // 用最朴素的方式（全部累加 + Top-K）算出期望的结果
+    private static ScoredDocs exhaustive(int[][] weights, int k) {
+        TopKCollector collector = new TopKCollector(k);
+        for (int docId = 0; docId < weights[0].length; docId++) {
+            int score = 0;
+            boolean hit = false;
+            for (int[] termWeights : weights) {
+                if (termWeights[docId] > 0) {
+                    score += termWeights[docId];
+                    hit = true;
+                }
+            }
+            if (hit) {
+                collector.collect(docId, score);
+            }
+        }
+        return collector.drain();
+    }
+
+    @Test
+    void sameAsExhaustive() {
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            int terms = random.nextInt(4) + 1;
+            int docs = 2000;
+            int[][] weights = new int[terms][docs];
+            List<PostingList> lists = new ArrayList<>();
+            for (int t = 0; t < terms; t++) {
+                PostingListBuilder builder = new PostingListBuilder();
+                // 每个词的命中率和权重范围都不一样，让 MaxScore 真正有机会跳过
+                double density = random.nextDouble() * 0.5;
+                int maxWeight = random.nextInt(100) + 1;
+                for (int docId = 0; docId < docs; docId++) {
+                    if (random.nextDouble() < density) {
+                        weights[t][docId] = random.nextInt(maxWeight) + 1;
+                        builder.add(docId, weights[t][docId]);
+                    }
+                }
+                lists.add(builder.build());
+            }
+
+            int k = random.nextInt(60) + 1;
+            ScoredDocs expected = exhaustive(weights, k);
+            ScoredDocs actual = MaxScoreSearcher.search(lists, k);
+
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.docId(i), actual.docId(i));
+                assertEquals(expected.score(i), actual.score(i));
+            }
+        }
+    }
+
+    @Test
+    void searchAfterPagesThroughSameOrder() {
+        Random random = new Random(11);
+        List<PostingList> lists = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            PostingListBuilder builder = new PostingListBuilder();
+            for (int docId = 0; docId < 3000; docId++) {
+                if (random.nextDouble() < 0.3) {
+                    // 权重范围小，得分相同的文档很多，检验 docId 的次序
+                    builder.add(docId, random.nextInt(5) + 1);
+                }
+            }
+            lists.add(builder.build());
+        }
+
+        int pageSize = 20;
+        ScoredDocs all = MaxScoreSearcher.search(lists, 10 * pageSize);
+        int afterScore = Integer.MAX_VALUE;
+        int afterDocId = -1;
+        for (int page = 0; page < 10; page++) {
+            ScoredDocs docs = MaxScoreSearcher.searchAfter(lists, pageSize, afterScore, afterDocId);
+            assertEquals(pageSize, docs.size());
+            for (int i = 0; i < pageSize; i++) {
+                assertEquals(all.docId(page * pageSize + i), docs.docId(i));
+                assertEquals(all.score(page * pageSize + i), docs.score(i));
+            }
+            afterScore = docs.score(pageSize - 1);
+            afterDocId = docs.docId(pageSize - 1);
+        }
+    }
+
+    @Test
+    void hugeKOnlyKeepsHits() {
+        PostingListBuilder builder = new PostingListBuilder();
+        for (int docId = 0; docId < 500; docId++) {
+            builder.add(docId, docId % 7 + 1);
+        }
+        List<PostingList> lists = new ArrayList<>();
+        lists.add(builder.build());
+
+        // 页码很大时 k 接近 Integer.MAX_VALUE，不能按 k 分配数组
+        ScoredDocs docs = MaxScoreSearcher.search(lists, Integer.MAX_VALUE);
+        ScoredDocs expected = exhaustive(new int[][]{weights(500)}, 500);
+        assertEquals(500, docs.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.docId(i), docs.docId(i));
+            assertEquals(expected.score(i), docs.score(i));
+        }
+    }
+
+    private static int[] weights(int docs) {
+        int[] weights = new int[docs];
+        for (int docId = 0; docId < docs; docId++) {
+            weights[docId] = docId % 7 + 1;
+        }
+        return weights;
+    }
+}
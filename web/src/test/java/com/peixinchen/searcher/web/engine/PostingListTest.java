@@ -0,0 +1,147 @@
+package com.peixinchen.searcher.web.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingListTest {
+    @Test
+    void roundTrip() {
+        PostingListBuilder builder = new PostingListBuilder();
+        builder.add(7, 3);
+        builder.add(300000, 12);
+        builder.add(2, 3);
+        builder.add(5, 40);
+        builder.add(9, 12);
+
+        PostingList list = builder.build();
+        assertEquals(5, list.size());
+        assertEquals(40, list.maxWeight());
+
+        int[][] expected = {{2, 3}, {5, 40}, {7, 3}, {9, 12}, {300000, 12}};
+        PostingList.PostingIterator it = list.iterator();
+        for (int[] posting : expected) {
+            assertEquals(posting[0], it.nextDoc());
+            assertEquals(posting[1], it.weight());
+        }
+        assertEquals(PostingList.NO_MORE_DOCS, it.nextDoc());
+    }
+
+    @Test
+    void advance() {
+        PostingListBuilder builder = new PostingListBuilder();
+        for (int docId = 0; docId < 1000; docId += 3) {
+            builder.add(docId, docId % 7 + 1);
+        }
+
+        PostingList.PostingIterator it = builder.build().iterator();
+        assertEquals(0, it.nextDoc());
+        assertEquals(501, it.advance(500));
+        assertEquals(501, it.advance(501));
+        assertEquals(999, it.advance(998));
+        assertEquals(PostingList.NO_MORE_DOCS, it.advance(1000));
+    }
+
+    @Test
+    void blockMaxWeightAtTarget() {
+        PostingListBuilder builder = new PostingListBuilder();
+        for (int docId = 0; docId < 3 * BlockPostingList.BLOCK_SIZE; docId++) {
+            // 第二块的 weight 都是 50，其余都是 1
+            builder.add(docId, docId / BlockPostingList.BLOCK_SIZE == 1 ? 50 : 1);
+        }
+
+        PostingList.PostingIterator it = builder.build().iterator();
+        it.nextDoc();
+        assertEquals(1, it.blockMaxWeight(10));
+        assertEquals(50, it.blockMaxWeight(BlockPostingList.BLOCK_SIZE + 5));
+        assertEquals(1, it.blockMaxWeight(2 * BlockPostingList.BLOCK_SIZE));
+        assertEquals(0, it.blockMaxWeight(3 * BlockPostingList.BLOCK_SIZE));
+        assertEquals(0, it.docId());    // 只查跳表，不移动游标
+    }
+
+    @Test
+    void docIdNeverDecreases() {
+        Random random = new Random(42);
+        PostingListBuilder builder = new PostingListBuilder();
+        for (int docId = 0; docId < 10000; docId++) {
+            if (random.nextBoolean()) {
+                builder.add(docId * 7, random.nextInt(500) + 1);
+            }
+        }
+
+        PostingList list = builder.build();
+        PostingList.PostingIterator it = list.iterator();
+        int count = 0;
+        int prevDocId = -1;
+        for (int docId = it.nextDoc(); docId != PostingList.NO_MORE_DOCS; docId = it.nextDoc()) {
+            assertTrue(docId > prevDocId);
+            prevDocId = docId;
+            count++;
+        }
+        assertEquals(list.size(), count);
+    }
+
+    @Test
+    void advanceSkipsBlocks() {
+        PostingListBuilder builder = new PostingListBuilder();
+        int n = BlockPostingList.BLOCK_SIZE * 5 + 17;
+        for (int i = 0; i < n; i++) {
+            builder.add(i * 10, i % 50 + 1);
+        }
+
+        PostingList list = builder.build();
+        PostingList.PostingIterator it = list.iterator();
+        // 跳过整块：落在第 3 块中间
+        int target = (BlockPostingList.BLOCK_SIZE * 3 + 5) * 10 - 3;
+        assertEquals(target + 3, it.advance(target));
+        assertEquals((BlockPostingList.BLOCK_SIZE * 3 + 5) % 50 + 1, it.weight());
+        // 跳过之后顺序解码仍然正确
+        assertEquals(target + 13, it.nextDoc());
+        // 正好是某一块的最后一条
+        assertEquals((BlockPostingList.BLOCK_SIZE * 4 - 1) * 10, it.advance((BlockPostingList.BLOCK_SIZE * 4 - 1) * 10));
+        // 最后一块（不满）
+        assertEquals((n - 1) * 10, it.advance((n - 1) * 10 - 9));
+        assertEquals(PostingList.NO_MORE_DOCS, it.advance((n - 1) * 10 + 1));
+
+        // 没有 nextDoc 过，直接 advance 到后面的块
+        PostingList.PostingIterator fresh = list.iterator();
+        assertEquals(BlockPostingList.BLOCK_SIZE * 20, fresh.advance(BlockPostingList.BLOCK_SIZE * 20 - 1));
+    }
+
+    @Test
+    void mergedSkipsTombstones() {
+        // 两个段的 docId 交错，互不重复
+        PostingListBuilder a = new PostingListBuilder();
+        PostingListBuilder b = new PostingListBuilder();
+        for (int docId = 0; docId < 1000; docId++) {
+            (docId % 3 == 0 ? a : b).add(docId, docId % 11 + 1);
+        }
+        int[] tombstones = {0, 5, 6, 500, 999};
+        PostingList merged = new MergedPostingList(Arrays.asList(a.build(), b.build()), tombstones);
+        assertEquals(1000, merged.size());
+        assertEquals(11, merged.maxWeight());
+
+        PostingList.PostingIterator it = merged.iterator();
+        int expected = 0;
+        for (int docId = it.nextDoc(); docId != PostingList.NO_MORE_DOCS; docId = it.nextDoc()) {
+            while (Arrays.binarySearch(tombstones, expected) >= 0) {
+                expected++;
+            }
+            assertEquals(expected, docId);
+            assertEquals(docId % 11 + 1, it.weight());
+            expected++;
+        }
+        assertEquals(999, expected);
+
+        PostingList.PostingIterator skipping = merged.iterator();
+        assertEquals(1, skipping.nextDoc());
+        assertEquals(7, skipping.advance(5));
+        assertTrue(skipping.blockMaxWeight(600) >= 600 % 11 + 1);
+        assertEquals(501, skipping.advance(500));
+        assertEquals(PostingList.NO_MORE_DOCS, skipping.advance(999));
+        assertEquals(0, skipping.blockMaxWeight(1000));
+    }
+}